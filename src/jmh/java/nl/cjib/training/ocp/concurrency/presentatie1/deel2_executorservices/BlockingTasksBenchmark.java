@@ -0,0 +1,109 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Voert 100.000 blokkerende tasks (een sleep, als stand-in voor I/O) uit op de verschillende executors
+ * uit {@link ExecutorFactory}.
+ * <p>
+ * Er wordt gemeten:
+ *  - de totale tijd voor alle tasks (throughput);
+ *  - submitMillis: de tijd die het submitten van alle tasks kost (startup);
+ *  - peakThreads: het maximale aantal live threads in de JVM tijdens de run;
+ *  - heapUsedMb: het gebruikte heap geheugen direct na het submitten.
+ * <p>
+ * De VIRTUAL modus werkt alleen op Java 21 of nieuwer. Op een oudere JVM faalt die variant in de setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class BlockingTasksBenchmark
+{
+	private static final int TASKS = 100_000;
+
+	@Param({"FIXED", "CACHED", "VIRTUAL"})
+	private ExecutorFactory.Mode mode;
+
+	// Het aantal threads voor de FIXED modus, een gangbare grootte voor een I/O pool.
+	@Param({"200"})
+	private int poolSize;
+
+	@Param({"10"})
+	private int sleepMillis;
+
+	private ExecutorService executorService;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint
+	{
+		public long submitMillis;
+		public long peakThreads;
+		public long heapUsedMb;
+	}
+
+	@Setup(Level.Iteration)
+	public void createExecutor()
+	{
+		executorService = ExecutorFactory.create(mode, poolSize);
+		ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+	}
+
+	@TearDown(Level.Iteration)
+	public void shutdownExecutor() throws InterruptedException
+	{
+		executorService.shutdown();
+		executorService.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public void blockingTasks(Footprint footprint) throws InterruptedException
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		CountDownLatch done = new CountDownLatch(TASKS);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < TASKS; i++) {
+			executorService.execute(() -> {
+				try {
+					Thread.sleep(sleepMillis);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					done.countDown();
+				}
+			});
+		}
+		footprint.submitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		footprint.heapUsedMb = memory.getHeapMemoryUsage().getUsed() / (1024 * 1024);
+
+		done.await();
+		footprint.peakThreads = threads.getPeakThreadCount();
+	}
+}
@@ -0,0 +1,109 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel3_scheduledexecutorservices;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt de {@link TimingWheelScheduler} met de {@link ScheduledThreadPoolExecutor} bij 1.000.000 timers.
+ * <p>
+ * Er zijn 2 scenario's:
+ *  - scheduleAndCancel: plan alle timers (met een wachttijd van 1 tot 60 seconden) en annuleer ze daarna weer,
+ *    zoals bij request timeouts die bijna nooit afgaan;
+ *  - scheduleAndFire: plan alle timers binnen 1 seconde en wacht tot ze allemaal uitgevoerd zijn.
+ * <p>
+ * De ScheduledThreadPoolExecutor gebruikt de remove-on-cancel policy, zodat geannuleerde timers ook daar
+ * direct uit de queue verdwijnen in plaats van tot hun deadline te blijven staan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TimerBenchmark
+{
+	private static final int TIMERS = 1_000_000;
+
+	@Param({"TIMING_WHEEL", "SCHEDULED_THREAD_POOL"})
+	private String scheduler;
+
+	@Param({"4"})
+	private int threads;
+
+	private ScheduledExecutorService executorService;
+	private long[] delays;
+
+	@Setup(Level.Iteration)
+	public void createScheduler()
+	{
+		if ("TIMING_WHEEL".equals(scheduler)) {
+			executorService = new TimingWheelScheduler(threads);
+		}
+		else {
+			ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(threads);
+			pool.setRemoveOnCancelPolicy(true);
+			executorService = pool;
+		}
+		SplittableRandom random = new SplittableRandom(42);
+		delays = new long[TIMERS];
+		for (int i = 0; i < TIMERS; i++) {
+			delays[i] = random.nextLong(1_000L, 60_000L);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void shutdownScheduler() throws InterruptedException
+	{
+		executorService.shutdownNow();
+		executorService.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public int scheduleAndCancel()
+	{
+		ScheduledFuture<?>[] timers = new ScheduledFuture<?>[TIMERS];
+		for (int i = 0; i < TIMERS; i++) {
+			timers[i] = executorService.schedule(TimerBenchmark::noop, delays[i], TimeUnit.MILLISECONDS);
+		}
+		int cancelled = 0;
+		for (ScheduledFuture<?> timer : timers) {
+			if (timer.cancel(false)) {
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	@Benchmark
+	public void scheduleAndFire() throws InterruptedException
+	{
+		CountDownLatch fired = new CountDownLatch(TIMERS);
+		for (int i = 0; i < TIMERS; i++) {
+			// De wachttijden worden teruggebracht naar 1 tot 1000 milliseconden.
+			executorService.schedule(fired::countDown, delays[i] / 60, TimeUnit.MILLISECONDS);
+		}
+		fired.await();
+	}
+
+	private static void noop()
+	{
+	}
+}
@@ -0,0 +1,123 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel4_callables_en_futures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt 10.000 calls via blokkerende {@link Future#get()} aanroepen met dezelfde calls via een {@link AsyncPipeline}.
+ * <p>
+ * Er zijn 2 scenario's:
+ *  - chain: elke call heeft het resultaat van de vorige nodig;
+ *  - fanIn: alle calls zijn onafhankelijk en de resultaten worden aan het einde opgeteld.
+ * <p>
+ * Meerdere benchmark threads spelen hier meerdere gelijktijdige aanvragen na. In de blokkerende variant bezet elke aanvraag
+ * een thread die vooral staat te wachten. De async variant wacht alleen aan het einde 1 keer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class DependentCallsBenchmark
+{
+	private static final int CALLS = 10_000;
+
+	@Param({"4"})
+	private int poolSize;
+
+	private ExecutorService executorService;
+
+	@Setup(Level.Trial)
+	public void createExecutor()
+	{
+		executorService = Executors.newFixedThreadPool(poolSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdownExecutor() throws InterruptedException
+	{
+		executorService.shutdown();
+		executorService.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public long blockingChain() throws InterruptedException, ExecutionException
+	{
+		long value = 0;
+		for (int i = 0; i < CALLS; i++) {
+			long previous = value;
+			value = executorService.submit(() -> step(previous)).get();
+		}
+		return value;
+	}
+
+	@Benchmark
+	public long asyncChain()
+	{
+		AsyncPipeline<Long> pipeline = AsyncPipeline.completed(0L);
+		for (int i = 0; i < CALLS; i++) {
+			pipeline = pipeline.then(DependentCallsBenchmark::step, executorService);
+		}
+		return pipeline.join();
+	}
+
+	@Benchmark
+	public long blockingFanIn() throws InterruptedException, ExecutionException
+	{
+		List<Future<Long>> futures = new ArrayList<>(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			long input = i;
+			futures.add(executorService.submit(() -> step(input)));
+		}
+		long sum = 0;
+		for (Future<Long> future : futures) {
+			sum += future.get();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long asyncFanIn()
+	{
+		List<AsyncPipeline<Long>> pipelines = new ArrayList<>(CALLS);
+		for (int i = 0; i < CALLS; i++) {
+			long input = i;
+			pipelines.add(AsyncPipeline.start(() -> step(input), executorService));
+		}
+		long sum = 0;
+		for (long value : AsyncPipeline.all(pipelines).join()) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Een kleine berekening, zodat de kosten van het doorgeven tussen threads zichtbaar worden.
+	 */
+	private static long step(long value)
+	{
+		return value * 31 + 7;
+	}
+}
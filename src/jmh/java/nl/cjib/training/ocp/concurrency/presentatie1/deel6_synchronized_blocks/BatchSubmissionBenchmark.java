@@ -0,0 +1,88 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel6_synchronized_blocks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall.BatchExecutor;
+
+/**
+ * Vergelijkt de invokeAll aanpak uit {@link SynchronizedBlocks} (50.000 Callables en 50.000 keer Future.get())
+ * met een {@link BatchExecutor}, die het werk in 1 chunk per thread verdeelt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSubmissionBenchmark
+{
+	private static final int TASKS = 50000;
+
+	@Param({"4", "100"})
+	private int poolSize;
+
+	private ExecutorService executorService;
+	private BatchExecutor batchExecutor;
+	private List<Callable<Boolean>> syncedTasks;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		executorService = Executors.newFixedThreadPool(poolSize);
+		batchExecutor = new BatchExecutor(executorService, poolSize);
+		syncedTasks = Collections.nCopies(TASKS, SynchronizedBlocks::syncedInc);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		executorService.shutdown();
+	}
+
+	@Benchmark
+	public int invokeAll() throws InterruptedException, ExecutionException
+	{
+		int done = 0;
+		for (Future<Boolean> future : executorService.invokeAll(syncedTasks)) {
+			if (future.get()) {
+				done++;
+			}
+		}
+		return done;
+	}
+
+	@Benchmark
+	public int batchExecutor() throws InterruptedException, ExecutionException
+	{
+		return batchExecutor.execute(0, TASKS, (from, to) -> {
+			int done = 0;
+			for (int i = from; i < to; i++) {
+				if (SynchronizedBlocks.syncedInc()) {
+					done++;
+				}
+			}
+			return done;
+		}, Integer::sum);
+	}
+}
@@ -0,0 +1,118 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel6_synchronized_blocks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Deze benchmark meet wat de verschillende manieren om een gedeelde counter op te hogen kosten onder contention.
+ * <p>
+ * De methodes uit {@link SynchronizedBlocks} worden vergeleken met de atomic classes,
+ * een {@link LongAdder} en een {@link ReentrantLock}.
+ * Alle threads van een benchmark delen dezelfde counter (Scope.Benchmark), zodat er echt contention ontstaat.
+ * <p>
+ * Er worden 2 modes gemeten:
+ *  - Throughput: het aantal increments per microseconde (over alle threads samen);
+ *  - SampleTime: de latency per increment, waarbij JMH ook de p99 rapporteert.
+ * <p>
+ * Het aantal threads kan je niet als @Param opgeven, daarom loopt {@link #main(String[])}
+ * over 1, 2, 4, 8 en het aantal beschikbare processoren heen.
+ * Via de benchmarks.jar kan je ook zelf het aantal threads kiezen met -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark
+{
+	private final AtomicInteger atomicInteger = new AtomicInteger();
+	private final AtomicLong atomicLong = new AtomicLong();
+	private final LongAdder longAdder = new LongAdder();
+	private final ReentrantLock reentrantLock = new ReentrantLock();
+	private long lockedCounter;
+
+	/**
+	 * Niet thread-safe, puur als ondergrens voor de kosten van een increment.
+	 */
+	@Benchmark
+	public boolean inc()
+	{
+		return SynchronizedBlocks.inc();
+	}
+
+	@Benchmark
+	public boolean syncedInc()
+	{
+		return SynchronizedBlocks.syncedInc();
+	}
+
+	@Benchmark
+	public boolean methodSyncedInc()
+	{
+		return SynchronizedBlocks.methodSyncedInc();
+	}
+
+	@Benchmark
+	public int atomicInteger()
+	{
+		return atomicInteger.incrementAndGet();
+	}
+
+	@Benchmark
+	public long atomicLong()
+	{
+		return atomicLong.incrementAndGet();
+	}
+
+	/**
+	 * Een {@link LongAdder} geeft geen nieuwe waarde terug bij het ophogen,
+	 * daarom is hier alleen de increment gemeten.
+	 */
+	@Benchmark
+	public void longAdder()
+	{
+		longAdder.increment();
+	}
+
+	@Benchmark
+	public long reentrantLock()
+	{
+		reentrantLock.lock();
+		try {
+			return ++lockedCounter;
+		}
+		finally {
+			reentrantLock.unlock();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads : new int[]{1, 2, 4, 8, processors}) {
+			Options options = new OptionsBuilder()
+				.include(CounterBenchmark.class.getSimpleName())
+				.threads(threads)
+				.build();
+			new Runner(options).run();
+		}
+	}
+}
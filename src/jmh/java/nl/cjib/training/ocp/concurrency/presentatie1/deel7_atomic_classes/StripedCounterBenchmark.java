@@ -0,0 +1,82 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel7_atomic_classes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Vergelijkt de throughput van {@link StripedCounter} met {@link AtomicLong} en {@link LongAdder}.
+ * <p>
+ * {@link #main(String[])} draait de benchmarks met 1 tot 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedCounterBenchmark
+{
+	private final AtomicLong atomicLong = new AtomicLong();
+	private final LongAdder longAdder = new LongAdder();
+	private final StripedCounter stripedCounter = new StripedCounter();
+	private final StripedCounter snapshotStripedCounter = new StripedCounter(true);
+
+	@Benchmark
+	public void atomicLong()
+	{
+		atomicLong.incrementAndGet();
+	}
+
+	@Benchmark
+	public void longAdder()
+	{
+		longAdder.increment();
+	}
+
+	@Benchmark
+	public void stripedCounter()
+	{
+		stripedCounter.increment();
+	}
+
+	/**
+	 * De kosten van het ophogen als consistente snapshots mogelijk moeten zijn.
+	 */
+	@Benchmark
+	public void snapshotStripedCounter()
+	{
+		snapshotStripedCounter.increment();
+	}
+
+	@Benchmark
+	public long stripedCounterSum()
+	{
+		return stripedCounter.sum();
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+			Options options = new OptionsBuilder()
+				.include(StripedCounterBenchmark.class.getSimpleName())
+				.threads(threads)
+				.build();
+			new Runner(options).run();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Vergelijkt de synchronized wrappers uit {@link Collections} met {@link StripedMap} en {@link ReadWriteNavigableMap},
+ * bij een mix van lezen en schrijven op 10.000 keys.
+ * <p>
+ * writePercentage bepaalt welk deel van de operaties een put is, de rest is een get.
+ * Het aantal threads kan je niet als @Param opgeven, daarom loopt {@link #main(String[])}
+ * over 1, 2, 4, 8, 16 en 32 threads heen. Via de benchmarks.jar kan je ook zelf het aantal threads kiezen met -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockWrapperBenchmark
+{
+	private static final int KEYS = 10_000;
+
+	@Param({"SYNCHRONIZED_MAP", "STRIPED_MAP", "SYNCHRONIZED_NAVIGABLE", "READ_WRITE_NAVIGABLE", "STAMPED_NAVIGABLE"})
+	private String implementation;
+
+	@Param({"10"})
+	private int writePercentage;
+
+	private Map<Integer, Integer> map;
+
+	@Setup(Level.Trial)
+	public void createMap()
+	{
+		switch (implementation) {
+			case "SYNCHRONIZED_MAP":
+				map = Collections.synchronizedMap(new HashMap<>());
+				break;
+			case "STRIPED_MAP":
+				map = new StripedMap<>();
+				break;
+			case "SYNCHRONIZED_NAVIGABLE":
+				map = Collections.synchronizedNavigableMap(new TreeMap<>());
+				break;
+			case "READ_WRITE_NAVIGABLE":
+				map = new ReadWriteNavigableMap<>(new TreeMap<>());
+				break;
+			case "STAMPED_NAVIGABLE":
+				map = ReadWriteNavigableMap.withStampedLock(new TreeMap<>());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown implementation: " + implementation);
+		}
+		for (int key = 0; key < KEYS; key++) {
+			map.put(key, key);
+		}
+	}
+
+	@Benchmark
+	public Integer mixed()
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int key = random.nextInt(KEYS);
+		if (random.nextInt(100) < writePercentage) {
+			return map.put(key, key);
+		}
+		return map.get(key);
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		for (int threads : new int[]{1, 2, 4, 8, 16, 32}) {
+			Options options = new OptionsBuilder()
+				.include(LockWrapperBenchmark.class.getSimpleName())
+				.threads(threads)
+				.build();
+			new Runner(options).run();
+		}
+	}
+}
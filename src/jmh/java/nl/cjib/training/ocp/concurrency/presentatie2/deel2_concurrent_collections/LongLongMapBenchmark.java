@@ -0,0 +1,83 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt de doorvoer van {@link ConcurrentLongLongMap} met een {@code ConcurrentHashMap<Long, Long>},
+ * beide gevuld met 10.000.000 tellers. Er wordt gelezen (get) en opgehoogd (addAndGet, bij de ConcurrentHashMap
+ * met merge) op willekeurige keys, met 4 threads tegelijk.
+ * <p>
+ * Het geheugengebruik wordt gemeten in {@link LongLongMapFootprintBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+@Threads(4)
+public class LongLongMapBenchmark
+{
+	@Param({"LONG_LONG", "CONCURRENT_HASH"})
+	private String implementation;
+
+	@Param({"10000000"})
+	private int size;
+
+	private ConcurrentLongLongMap longLongMap;
+	private ConcurrentHashMap<Long, Long> concurrentHashMap;
+
+	@Setup(Level.Trial)
+	public void fill()
+	{
+		if ("LONG_LONG".equals(implementation)) {
+			longLongMap = new ConcurrentLongLongMap(size, 0L);
+			for (long key = 1; key <= size; key++) {
+				longLongMap.put(key, key);
+			}
+		}
+		else {
+			concurrentHashMap = new ConcurrentHashMap<>(size);
+			for (long key = 1; key <= size; key++) {
+				concurrentHashMap.put(key, key);
+			}
+		}
+	}
+
+	@Benchmark
+	public long get()
+	{
+		long key = ThreadLocalRandom.current().nextLong(1, size + 1L);
+		if (longLongMap != null) {
+			return longLongMap.get(key);
+		}
+		Long value = concurrentHashMap.get(key);
+		return value == null ? 0L : value;
+	}
+
+	@Benchmark
+	public long addAndGet()
+	{
+		long key = ThreadLocalRandom.current().nextLong(1, size + 1L);
+		if (longLongMap != null) {
+			return longLongMap.addAndGet(key, 1L);
+		}
+		return concurrentHashMap.merge(key, 1L, Long::sum);
+	}
+}
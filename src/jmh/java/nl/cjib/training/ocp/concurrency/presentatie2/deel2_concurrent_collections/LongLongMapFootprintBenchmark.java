@@ -0,0 +1,78 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Meet hoe lang het vullen van 10.000.000 entries duurt, en hoeveel heap de gevulde map inneemt,
+ * voor {@link ConcurrentLongLongMap} en een {@code ConcurrentHashMap<Long, Long>}.
+ * <p>
+ * bytesPerEntry is het verschil in gebruikte heap voor en na het vullen (telkens na een GC), gedeeld door het
+ * aantal entries. De keys vallen buiten de cache van {@link Long#valueOf(long)}, dus elke key en value is een eigen object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class LongLongMapFootprintBenchmark
+{
+	@Param({"LONG_LONG", "CONCURRENT_HASH"})
+	private String implementation;
+
+	@Param({"10000000"})
+	private int size;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint
+	{
+		public long bytesPerEntry;
+	}
+
+	@Benchmark
+	public Object fill(Footprint footprint)
+	{
+		long before = usedHeap();
+		Object map;
+		if ("LONG_LONG".equals(implementation)) {
+			ConcurrentLongLongMap longLongMap = new ConcurrentLongLongMap(0L);
+			for (long key = 1; key <= size; key++) {
+				longLongMap.put(key, key + 1000);
+			}
+			map = longLongMap;
+		}
+		else {
+			ConcurrentHashMap<Long, Long> concurrentHashMap = new ConcurrentHashMap<>();
+			for (long key = 1; key <= size; key++) {
+				concurrentHashMap.put(key, key + 1000);
+			}
+			map = concurrentHashMap;
+		}
+		footprint.bytesPerEntry = (usedHeap() - before) / size;
+		return map;
+	}
+
+	private static long usedHeap()
+	{
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		System.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,140 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt de doorvoer van de {@link RingBufferQueue} met {@link LinkedBlockingQueue}, {@link ArrayBlockingQueue}
+ * en {@link ConcurrentLinkedQueue}, met 2 producers en 2 consumers die tegelijk offer en poll doen.
+ * <p>
+ * Met batchSize groter dan 1 halen de consumers hun elementen met drainTo op in plaats van met losse polls.
+ * De {@link ConcurrentLinkedQueue} heeft geen drainTo en wordt dan met een reeks polls geleegd.
+ * <p>
+ * De {@link ConcurrentLinkedQueue} is onbegrensd. Om te voorkomen dat die tijdens de meting onbeperkt groeit,
+ * houden de producers daar met een teller bij hoeveel elementen er in staan. Die teller kost wat extra,
+ * maar zonder teller zou de vergelijking met de begrensde queues niet eerlijk zijn.
+ * <p>
+ * Een mislukte offer of poll (queue vol of leeg) telt niet mee in de resultaten, zie de offered en polled counters.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueueBenchmark
+{
+	private static final int CAPACITY = 1024;
+	private static final Integer ELEMENT = 42;
+
+	@Param({"RING_BUFFER", "LINKED_BLOCKING", "ARRAY_BLOCKING", "CONCURRENT_LINKED"})
+	private String implementation;
+
+	@Param({"1", "32"})
+	private int batchSize;
+
+	private Queue<Integer> queue;
+	private final AtomicInteger unboundedSize = new AtomicInteger();
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters
+	{
+		public long offered;
+		public long polled;
+		private final List<Integer> batch = new ArrayList<>();
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			offered = 0;
+			polled = 0;
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createQueue()
+	{
+		switch (implementation) {
+			case "RING_BUFFER":
+				queue = new RingBufferQueue<>(CAPACITY, RingBufferQueue.WaitStrategy.SPIN);
+				break;
+			case "LINKED_BLOCKING":
+				queue = new LinkedBlockingQueue<>(CAPACITY);
+				break;
+			case "ARRAY_BLOCKING":
+				queue = new ArrayBlockingQueue<>(CAPACITY);
+				break;
+			case "CONCURRENT_LINKED":
+				queue = new ConcurrentLinkedQueue<>();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown implementation: " + implementation);
+		}
+		unboundedSize.set(0);
+	}
+
+	@Benchmark
+	@Group("transfer")
+	@GroupThreads(2)
+	public void produce(Counters counters)
+	{
+		if (queue instanceof ConcurrentLinkedQueue) {
+			if (unboundedSize.get() >= CAPACITY) {
+				return;
+			}
+			unboundedSize.incrementAndGet();
+		}
+		if (queue.offer(ELEMENT)) {
+			counters.offered++;
+		}
+	}
+
+	@Benchmark
+	@Group("transfer")
+	@GroupThreads(2)
+	public void consume(Counters counters)
+	{
+		int taken;
+		if (batchSize == 1) {
+			taken = queue.poll() != null ? 1 : 0;
+		}
+		else if (queue instanceof BlockingQueue) {
+			counters.batch.clear();
+			taken = ((BlockingQueue<Integer>) queue).drainTo(counters.batch, batchSize);
+		}
+		else {
+			taken = 0;
+			while (taken < batchSize && queue.poll() != null) {
+				taken++;
+			}
+		}
+		if (queue instanceof ConcurrentLinkedQueue && taken > 0) {
+			unboundedSize.addAndGet(-taken);
+		}
+		counters.polled += taken;
+	}
+}
@@ -0,0 +1,119 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt {@link PersistentVectorList} met {@link CopyOnWriteArrayList} en {@link Collections#synchronizedList(List)}
+ * bij een lijst van 100.000 elementen waarin 3 threads lezen en 1 thread schrijft.
+ * <p>
+ * Er zijn 2 scenario's:
+ *  - readWrite: de lezers doen get op een willekeurige index, de schrijver doet set op een willekeurige index;
+ *  - iterateWrite: de lezers tellen de hele lijst op met een iterator, terwijl de schrijver set doet.
+ *    Bij de synchronizedList moet daarvoor de hele lijst gelockt worden, anders kan er een
+ *    ConcurrentModificationException optreden. De andere lijsten geven een momentopname.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotListBenchmark
+{
+	@Param({"PERSISTENT_VECTOR", "COPY_ON_WRITE", "SYNCHRONIZED"})
+	private String implementation;
+
+	@Param({"100000"})
+	private int size;
+
+	private List<Integer> list;
+
+	@Setup(Level.Iteration)
+	public void createList()
+	{
+		List<Integer> elements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			elements.add(i);
+		}
+		switch (implementation) {
+			case "PERSISTENT_VECTOR":
+				list = new PersistentVectorList<>(elements);
+				break;
+			case "COPY_ON_WRITE":
+				list = new CopyOnWriteArrayList<>(elements);
+				break;
+			case "SYNCHRONIZED":
+				list = Collections.synchronizedList(elements);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown implementation: " + implementation);
+		}
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public Integer read()
+	{
+		return list.get(ThreadLocalRandom.current().nextInt(size));
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public Integer write()
+	{
+		int index = ThreadLocalRandom.current().nextInt(size);
+		return list.set(index, index);
+	}
+
+	@Benchmark
+	@Group("iterateWrite")
+	@GroupThreads(3)
+	public long iterate()
+	{
+		if ("SYNCHRONIZED".equals(implementation)) {
+			synchronized (list) {
+				return sum(list);
+			}
+		}
+		return sum(list);
+	}
+
+	@Benchmark
+	@Group("iterateWrite")
+	@GroupThreads(1)
+	public Integer iterateWriter()
+	{
+		return write();
+	}
+
+	private static long sum(List<Integer> list)
+	{
+		long sum = 0;
+		for (int value : list) {
+			sum += value;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,104 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Meet de throughput van {@link BufferedPrintingAction} voor 10^6 elementen bij verschillende leaf sizes.
+ * <p>
+ * Ter vergelijking is er ook een benchmark die, net als de PrintingAction uit {@link ForkJoinFramework},
+ * elk element los print vanuit de workers.
+ * De output gaat naar een {@link PrintStream} zonder bestemming, zodat alleen de overhead gemeten wordt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferedPrintingBenchmark
+{
+	@Param({"1", "16", "256", "4096", "65536"})
+	private int leafSize;
+
+	@Param({"false", "true"})
+	private boolean ordered;
+
+	private List<String> words;
+	private PrintStream out;
+
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		words = IntStream.range(0, 1_000_000).mapToObj(Integer::toString).collect(Collectors.toList());
+		out = new PrintStream(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public void bufferedPrinting()
+	{
+		WorkerBufferedSink sink = new WorkerBufferedSink();
+		ForkJoinPool.commonPool().invoke(new BufferedPrintingAction(words, leafSize, sink));
+		sink.flush(out, ordered);
+	}
+
+	/**
+	 * Print per element direct naar de stream, met dezelfde leaf size.
+	 * Hier heeft de ordered parameter geen invloed.
+	 */
+	@Benchmark
+	public void directPrinting()
+	{
+		ForkJoinPool.commonPool().invoke(new DirectPrintingAction(words, leafSize, out));
+	}
+
+	private static class DirectPrintingAction extends RecursiveAction
+	{
+		private final List<String> toPrint;
+		private final int leafSize;
+		private final PrintStream out;
+
+		private DirectPrintingAction(List<String> toPrint, int leafSize, PrintStream out)
+		{
+			this.toPrint = toPrint;
+			this.leafSize = leafSize;
+			this.out = out;
+		}
+
+		@Override
+		protected void compute()
+		{
+			int size = toPrint.size();
+			if (size <= leafSize) {
+				for (String word : toPrint) {
+					out.println(word + " (" + Thread.currentThread().getName() + ")");
+				}
+			}
+			else {
+				ForkJoinTask.invokeAll(
+					new DirectPrintingAction(toPrint.subList(0, size / 2), leafSize, out),
+					new DirectPrintingAction(toPrint.subList(size / 2, size), leafSize, out));
+			}
+		}
+	}
+}
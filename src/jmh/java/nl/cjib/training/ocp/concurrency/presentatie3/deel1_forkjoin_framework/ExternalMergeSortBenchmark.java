@@ -0,0 +1,100 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Meet {@link ExternalMergeSort} voor verschillende run groottes en fan-ins.
+ * <p>
+ * De records zijn 100 bytes met een key van 10 bytes, zoals in de bekende sort benchmarks.
+ * De heap is expres kleiner dan het grootste bestand, zodat te zien is dat alleen de index van 1 run in de heap staat.
+ * Deel de bestandsgrootte door de gemeten tijd voor het aantal bytes per seconde,
+ * of kijk naar de {@link ExternalMergeSort.Stats} die na elke sort geprint worden.
+ * <p>
+ * De input wordt 1 keer per trial aangemaakt in de temp directory. Zorg dat daar ruim 3 keer de bestandsgrootte vrij is.
+ * Het resultaat hangt sterk af van de page cache en de schijf: een bestand dat niet meer in de page cache past
+ * maakt de merge passes veel duurder, en een kleine fan-in geeft dan meer passes over de schijf.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx256m"})
+public class ExternalMergeSortBenchmark
+{
+	private static final int RECORD_SIZE = 100;
+	private static final int KEY_SIZE = 10;
+
+	@Param({"67108800", "536870800"})
+	private long fileSize;
+
+	@Param({"16777216", "67108864"})
+	private long runSize;
+
+	@Param({"4", "16"})
+	private int fanIn;
+
+	private Path directory;
+	private Path input;
+	private Path output;
+	private ExternalMergeSort sorter;
+
+	@Setup(Level.Trial)
+	public void createInput() throws IOException
+	{
+		directory = Files.createTempDirectory("external-merge-sort-benchmark");
+		input = directory.resolve("input.bin");
+		output = directory.resolve("output.bin");
+		Random random = new Random(42);
+		ByteBuffer block = ByteBuffer.allocate(1024 * RECORD_SIZE);
+		try (FileChannel channel = FileChannel.open(input, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			for (long written = 0; written < fileSize; ) {
+				random.nextBytes(block.array());
+				block.clear().limit((int) Math.min(block.capacity(), fileSize - written));
+				while (block.hasRemaining()) {
+					written += channel.write(block);
+				}
+			}
+		}
+		sorter = new ExternalMergeSort(RECORD_SIZE, ExternalMergeSort.RecordComparator.unsignedBytes(0, KEY_SIZE),
+			runSize, fanIn, ForkJoinPool.commonPool());
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() throws IOException
+	{
+		Files.deleteIfExists(input);
+		Files.deleteIfExists(output);
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public ExternalMergeSort.Stats sort() throws IOException
+	{
+		ExternalMergeSort.Stats stats = sorter.sort(input, output, directory);
+		System.out.println(stats);
+		return stats;
+	}
+}
@@ -0,0 +1,74 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt {@link ParallelMergeSort} met de sequentiele en parallelle sortering van {@link Arrays},
+ * voor verschillende thresholds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ParallelMergeSortBenchmark
+{
+	@Param({"1000000", "10000000"})
+	private int size;
+
+	@Param({"2048", "8192", "65536"})
+	private int threshold;
+
+	private int[] source;
+	private int[] toSort;
+
+	@Setup(Level.Trial)
+	public void createSource()
+	{
+		source = new Random(42).ints(size).toArray();
+	}
+
+	@Setup(Level.Invocation)
+	public void copySource()
+	{
+		toSort = source.clone();
+	}
+
+	@Benchmark
+	public int[] parallelMergeSort()
+	{
+		ParallelMergeSort.sort(toSort, threshold, ForkJoinPool.commonPool());
+		return toSort;
+	}
+
+	@Benchmark
+	public int[] arraysSort()
+	{
+		Arrays.sort(toSort);
+		return toSort;
+	}
+
+	@Benchmark
+	public int[] arraysParallelSort()
+	{
+		Arrays.parallelSort(toSort);
+		return toSort;
+	}
+}
@@ -0,0 +1,130 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vergelijkt {@link ParallelScan} en {@link ParallelCompaction} met {@link Arrays#parallelPrefix(int[], java.util.function.IntBinaryOperator)},
+ * een parallele stream en sequentiële loops.
+ * <p>
+ * De scans werken in place op dezelfde array, dus de waardes lopen over. Dat maakt voor de hoeveelheid werk niet uit.
+ * De segmenten zijn gemiddeld 100 elementen lang.
+ * <p>
+ * 10^9 elementen past niet in de standaard heap van deze benchmark. Draai die met bijvoorbeeld
+ * -p size=1000000000 -jvmArgs "-Xms8g -Xmx8g".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class ParallelScanBenchmark
+{
+	private static final int AVERAGE_SEGMENT_LENGTH = 100;
+
+	@Param({"1000000", "10000000", "100000000"})
+	private int size;
+
+	@Param({"16384"})
+	private int threshold;
+
+	private int[] array;
+	private int[] segmentOffsets;
+
+	@Setup(Level.Trial)
+	public void createSource()
+	{
+		Random random = new Random(42);
+		array = random.ints(size, 0, 1000).toArray();
+		segmentOffsets = new int[size / AVERAGE_SEGMENT_LENGTH + 1];
+		for (int i = 1; i < segmentOffsets.length - 1; i++) {
+			segmentOffsets[i] = random.nextInt(size);
+		}
+		segmentOffsets[segmentOffsets.length - 1] = size;
+		Arrays.sort(segmentOffsets);
+	}
+
+	@Benchmark
+	public int[] parallelScan()
+	{
+		ParallelScan.prefix(array, Integer::sum, threshold, ForkJoinPool.commonPool());
+		return array;
+	}
+
+	@Benchmark
+	public int[] arraysParallelPrefix()
+	{
+		Arrays.parallelPrefix(array, Integer::sum);
+		return array;
+	}
+
+	@Benchmark
+	public int[] sequentialScan()
+	{
+		for (int i = 1; i < array.length; i++) {
+			array[i] += array[i - 1];
+		}
+		return array;
+	}
+
+	@Benchmark
+	public int[] parallelSegmentedReduce()
+	{
+		return ParallelScan.segmentedReduce(array, segmentOffsets, 0, Integer::sum, threshold, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public int[] sequentialSegmentedReduce()
+	{
+		int[] results = new int[segmentOffsets.length - 1];
+		for (int segment = 0; segment < results.length; segment++) {
+			int sum = 0;
+			for (int i = segmentOffsets[segment]; i < segmentOffsets[segment + 1]; i++) {
+				sum += array[i];
+			}
+			results[segment] = sum;
+		}
+		return results;
+	}
+
+	@Benchmark
+	public int[] parallelFilter()
+	{
+		return ParallelCompaction.filter(array, x -> (x & 1) == 0, threshold, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public int[] parallelStreamFilter()
+	{
+		return Arrays.stream(array).parallel().filter(x -> (x & 1) == 0).toArray();
+	}
+
+	@Benchmark
+	public int[] sequentialFilter()
+	{
+		int[] target = new int[array.length];
+		int count = 0;
+		for (int value : array) {
+			if ((value & 1) == 0) {
+				target[count++] = value;
+			}
+		}
+		return Arrays.copyOf(target, count);
+	}
+}
@@ -0,0 +1,147 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Meet wat de encounter order kost bij de terminal operaties uit {@link ParallelStreams}, en bij limit, skip en distinct.
+ * <p>
+ * Elke benchmark draait op een parallele stream over een List&lt;Integer&gt;, met order:
+ *  - ORDERED: de stream heeft de volgorde van de list;
+ *  - UNORDERED: direct na de bron wordt {@link Stream#unordered()} aangeroepen,
+ *  zoals {@link UnorderedPipelines} voor distinct doet als het resultaat geen volgorde nodig heeft.
+ *  Bij limit en skip kiest de unordered variant andere elementen, die meting laat alleen zien wat de volgorde kost.
+ * <p>
+ * Het aantal threads van de common pool kan je niet als @Param opgeven, daarom loopt {@link #main(String[])}
+ * over een parallelism van 1, 2, 4 en 8 heen. Via de benchmarks.jar kan je dat zelf kiezen met
+ * -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderingCostBenchmark
+{
+	@Param({"10000", "1000000"})
+	private int size;
+
+	@Param({"ORDERED", "UNORDERED"})
+	private String order;
+
+	private List<Integer> source;
+
+	@Setup
+	public void setUp()
+	{
+		source = IntStream.range(0, size).boxed().collect(Collectors.toCollection(ArrayList::new));
+	}
+
+	private Stream<Integer> stream()
+	{
+		Stream<Integer> stream = source.parallelStream();
+		return "UNORDERED".equals(order) ? stream.unordered() : stream;
+	}
+
+	/**
+	 * Een beetje werk per element, dat de JIT niet weg kan optimaliseren.
+	 */
+	private static void work(int x)
+	{
+		Blackhole.consumeCPU(x & 7);
+	}
+
+	@Benchmark
+	public void forEach()
+	{
+		stream().forEach(OrderingCostBenchmark::work);
+	}
+
+	@Benchmark
+	public void forEachOrdered()
+	{
+		stream().forEachOrdered(OrderingCostBenchmark::work);
+	}
+
+	@Benchmark
+	public Optional<Integer> findFirst()
+	{
+		int target = size / 2;
+		return stream().filter(x -> x >= target).findFirst();
+	}
+
+	@Benchmark
+	public Optional<Integer> findAny()
+	{
+		int target = size / 2;
+		return stream().filter(x -> x >= target).findAny();
+	}
+
+	/**
+	 * Na een filter is de grootte van de stream onbekend, dus kan limit de bron niet meer simpelweg in stukken knippen.
+	 */
+	@Benchmark
+	public long limit()
+	{
+		return stream().filter(x -> (x & 1) == 0).limit(size / 4).mapToLong(Integer::longValue).sum();
+	}
+
+	@Benchmark
+	public long skip()
+	{
+		return stream().filter(x -> (x & 1) == 0).skip(size / 4).mapToLong(Integer::longValue).sum();
+	}
+
+	@Benchmark
+	public long distinct()
+	{
+		return stream().map(x -> x % 1000).distinct().mapToLong(Integer::longValue).sum();
+	}
+
+	@Benchmark
+	public List<Integer> toList()
+	{
+		return stream().map(x -> x + 1).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public Set<Integer> toSet()
+	{
+		return stream().map(x -> x % 1000).collect(Collectors.toSet());
+	}
+
+	public static void main(String[] args) throws RunnerException
+	{
+		for (int parallelism : new int[]{1, 2, 4, 8}) {
+			Options options = new OptionsBuilder()
+				.include(OrderingCostBenchmark.class.getSimpleName())
+				.jvmArgsAppend("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + parallelism)
+				.build();
+			new Runner(options).run();
+		}
+	}
+}
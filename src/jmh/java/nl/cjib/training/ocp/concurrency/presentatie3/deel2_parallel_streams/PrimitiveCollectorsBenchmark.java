@@ -0,0 +1,99 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verzamelt 10^7 elementen van een parallele stream over een List&lt;Integer&gt;, op verschillende manieren:
+ * <ul>
+ *     <li>toList: {@link Collectors#toList()};</li>
+ *     <li>arrayListCollect: collect(ArrayList::new, add, addAll), zoals in {@link ParallelStreams};</li>
+ *     <li>toIntArray: {@link PrimitiveCollectors#toIntArray(java.util.function.ToIntFunction)} met de standaard leaf grootte;</li>
+ *     <li>toIntArrayPresized: idem, met een leaf grootte die bij het aantal deeltaken past;</li>
+ *     <li>toIntArrayConcurrent: {@link PrimitiveCollectors#toIntArrayConcurrent(java.util.function.ToIntFunction, int)};</li>
+ *     <li>mapToIntToArray: mapToInt(...).toArray() uit de JDK, ter vergelijking.</li>
+ * </ul>
+ * Draai met -prof gc om ook het verschil in gealloceerd geheugen te zien.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PrimitiveCollectorsBenchmark
+{
+	@Param({"10000000"})
+	private int size;
+
+	private List<Integer> source;
+	private int presizedLeafCapacity;
+
+	@Setup
+	public void setUp()
+	{
+		source = IntStream.range(0, size).boxed().collect(Collectors.toCollection(ArrayList::new));
+		// Een parallele stream maakt ongeveer 4 deeltaken per thread.
+		presizedLeafCapacity = Math.max(1, size / (4 * Runtime.getRuntime().availableProcessors()));
+	}
+
+	@Benchmark
+	public List<Integer> toList()
+	{
+		return source.parallelStream()
+			.map(x -> x * 2)
+			.collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<Integer> arrayListCollect()
+	{
+		return source.parallelStream()
+			.map(x -> x * 2)
+			.collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+	}
+
+	@Benchmark
+	public int[] toIntArray()
+	{
+		return source.parallelStream()
+			.collect(PrimitiveCollectors.toIntArray(x -> x * 2));
+	}
+
+	@Benchmark
+	public int[] toIntArrayPresized()
+	{
+		return source.parallelStream()
+			.collect(PrimitiveCollectors.toIntArray(x -> x * 2, presizedLeafCapacity));
+	}
+
+	@Benchmark
+	public int[] toIntArrayConcurrent()
+	{
+		return source.parallelStream()
+			.collect(PrimitiveCollectors.toIntArrayConcurrent(x -> x * 2, size));
+	}
+
+	@Benchmark
+	public int[] mapToIntToArray()
+	{
+		return source.parallelStream()
+			.mapToInt(x -> x * 2)
+			.toArray();
+	}
+}
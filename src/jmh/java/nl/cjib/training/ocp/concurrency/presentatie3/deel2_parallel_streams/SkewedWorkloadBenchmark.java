@@ -0,0 +1,129 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Meet een parallele stream over een bron waarin het werk per element scheef verdeeld is.
+ * <p>
+ * skew:
+ *  - LINEAR: het werk voor element i groeit lineair met i;
+ *  - HOTSPOT: de laatste 5% van de elementen kost 100 keer zoveel als de rest.
+ * <p>
+ * source:
+ *  - DEFAULT: {@link IntStream#range(int, int)}, gesplitst op aantallen;
+ *  - BALANCED: {@link BalancedSpliterators#range(int, int, int)} met een minimale splitgrootte;
+ *  - WEIGHTED: {@link BalancedSpliterators#weightedRange(int, int, int, IntToLongFunction)} met het werk als kosten.
+ * <p>
+ * pool: COMMON voert de stream uit op de common pool, DEDICATED op een eigen pool via {@link StreamPools}
+ * met evenveel threads als er processoren zijn.
+ * <p>
+ * Bij HOTSPOT zit de helft van het werk in de laatste 5000 elementen. DEFAULT en BALANCED stoppen met splitsen bij
+ * (aantal elementen) / (4 * parallelism), dus 1 taak krijgt een groot deel van de hotspot en de andere threads wachten.
+ * WEIGHTED meldt een grootte die evenredig is met de kosten, en splitst de hotspot door tot minSplitSize:
+ * met 8 threads en minSplitSize 64 is de duurste taak ongeveer 3% van het werk, tegen ruim de helft bij BALANCED.
+ * Met minSplitSize 1024 kan de hotspot maar in een paar delen, en is de winst kleiner.
+ * Draai dit op een machine met meerdere cores, anders is er niets te verdelen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkewedWorkloadBenchmark
+{
+	private static final int SIZE = 100_000;
+	private static final int MAX_WORK = 2_000;
+
+	@Param({"LINEAR", "HOTSPOT"})
+	private String skew;
+
+	@Param({"DEFAULT", "BALANCED", "WEIGHTED"})
+	private String source;
+
+	@Param({"COMMON", "DEDICATED"})
+	private String pool;
+
+	@Param({"64", "1024"})
+	private int minSplitSize;
+
+	private ForkJoinPool dedicatedPool;
+	private IntToLongFunction work;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		dedicatedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		if ("LINEAR".equals(skew)) {
+			work = i -> 1L + (long) i * MAX_WORK / SIZE;
+		}
+		else {
+			work = i -> i >= SIZE - SIZE / 20 ? MAX_WORK : MAX_WORK / 100;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		dedicatedPool.shutdown();
+	}
+
+	@Benchmark
+	public long skewed()
+	{
+		if ("DEDICATED".equals(pool)) {
+			return StreamPools.invoke(dedicatedPool, this::pipeline);
+		}
+		return pipeline();
+	}
+
+	private long pipeline()
+	{
+		IntStream stream;
+		switch (source) {
+			case "DEFAULT":
+				stream = IntStream.range(0, SIZE).parallel();
+				break;
+			case "BALANCED":
+				stream = BalancedSpliterators.range(0, SIZE, minSplitSize);
+				break;
+			case "WEIGHTED":
+				stream = BalancedSpliterators.weightedRange(0, SIZE, minSplitSize, work);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown source: " + source);
+		}
+		return stream.mapToLong(i -> spin(work.applyAsLong(i))).sum();
+	}
+
+	/**
+	 * Simuleert werk dat evenredig is met units.
+	 */
+	private static long spin(long units)
+	{
+		long result = 0;
+		for (long i = 0; i < units; i++) {
+			Blackhole.consumeCPU(1);
+			result += i;
+		}
+		return result;
+	}
+}
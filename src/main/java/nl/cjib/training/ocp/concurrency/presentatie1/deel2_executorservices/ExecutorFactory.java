@@ -0,0 +1,108 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maakt een {@link ExecutorService} aan op basis van een {@link Mode}, als vervanging van de losse
+ * factory methods van {@link Executors} uit {@link ExecutorServices}.
+ * <p>
+ * Naast de bekende executors is er de {@link Mode#VIRTUAL} modus: elke task krijgt een eigen virtual thread.
+ * Virtual threads zijn heel goedkoop, dus bij tasks die vooral wachten op I/O
+ * ben je niet meer beperkt door het aantal platform threads in een pool.
+ * <p>
+ * Virtual threads bestaan pas vanaf Java 21, terwijl dit project voor Java 11 gebouwd wordt.
+ * Daarom wordt {@code Executors.newVirtualThreadPerTaskExecutor()} hier via een {@link MethodHandle} opgezocht.
+ * Op een oudere JVM geeft {@link Mode#VIRTUAL} een {@link UnsupportedOperationException}.
+ * Met het maven profiel java21 ({@code mvn -Pjava21 ...}) wordt het project voor Java 21 gebouwd.
+ */
+public final class ExecutorFactory
+{
+	public enum Mode
+	{
+		/**
+		 * Zie {@link Executors#newSingleThreadExecutor()}.
+		 */
+		SINGLE,
+		/**
+		 * Zie {@link Executors#newFixedThreadPool(int)}.
+		 */
+		FIXED,
+		/**
+		 * Zie {@link Executors#newCachedThreadPool()}.
+		 */
+		CACHED,
+		/**
+		 * Een nieuwe virtual thread per task (vanaf Java 21).
+		 */
+		VIRTUAL
+	}
+
+	// null als deze JVM geen virtual threads heeft.
+	private static final MethodHandle newVirtualThreadPerTaskExecutor = findVirtualThreadPerTaskExecutor();
+
+	private ExecutorFactory()
+	{
+	}
+
+	/**
+	 * Maak een executor aan voor de gegeven modus.
+	 *
+	 * @param threads het aantal threads, alleen gebruikt bij {@link Mode#FIXED}.
+	 * @throws UnsupportedOperationException als {@link Mode#VIRTUAL} gevraagd wordt op een JVM zonder virtual threads.
+	 */
+	public static ExecutorService create(Mode mode, int threads)
+	{
+		switch (mode) {
+			case SINGLE:
+				return Executors.newSingleThreadExecutor();
+			case FIXED:
+				return Executors.newFixedThreadPool(threads);
+			case CACHED:
+				return Executors.newCachedThreadPool();
+			case VIRTUAL:
+				return newVirtualThreadPerTaskExecutor();
+			default:
+				throw new IllegalArgumentException("Unknown mode: " + mode);
+		}
+	}
+
+	public static boolean isVirtualThreadsSupported()
+	{
+		return newVirtualThreadPerTaskExecutor != null;
+	}
+
+	/**
+	 * Een executor die voor elke task een nieuwe virtual thread start.
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor()
+	{
+		if (newVirtualThreadPerTaskExecutor == null) {
+			throw new UnsupportedOperationException(
+				"Virtual threads require Java 21 or newer, but this is Java " + Runtime.version().feature());
+		}
+		try {
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invokeExact();
+		}
+		catch (RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	private static MethodHandle findVirtualThreadPerTaskExecutor()
+	{
+		try {
+			return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+				MethodType.methodType(ExecutorService.class));
+		}
+		catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+/**
+ * De metrics van een {@link InstrumentedExecutorService}, zoals ze via JMX zichtbaar zijn (bijvoorbeeld in JConsole).
+ * Alle tijden zijn in microseconden.
+ */
+public interface ExecutorMetricsMXBean
+{
+	long getSubmittedTasks();
+
+	long getCompletedTasks();
+
+	long getFailedTasks();
+
+	long getRejectedTasks();
+
+	/**
+	 * Het aantal tasks dat wel gesubmit maar nog niet gestart is.
+	 */
+	long getQueueDepth();
+
+	/**
+	 * Het aantal threads dat op dit moment een task uitvoert.
+	 */
+	long getActiveThreads();
+
+	double getQueueWaitMeanMicros();
+
+	long getQueueWaitP50Micros();
+
+	long getQueueWaitP99Micros();
+
+	long getQueueWaitMaxMicros();
+
+	double getRunTimeMeanMicros();
+
+	long getRunTimeP50Micros();
+
+	long getRunTimeP99Micros();
+
+	long getRunTimeMaxMicros();
+}
@@ -25,9 +25,22 @@ public class ExecutorServices
 		// Hierbij worden threads die weer vrijkomen hergebruikt.
 		ExecutorService executorServiceCached = Executors.newCachedThreadPool();
 
+		// Vanaf Java 21 kan je ook een ExecutorService gebruiken die voor elke task een virtual thread start.
+		// De ExecutorFactory kan alle bovenstaande executors aanmaken, en ook deze als de JVM het ondersteunt.
+		if (ExecutorFactory.isVirtualThreadsSupported()) {
+			ExecutorService executorServiceVirtual = ExecutorFactory.create(ExecutorFactory.Mode.VIRTUAL, 0);
+			executorServiceVirtual.submit(() -> System.out.println("Hello virtual thread"));
+			executorServiceVirtual.shutdown();
+		}
+
 		// Hier zie hoe je een task kan submitten naar de ExecutorService.
 		executorServiceSingle.submit(() -> System.out.println("Hello ExecutorService"));
 
+		// Je kan een ExecutorService ook wrappen om te meten hoe lang tasks wachten en hoe lang ze lopen.
+		InstrumentedExecutorService instrumentedExecutorService = new InstrumentedExecutorService(executorServiceMultiple);
+		instrumentedExecutorService.submit(() -> System.out.println("Hello InstrumentedExecutorService"));
+		instrumentedExecutorService.shutdown();
+
 		// Een ExecutorService moet afgesloten worden, om te voorkomen dat threads onnodig blijven draaien.
 		// De shutdown methode zorgt ervoor dat geen nieuwe tasks meer gesubmit kunnen worden.
 		// De nog draaiende tasks worden nog wel afgerond.
@@ -0,0 +1,364 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Een {@link ExecutorService} die een andere {@link ExecutorService} wrapt en bijhoudt hoe de tasks verlopen.
+ * <p>
+ * Per task wordt vastgelegd:
+ *  - hoe lang de task in de queue stond (van submit tot start);
+ *  - hoe lang de task liep (van start tot einde).
+ * Daarnaast worden het aantal gesubmitte, afgeronde, mislukte en geweigerde tasks bijgehouden,
+ * en kan je de huidige queue diepte en het aantal actieve threads opvragen.
+ * <p>
+ * Met deze cijfers kan je het verschil zien tussen een te kleine pool (lange wachttijd in de queue)
+ * en trage tasks (lange looptijd).
+ * <p>
+ * Alles wordt vastgelegd met {@link LongAdder}s en {@link LatencyHistogram}s, dus zonder locks.
+ * Met {@link #registerMBean(String)} worden de metrics via JMX beschikbaar gemaakt.
+ * <p>
+ * Omdat deze class {@link AbstractExecutorService} uitbreidt, lopen submit, invokeAll en invokeAny
+ * allemaal via {@link #execute(Runnable)} en worden ze dus ook gemeten.
+ * Een {@link java.util.concurrent.ExecutorCompletionService} (die invokeAny gebruikt) wrapt de task nog een keer
+ * in een eigen future, die altijd normaal afloopt. Daarom meldt de task zelf of hij mislukt is.
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService implements ExecutorMetricsMXBean
+{
+	private final ExecutorService delegate;
+
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	private final LatencyHistogram runTime = new LatencyHistogram();
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder started = new LongAdder();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+	private final LongAdder active = new LongAdder();
+	// De TimedRunnable die per thread een onbekende future uitvoert, zodat een task daarbinnen zijn uitkomst kan melden.
+	private final Map<Thread, TimedRunnable> wrapping = new ConcurrentHashMap<>();
+
+	private volatile ObjectName objectName;
+
+	public InstrumentedExecutorService(ExecutorService delegate)
+	{
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Maak de metrics van deze executor beschikbaar via JMX, onder de gegeven naam.
+	 */
+	public InstrumentedExecutorService registerMBean(String poolName) throws JMException
+	{
+		ObjectName name = new ObjectName("nl.cjib.training.ocp.concurrency:type=ExecutorService,name=" + ObjectName.quote(poolName));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		objectName = name;
+		return this;
+	}
+
+	/**
+	 * Haal de metrics van deze executor weer weg uit JMX, bijvoorbeeld na een shutdown.
+	 */
+	public void unregisterMBean() throws JMException
+	{
+		ObjectName name = objectName;
+		if (name != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			objectName = null;
+		}
+	}
+
+	@Override
+	public void execute(Runnable command)
+	{
+		TimedRunnable task = new TimedRunnable(command);
+		submitted.increment();
+		try {
+			delegate.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			submitted.decrement();
+			rejected.increment();
+			throw e;
+		}
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value)
+	{
+		return new OutcomeTask<>(Executors.callable(runnable, value));
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable)
+	{
+		return new OutcomeTask<>(callable);
+	}
+
+	@Override
+	public void shutdown()
+	{
+		delegate.shutdown();
+	}
+
+	/**
+	 * Geeft de tasks terug die nog niet gestart waren, zonder de meet-wrapper.
+	 */
+	@Override
+	public List<Runnable> shutdownNow()
+	{
+		List<Runnable> pending = delegate.shutdownNow();
+		List<Runnable> unwrapped = new ArrayList<>(pending.size());
+		for (Runnable runnable : pending) {
+			if (runnable instanceof TimedRunnable) {
+				discarded.increment();
+				unwrapped.add(((TimedRunnable) runnable).command);
+			}
+			else {
+				unwrapped.add(runnable);
+			}
+		}
+		return unwrapped;
+	}
+
+	@Override
+	public boolean isShutdown()
+	{
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated()
+	{
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+	public LatencyHistogram getQueueWait()
+	{
+		return queueWait;
+	}
+
+	public LatencyHistogram getRunTime()
+	{
+		return runTime;
+	}
+
+	@Override
+	public long getSubmittedTasks()
+	{
+		return submitted.sum();
+	}
+
+	@Override
+	public long getCompletedTasks()
+	{
+		return completed.sum();
+	}
+
+	@Override
+	public long getFailedTasks()
+	{
+		return failed.sum();
+	}
+
+	@Override
+	public long getRejectedTasks()
+	{
+		return rejected.sum();
+	}
+
+	@Override
+	public long getQueueDepth()
+	{
+		// De tellers worden los van elkaar uitgelezen, dus kort na een submit kan dit even niet kloppen.
+		return Math.max(0L, submitted.sum() - started.sum() - discarded.sum());
+	}
+
+	@Override
+	public long getActiveThreads()
+	{
+		return Math.max(0L, active.sum());
+	}
+
+	@Override
+	public double getQueueWaitMeanMicros()
+	{
+		return queueWait.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getQueueWaitP50Micros()
+	{
+		return queueWait.getPercentile(50.0, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getQueueWaitP99Micros()
+	{
+		return queueWait.getPercentile(99.0, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getQueueWaitMaxMicros()
+	{
+		return queueWait.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public double getRunTimeMeanMicros()
+	{
+		return runTime.getMean(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getRunTimeP50Micros()
+	{
+		return runTime.getPercentile(50.0, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getRunTimeP99Micros()
+	{
+		return runTime.getPercentile(99.0, TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public long getRunTimeMaxMicros()
+	{
+		return runTime.getMax(TimeUnit.MICROSECONDS);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "submitted=" + getSubmittedTasks() + ", completed=" + getCompletedTasks() + ", failed=" + getFailedTasks()
+			+ ", rejected=" + getRejectedTasks() + ", queueDepth=" + getQueueDepth() + ", active=" + getActiveThreads()
+			+ System.lineSeparator() + "  queue wait: " + queueWait
+			+ System.lineSeparator() + "  run time:   " + runTime;
+	}
+
+	/**
+	 * Legt de tijd van submitten vast, en meet bij het uitvoeren de wachttijd en de looptijd.
+	 */
+	private class TimedRunnable implements Runnable
+	{
+		private final Runnable command;
+		private final long submitNanos = System.nanoTime();
+		// De uitkomst die een OutcomeTask binnen een andere future gemeld heeft, of null.
+		private Boolean innerFailed;
+
+		private TimedRunnable(Runnable command)
+		{
+			this.command = command;
+		}
+
+		@Override
+		public void run()
+		{
+			long start = System.nanoTime();
+			started.increment();
+			active.increment();
+			queueWait.record(start - submitNanos);
+			boolean foreignFuture = command instanceof Future && !(command instanceof OutcomeTask);
+			if (foreignFuture) {
+				wrapping.put(Thread.currentThread(), this);
+			}
+			try {
+				command.run();
+				boolean hasFailed = innerFailed != null
+					? innerFailed
+					: command instanceof Future && hasFailed((Future<?>) command);
+				if (hasFailed) {
+					failed.increment();
+				}
+				else {
+					completed.increment();
+				}
+			}
+			catch (RuntimeException | Error e) {
+				failed.increment();
+				throw e;
+			}
+			finally {
+				if (foreignFuture) {
+					wrapping.remove(Thread.currentThread());
+				}
+				active.decrement();
+				runTime.record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * De task die submit, invokeAll en invokeAny maken. Als deze binnen een andere future loopt,
+	 * geeft hij zijn uitkomst door aan de TimedRunnable van die future.
+	 */
+	private class OutcomeTask<T> extends FutureTask<T>
+	{
+		private OutcomeTask(Callable<T> callable)
+		{
+			super(callable);
+		}
+
+		@Override
+		public void run()
+		{
+			super.run();
+			TimedRunnable outer = wrapping.get(Thread.currentThread());
+			if (outer != null) {
+				outer.innerFailed = hasFailed(this);
+			}
+		}
+	}
+
+	/**
+	 * Tasks die via submit binnenkomen zijn {@link Future}s, die hun exception zelf opvangen.
+	 * Als de future klaar is, geeft get() direct de uitkomst, zonder te wachten.
+	 */
+	private static boolean hasFailed(Future<?> future)
+	{
+		if (!future.isDone()) {
+			return false;
+		}
+		try {
+			future.get();
+			return false;
+		}
+		catch (ExecutionException | CancellationException e) {
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Een lock-free histogram van tijdsduren in nanoseconden.
+ * <p>
+ * Elke macht van 2 (van 2^i tot 2^(i+1)) is verdeeld in {@value #SUB_BUCKETS} even brede buckets,
+ * dus een bucket is hoogstens 1/{@value #SUB_BUCKETS} van zijn ondergrens breed.
+ * Binnen de bucket van een percentiel wordt lineair geïnterpoleerd, zodat een percentiel niet zomaar
+ * de bovengrens van de bucket is, maar er meestal dicht bij de echte waarde zit.
+ * Het vastleggen van een waarde kost maar een paar instructies.
+ * De buckets zijn {@link LongAdder}s, zodat veel threads tegelijk kunnen vastleggen zonder op elkaar te wachten.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Waardes onder SUB_BUCKETS krijgen elk een eigen bucket, daarboven SUB_BUCKETS per macht van 2 tot en met 2^62.
+	private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+	public LatencyHistogram()
+	{
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long nanos)
+	{
+		long value = Math.max(0L, nanos);
+		buckets[bucketOf(value)].increment();
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	private static int bucketOf(long value)
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		// De bits direct onder de hoogste bit bepalen de sub bucket.
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long lowerBoundOf(int bucket)
+	{
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+
+	private static long widthOf(int bucket)
+	{
+		return bucket < SUB_BUCKETS ? 1L : 1L << (bucket / SUB_BUCKETS - 1);
+	}
+
+	public long getCount()
+	{
+		return count.sum();
+	}
+
+	public double getMean(TimeUnit unit)
+	{
+		long n = count.sum();
+		return n == 0 ? 0.0 : (double) total.sum() / n / unit.toNanos(1);
+	}
+
+	public long getMax(TimeUnit unit)
+	{
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Geeft een schatting van het gegeven percentiel, bijvoorbeeld 99.0 voor de p99.
+	 * Binnen de bucket waarin het percentiel valt, wordt aangenomen dat de waardes gelijkmatig verdeeld zijn.
+	 */
+	public long getPercentile(double percentile, TimeUnit unit)
+	{
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0L;
+		}
+		long threshold = Math.max(1L, (long) Math.ceil(n * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			if (seen + counts[i] >= threshold) {
+				double fraction = (double) (threshold - seen) / counts[i];
+				long width = widthOf(i);
+				// Math.min omdat de double afronding bij de breedste buckets net boven width - 1 kan uitkomen.
+				long estimate = lowerBoundOf(i) + Math.min(width - 1, (long) (fraction * (width - 1)));
+				// Een schatting kan nooit groter zijn dan het echte maximum.
+				return unit.convert(Math.min(estimate, max.get()), TimeUnit.NANOSECONDS);
+			}
+			seen += counts[i];
+		}
+		return getMax(unit);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d, mean=%.1f us, p50=%d us, p99=%d us, max=%d us",
+			getCount(), getMean(TimeUnit.MICROSECONDS),
+			getPercentile(50.0, TimeUnit.MICROSECONDS),
+			getPercentile(99.0, TimeUnit.MICROSECONDS),
+			getMax(TimeUnit.MICROSECONDS));
+	}
+}
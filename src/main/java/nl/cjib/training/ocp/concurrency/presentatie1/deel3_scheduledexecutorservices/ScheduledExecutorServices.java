@@ -3,12 +3,15 @@ package nl.cjib.training.ocp.concurrency.presentatie1.deel3_scheduledexecutorser
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Een {@link ScheduledExecutorService} is een speciale vorm van de {@link ExecutorService}.
  * De {@link ScheduledExecutorService} maakt gebruik ook van 1 of meer threads,
  * maar in plaats van de gesubmitte task direct uit te voeren kan deze voor een bepaalde tijd uitgesteld worden.
+ * <p>
+ * Als je heel veel timeouts tegelijk moet plannen (en weer annuleren), kijk dan ook naar de {@link TimingWheelScheduler}.
  */
 public class ScheduledExecutorServices
 {
@@ -58,5 +61,24 @@ public class ScheduledExecutorServices
 		// De shutdown zorgt er ook voor dat een herhaaldelijk uitgevoerde task niet opnieuw gesubmit wordt.
 		executorServiceSingle.shutdown();
 
+		// De TimingWheelScheduler heeft dezelfde methods, maar plant en annuleert in O(1) in plaats van O(log n).
+		// Hier worden 100.000 timeouts gepland, waarvan er direct weer 99.999 geannuleerd worden.
+		ScheduledExecutorService timingWheel = new TimingWheelScheduler(2);
+		ScheduledFuture<?>[] timeouts = new ScheduledFuture<?>[100_000];
+		for (int i = 0; i < timeouts.length; i++) {
+			int id = i;
+			timeouts[i] = timingWheel.schedule(() -> System.out.println("Timeout " + id + " van het timing wheel"), 1, TimeUnit.SECONDS);
+		}
+		for (int i = 1; i < timeouts.length; i++) {
+			timeouts[i].cancel(false);
+		}
+		timingWheel.scheduleAtFixedRate(
+			() -> System.out.println("Hello TimingWheelScheduler at fixed rate"),
+			0,
+			500,
+			TimeUnit.MILLISECONDS);
+		Thread.sleep(2000);
+		timingWheel.shutdown();
+		timingWheel.awaitTermination(1, TimeUnit.SECONDS);
 	}
 }
@@ -0,0 +1,530 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel3_scheduledexecutorservices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Een {@link ScheduledExecutorService} op basis van een hashed timing wheel.
+ * <p>
+ * De {@link ScheduledThreadPoolExecutor} (uit {@link Executors#newScheduledThreadPool(int)}) bewaart alle
+ * geplande tasks in een heap achter 1 lock. Plannen en annuleren kosten daardoor O(log n), en bij honderdduizenden
+ * timeouts moeten alle threads op die ene lock wachten.
+ * <p>
+ * Een timing wheel is een ring van buckets, waarbij elke bucket 1 tick (bijvoorbeeld 1 milliseconde) voorstelt.
+ * Een task komt in de bucket van het tick waarop hij moet starten. Ligt dat verder weg dan 1 rondje,
+ * dan wordt er bijgehouden hoeveel rondjes de task nog moet wachten.
+ * <ul>
+ *     <li>Plannen is O(1): de task wordt in een lock-free queue gezet en bij het volgende tick in zijn bucket gehangen;</li>
+ *     <li>Annuleren is O(1): de task wordt gemarkeerd en bij het volgende tick uit zijn bucket gehaald;</li>
+ *     <li>Elk tick wordt alleen de bucket van dat tick bekeken.</li>
+ * </ul>
+ * De prijs is precisie: een task start op zijn vroegst op het geplande moment, en uiterlijk ongeveer 1 tick later.
+ * <p>
+ * Het wheel wordt bijgehouden door 1 tick thread. De tasks zelf worden uitgevoerd door een pool van worker threads.
+ * Net als bij de {@link ScheduledThreadPoolExecutor} geldt:
+ *  - een herhaaldelijke task wordt nooit tegelijk met zichzelf uitgevoerd;
+ *  - als een herhaaldelijke task een exception gooit, wordt hij niet opnieuw uitgevoerd;
+ *  - na een shutdown worden eenmalige tasks nog wel uitgevoerd, maar herhaaldelijke tasks niet meer.
+ */
+public class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService
+{
+	private static final int RUNNING = 0;
+	private static final int SHUTDOWN = 1;
+	private static final int STOP = 2;
+
+	// Het maximale aantal nieuwe tasks dat per tick in het wheel gehangen wordt, zodat een tick niet te lang duurt.
+	private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+	private final long tickNanos;
+	private final int wheelSize;
+	private final int mask;
+	private final WheelTask<?>[] heads;
+	private final WheelTask<?>[] tails;
+
+	private final Queue<WheelTask<?>> newTasks = new ConcurrentLinkedQueue<>();
+	private final Queue<WheelTask<?>> cancelledTasks = new ConcurrentLinkedQueue<>();
+	// Het aantal tasks dat in het wheel hangt of onderweg is naar het wheel.
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private final ExecutorService workers;
+	private final Thread tickThread;
+	private final CountDownLatch tickThreadDone = new CountDownLatch(1);
+	private final long startNanos = System.nanoTime();
+	private volatile int state = RUNNING;
+
+	// Alleen gebruikt door de tick thread.
+	private long tick;
+	// Gevuld door de tick thread voordat die stopt, en daarna 1 keer opgehaald door shutdownNow().
+	private final List<Runnable> unstarted = new ArrayList<>();
+
+	/**
+	 * Een scheduler met een tick van 1 milliseconde en 512 buckets.
+	 *
+	 * @param threads het aantal worker threads dat de tasks uitvoert.
+	 */
+	public TimingWheelScheduler(int threads)
+	{
+		this(threads, 1, TimeUnit.MILLISECONDS, 512);
+	}
+
+	/**
+	 * @param threads      het aantal worker threads dat de tasks uitvoert.
+	 * @param tickDuration de duur van 1 tick, en daarmee de precisie van de scheduler.
+	 * @param wheelSize    het aantal buckets, wordt naar boven afgerond op een macht van 2.
+	 */
+	public TimingWheelScheduler(int threads, long tickDuration, TimeUnit unit, int wheelSize)
+	{
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be positive, but was " + tickDuration);
+		}
+		if (wheelSize < 1 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30, but was " + wheelSize);
+		}
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheelSize = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+		this.mask = this.wheelSize - 1;
+		this.heads = new WheelTask<?>[this.wheelSize];
+		this.tails = new WheelTask<?>[this.wheelSize];
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.tickThread = new Thread(this::runWheel, "timing-wheel-tick");
+		this.tickThread.start();
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+	{
+		requireNonNull(command, unit);
+		return enqueue(new WheelTask<Void>(command, null, triggerTime(delay, unit), 0L));
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+	{
+		requireNonNull(callable, unit);
+		return enqueue(new WheelTask<>(callable, triggerTime(delay, unit)));
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+	{
+		requireNonNull(command, unit);
+		if (period <= 0) {
+			throw new IllegalArgumentException("period must be positive, but was " + period);
+		}
+		return enqueue(new WheelTask<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period)));
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+	{
+		requireNonNull(command, unit);
+		if (delay <= 0) {
+			throw new IllegalArgumentException("delay must be positive, but was " + delay);
+		}
+		// Net als bij de ScheduledThreadPoolExecutor betekent een negatieve periode: wachttijd na afloop.
+		return enqueue(new WheelTask<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+	}
+
+	@Override
+	public void execute(Runnable command)
+	{
+		schedule(command, 0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public synchronized void shutdown()
+	{
+		if (state == RUNNING) {
+			state = SHUTDOWN;
+		}
+		LockSupport.unpark(tickThread);
+	}
+
+	/**
+	 * Stopt de tick thread en de workers, en geeft de tasks terug die nog niet gestart waren.
+	 */
+	@Override
+	public List<Runnable> shutdownNow()
+	{
+		synchronized (this) {
+			state = STOP;
+		}
+		LockSupport.unpark(tickThread);
+		if (Thread.currentThread() != tickThread) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					tickThreadDone.await();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		List<Runnable> notStarted;
+		// Net als bij een ExecutorService krijgt alleen de eerste aanroep de niet gestarte tasks terug.
+		synchronized (unstarted) {
+			notStarted = new ArrayList<>(unstarted);
+			unstarted.clear();
+		}
+		notStarted.addAll(workers.shutdownNow());
+		return notStarted;
+	}
+
+	@Override
+	public boolean isShutdown()
+	{
+		return state != RUNNING;
+	}
+
+	@Override
+	public boolean isTerminated()
+	{
+		return tickThreadDone.getCount() == 0 && workers.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if (!tickThreadDone.await(timeout, unit)) {
+			return false;
+		}
+		return workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Het aantal tasks dat nog in het wheel hangt of op het wheel wacht.
+	 */
+	public int getPendingTasks()
+	{
+		return pending.get();
+	}
+
+	private static void requireNonNull(Object task, TimeUnit unit)
+	{
+		if (task == null || unit == null) {
+			throw new NullPointerException();
+		}
+	}
+
+	private static long triggerTime(long delay, TimeUnit unit)
+	{
+		// Begrens de wachttijd, zodat het optellen bij nanoTime niet overloopt.
+		long delayNanos = Math.min(unit.toNanos(Math.max(0L, delay)), Long.MAX_VALUE >> 1);
+		return System.nanoTime() + delayNanos;
+	}
+
+	private <V> WheelTask<V> enqueue(WheelTask<V> task)
+	{
+		if (task.deadline - System.nanoTime() <= 0) {
+			if (isShutdown()) {
+				throw new RejectedExecutionException("The scheduler has been shut down");
+			}
+			dispatch(task);
+			return task;
+		}
+		// Eerst pending ophogen en dan pas de state controleren, zodat de tick thread deze task altijd meetelt.
+		pending.incrementAndGet();
+		if (isShutdown()) {
+			pending.decrementAndGet();
+			throw new RejectedExecutionException("The scheduler has been shut down");
+		}
+		newTasks.add(task);
+		return task;
+	}
+
+	/**
+	 * Plan een herhaaldelijke task opnieuw in, nadat hij uitgevoerd is.
+	 */
+	private void reschedule(WheelTask<?> task)
+	{
+		pending.incrementAndGet();
+		if (isShutdown()) {
+			pending.decrementAndGet();
+			task.cancel(false);
+			return;
+		}
+		newTasks.add(task);
+	}
+
+	private void dispatch(WheelTask<?> task)
+	{
+		try {
+			workers.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			task.cancel(false);
+		}
+	}
+
+	private void runWheel()
+	{
+		boolean swept = false;
+		try {
+			while (state != STOP) {
+				long tickDeadline = waitForNextTick();
+				if (state == STOP) {
+					break;
+				}
+				processCancelledTasks();
+				transferNewTasks();
+				if (state == SHUTDOWN && !swept) {
+					cancelPeriodicTasks();
+					swept = true;
+				}
+				expireBucket((int) (tick & mask), tickDeadline);
+				tick++;
+				if (state != RUNNING && pending.get() == 0) {
+					break;
+				}
+			}
+			if (state == STOP) {
+				drainUnstartedTasks();
+			}
+		}
+		finally {
+			if (state != STOP) {
+				workers.shutdown();
+			}
+			tickThreadDone.countDown();
+		}
+	}
+
+	/**
+	 * Wacht tot het einde van het huidige tick en geeft dat moment terug (in System.nanoTime() tijd).
+	 */
+	private long waitForNextTick()
+	{
+		long tickDeadline = startNanos + tickNanos * (tick + 1);
+		while (state != STOP) {
+			long sleepNanos = tickDeadline - System.nanoTime();
+			if (sleepNanos <= 0) {
+				break;
+			}
+			LockSupport.parkNanos(this, sleepNanos);
+		}
+		return tickDeadline;
+	}
+
+	private void processCancelledTasks()
+	{
+		WheelTask<?> task;
+		while ((task = cancelledTasks.poll()) != null) {
+			// Een task die niet (meer) in een bucket hangt, wordt elders afgehandeld.
+			if (task.bucket != -1) {
+				remove(task);
+				pending.decrementAndGet();
+			}
+		}
+	}
+
+	private void transferNewTasks()
+	{
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			WheelTask<?> task = newTasks.poll();
+			if (task == null) {
+				return;
+			}
+			if (task.isCancelled() || (state != RUNNING && task.isPeriodic())) {
+				task.cancel(false);
+				pending.decrementAndGet();
+				continue;
+			}
+			long targetTick = Math.max((task.deadline - startNanos) / tickNanos, tick);
+			task.rounds = (targetTick - tick) / wheelSize;
+			add(task, (int) (targetTick & mask));
+		}
+	}
+
+	private void expireBucket(int bucket, long tickDeadline)
+	{
+		WheelTask<?> task = heads[bucket];
+		while (task != null) {
+			WheelTask<?> next = task.next;
+			if (task.isCancelled()) {
+				remove(task);
+				pending.decrementAndGet();
+			}
+			else if (task.rounds <= 0 && task.deadline - tickDeadline <= 0) {
+				remove(task);
+				pending.decrementAndGet();
+				dispatch(task);
+			}
+			else if (task.rounds > 0) {
+				task.rounds--;
+			}
+			task = next;
+		}
+	}
+
+	/**
+	 * Na een shutdown worden herhaaldelijke tasks niet meer uitgevoerd.
+	 */
+	private void cancelPeriodicTasks()
+	{
+		for (int bucket = 0; bucket < wheelSize; bucket++) {
+			WheelTask<?> task = heads[bucket];
+			while (task != null) {
+				WheelTask<?> next = task.next;
+				if (task.isPeriodic()) {
+					remove(task);
+					pending.decrementAndGet();
+					task.cancel(false);
+				}
+				task = next;
+			}
+		}
+	}
+
+	private void drainUnstartedTasks()
+	{
+		for (int bucket = 0; bucket < wheelSize; bucket++) {
+			WheelTask<?> task = heads[bucket];
+			while (task != null) {
+				WheelTask<?> next = task.next;
+				remove(task);
+				if (!task.isCancelled()) {
+					unstarted.add(task);
+				}
+				task = next;
+			}
+		}
+		WheelTask<?> task;
+		while ((task = newTasks.poll()) != null) {
+			if (!task.isCancelled()) {
+				unstarted.add(task);
+			}
+		}
+		pending.set(0);
+	}
+
+	private void add(WheelTask<?> task, int bucket)
+	{
+		task.bucket = bucket;
+		task.next = null;
+		task.prev = tails[bucket];
+		if (tails[bucket] == null) {
+			heads[bucket] = task;
+		}
+		else {
+			tails[bucket].next = task;
+		}
+		tails[bucket] = task;
+	}
+
+	private void remove(WheelTask<?> task)
+	{
+		int bucket = task.bucket;
+		if (task.prev == null) {
+			heads[bucket] = task.next;
+		}
+		else {
+			task.prev.next = task.next;
+		}
+		if (task.next == null) {
+			tails[bucket] = task.prev;
+		}
+		else {
+			task.next.prev = task.prev;
+		}
+		task.prev = null;
+		task.next = null;
+		task.bucket = -1;
+	}
+
+	/**
+	 * Een geplande task. Naast de {@link FutureTask} functionaliteit is dit ook een node in een bucket van het wheel.
+	 */
+	private class WheelTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V>
+	{
+		// 0 voor eenmalig, positief voor een vaste rate, negatief voor een vaste wachttijd na afloop.
+		private final long period;
+		private volatile long deadline;
+
+		// Alleen gebruikt door de tick thread.
+		private long rounds;
+		private int bucket = -1;
+		private WheelTask<?> prev;
+		private WheelTask<?> next;
+
+		private WheelTask(Runnable runnable, V result, long deadline, long period)
+		{
+			super(runnable, result);
+			this.deadline = deadline;
+			this.period = period;
+		}
+
+		private WheelTask(Callable<V> callable, long deadline)
+		{
+			super(callable);
+			this.deadline = deadline;
+			this.period = 0L;
+		}
+
+		@Override
+		public boolean isPeriodic()
+		{
+			return period != 0L;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit)
+		{
+			return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other)
+		{
+			if (other == this) {
+				return 0;
+			}
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				cancelledTasks.add(this);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public void run()
+		{
+			if (!isPeriodic()) {
+				super.run();
+			}
+			else if (runAndReset()) {
+				// Bij een vaste rate telt de periode vanaf de vorige geplande start, anders vanaf nu.
+				deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+				reschedule(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel4_callables_en_futures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Een pipeline van {@link Callable}s, gebouwd op {@link CompletableFuture}.
+ * <p>
+ * Met {@link Future#get()} moet de aanroeper op elk resultaat wachten voordat de volgende stap gesubmit kan worden.
+ * Zo'n aanroeper bezet dus een thread, terwijl die alleen maar aan het wachten is.
+ * In een pipeline beschrijf je vooraf wat er met een resultaat moet gebeuren. Zodra een stap klaar is,
+ * wordt de volgende stap vanzelf op de executor gezet, en wacht niemand meer.
+ * <p>
+ * Elke stap kan een eigen executor krijgen, bijvoorbeeld een I/O pool voor het ophalen en een CPU pool voor het rekenen.
+ * Net als bij een {@link Callable} mag elke stap een checked exception gooien. Die komt dan als oorzaak van een
+ * {@link CompletionException} uit de pipeline.
+ * <p>
+ * Een pipeline is immutable: elke methode geeft een nieuwe pipeline terug, en de oude blijft bruikbaar.
+ */
+public final class AsyncPipeline<T>
+{
+	/**
+	 * Een stap in de pipeline. Net als {@link Callable#call()} mag deze een checked exception gooien.
+	 */
+	@FunctionalInterface
+	public interface Stage<T, R>
+	{
+		R apply(T value) throws Exception;
+	}
+
+	private final CompletableFuture<T> future;
+
+	private AsyncPipeline(CompletableFuture<T> future)
+	{
+		this.future = future;
+	}
+
+	/**
+	 * Start een pipeline door de callable op de executor uit te voeren.
+	 */
+	public static <T> AsyncPipeline<T> start(Callable<T> callable, Executor executor)
+	{
+		return new AsyncPipeline<>(CompletableFuture.supplyAsync(() -> call(callable), executor));
+	}
+
+	/**
+	 * Een pipeline die al klaar is met de gegeven waarde.
+	 */
+	public static <T> AsyncPipeline<T> completed(T value)
+	{
+		return new AsyncPipeline<>(CompletableFuture.completedFuture(value));
+	}
+
+	/**
+	 * Wacht (zonder een thread te bezetten) tot alle pipelines klaar zijn, en geeft de resultaten in dezelfde volgorde.
+	 * Als 1 van de pipelines faalt, faalt het geheel ook.
+	 */
+	public static <T> AsyncPipeline<List<T>> all(List<AsyncPipeline<T>> pipelines)
+	{
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[pipelines.size()];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = pipelines.get(i).future;
+		}
+		return new AsyncPipeline<>(CompletableFuture.allOf(futures).thenApply(ignored -> {
+			List<T> results = new ArrayList<>(pipelines.size());
+			for (AsyncPipeline<T> pipeline : pipelines) {
+				// Alle futures zijn hier al klaar, dus join wacht niet.
+				results.add(pipeline.future.join());
+			}
+			return results;
+		}));
+	}
+
+	/**
+	 * Voer de volgende stap uit op de gegeven executor, zodra het resultaat van deze pipeline er is.
+	 */
+	public <R> AsyncPipeline<R> then(Stage<? super T, ? extends R> stage, Executor executor)
+	{
+		return new AsyncPipeline<>(future.thenApplyAsync(value -> apply(stage, value), executor));
+	}
+
+	/**
+	 * Start met het resultaat van deze pipeline een nieuwe callable, en ga verder met het resultaat daarvan.
+	 * Dit is handig als de volgende stap zelf al een {@link Callable} is, zoals een {@link CallablesEnFutures.MyCallable}.
+	 */
+	public <R> AsyncPipeline<R> thenCall(Stage<? super T, ? extends Callable<R>> next, Executor executor)
+	{
+		return new AsyncPipeline<>(future.thenComposeAsync(value -> start(apply(next, value), executor).future, executor));
+	}
+
+	/**
+	 * Combineer het resultaat van deze pipeline met dat van een andere pipeline.
+	 * Beide pipelines lopen tegelijk, de combinatie wordt op de gegeven executor uitgevoerd zodra beide klaar zijn.
+	 */
+	public <U, R> AsyncPipeline<R> combine(AsyncPipeline<U> other, BiFunction<? super T, ? super U, ? extends R> combiner, Executor executor)
+	{
+		return new AsyncPipeline<>(future.thenCombineAsync(other.future, combiner, executor));
+	}
+
+	/**
+	 * Laat de pipeline falen met een {@link TimeoutException} als het resultaat niet op tijd is.
+	 * De stap die nog loopt wordt hierbij niet onderbroken.
+	 */
+	public AsyncPipeline<T> timeout(long timeout, TimeUnit unit)
+	{
+		// Op een kopie, zodat de timeout de gedeelde future niet voltooit.
+		return new AsyncPipeline<>(future.copy().orTimeout(timeout, unit));
+	}
+
+	/**
+	 * Ga verder met de fallback waarde als het resultaat niet op tijd is.
+	 */
+	public AsyncPipeline<T> timeout(long timeout, TimeUnit unit, T fallback)
+	{
+		return new AsyncPipeline<>(future.copy().completeOnTimeout(fallback, timeout, unit));
+	}
+
+	/**
+	 * Ga verder met een vervangende waarde als de pipeline faalt. De functie krijgt de oorspronkelijke exception mee,
+	 * dus niet de {@link CompletionException} eromheen.
+	 */
+	public AsyncPipeline<T> recover(Stage<? super Throwable, ? extends T> recovery)
+	{
+		return new AsyncPipeline<>(future.handle((value, failure) -> {
+			if (failure == null) {
+				return value;
+			}
+			Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+			return apply(recovery, cause);
+		}));
+	}
+
+	/**
+	 * Voer een actie uit met het resultaat, zonder de pipeline te laten wachten.
+	 */
+	public AsyncPipeline<T> peek(Consumer<? super T> action)
+	{
+		return new AsyncPipeline<>(future.thenApply(value -> {
+			action.accept(value);
+			return value;
+		}));
+	}
+
+	/**
+	 * Blokkeer tot het resultaat er is. Bedoeld voor het einde van een programma of test, niet tussen de stappen.
+	 *
+	 * @throws CompletionException met de oorspronkelijke exception als oorzaak.
+	 */
+	public T join()
+	{
+		return future.join();
+	}
+
+	/**
+	 * Geeft een kopie, zodat iemand van buiten de gedeelde future niet kan voltooien.
+	 */
+	public CompletableFuture<T> toCompletableFuture()
+	{
+		return future.copy();
+	}
+
+	private static <T> T call(Callable<T> callable)
+	{
+		try {
+			return callable.call();
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private static <T, R> R apply(Stage<T, R> stage, T value)
+	{
+		try {
+			return stage.apply(value);
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+}
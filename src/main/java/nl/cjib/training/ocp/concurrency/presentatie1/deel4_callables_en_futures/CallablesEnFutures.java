@@ -5,6 +5,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link Callable} is ook een functional interface dat ontworpen is om te worden geimplementeerd door
@@ -14,6 +15,9 @@ import java.util.concurrent.Future;
  *
  * {@link Callable} is een generiek interface,
  * waarbij het generieke argument het return type bepaalt van de call methode.
+ *
+ * Met de get methode van een {@link Future} blokkeert de aanroeper tot het resultaat er is.
+ * In {@link AsyncPipeline} zie je hoe je {@link Callable}s kan koppelen zonder op elk resultaat te wachten.
  */
 public class CallablesEnFutures
 {
@@ -64,5 +68,23 @@ public class CallablesEnFutures
 			// In dit geval dus in een finally block, omdat er unchecked exceptions kunnen optreden
 			executorService.shutdown();
 		}
+
+		// Hieronder dezelfde callable, maar nu zonder tussendoor op een resultaat te wachten.
+		// Beide callables lopen tegelijk, en de combinatie wordt pas uitgevoerd als ze allebei klaar zijn.
+		// Alleen aan het einde wordt er met join op het eindresultaat gewacht.
+		ExecutorService asyncExecutorService = Executors.newFixedThreadPool(2);
+		try {
+			AsyncPipeline<String> first = AsyncPipeline.start(new MyCallable(), asyncExecutorService);
+			AsyncPipeline<String> second = AsyncPipeline.start(new MyCallable(), asyncExecutorService);
+			String combined = first
+				.combine(second, (a, b) -> a + " + " + b, asyncExecutorService)
+				.then(String::toUpperCase, asyncExecutorService)
+				.timeout(1, TimeUnit.SECONDS, "te laat")
+				.join();
+			System.out.println(combined);
+		}
+		finally {
+			asyncExecutorService.shutdown();
+		}
 	}
 }
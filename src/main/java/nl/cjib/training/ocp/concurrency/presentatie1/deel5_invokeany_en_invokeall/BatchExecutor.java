@@ -0,0 +1,126 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Een alternatief voor invokeAll als je heel veel kleine, gelijksoortige tasks wilt uitvoeren.
+ * <p>
+ * Met invokeAll krijgt elke task zijn eigen {@link java.util.concurrent.Future},
+ * moet elke task apart in de queue van de {@link ExecutorService} en moet je op elke Future apart get() aanroepen.
+ * Bij tienduizenden kleine tasks kost dat meer tijd dan het werk zelf.
+ * <p>
+ * Deze class verdeelt een bereik van indexen in een vast aantal chunks (bijvoorbeeld 1 per thread).
+ * Per chunk wordt 1 {@link Runnable} uitgevoerd, en er wordt met 1 {@link CountDownLatch} gewacht
+ * tot alle chunks klaar zijn. De resultaten van de chunks worden samengevoegd tot 1 resultaat.
+ */
+public class BatchExecutor
+{
+	private final Executor executor;
+	private final int chunks;
+
+	/**
+	 * @param executor de executor waarop de chunks uitgevoerd worden.
+	 * @param chunks   het maximale aantal chunks waarin het werk verdeeld wordt,
+	 *                 meestal het aantal threads van de executor.
+	 */
+	public BatchExecutor(Executor executor, int chunks)
+	{
+		if (chunks < 1) {
+			throw new IllegalArgumentException("chunks must be at least 1, but was " + chunks);
+		}
+		this.executor = executor;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Het werk voor 1 chunk: het bereik [from, to).
+	 */
+	@FunctionalInterface
+	public interface RangeTask<R>
+	{
+		R call(int from, int to) throws Exception;
+	}
+
+	/**
+	 * Voer de action uit voor elke index van 0 tot count.
+	 */
+	public void forEach(int count, IntConsumer action) throws InterruptedException, ExecutionException
+	{
+		execute(0, count, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				action.accept(i);
+			}
+			return null;
+		}, (left, right) -> null);
+	}
+
+	/**
+	 * Verdeel het bereik [from, to) in chunks, voer de task per chunk uit en voeg de resultaten samen met de combiner.
+	 * <p>
+	 * Als een van de chunks een exception gooit, dan wordt na afloop een {@link ExecutionException} gegooid
+	 * met de eerste exception als cause. De overige chunks worden wel afgemaakt.
+	 *
+	 * @return het samengevoegde resultaat, of null als het bereik leeg is.
+	 */
+	public <R> R execute(int from, int to, RangeTask<R> task, BinaryOperator<R> combiner)
+		throws InterruptedException, ExecutionException
+	{
+		if (from > to) {
+			throw new IllegalArgumentException("from (" + from + ") must not be greater than to (" + to + ")");
+		}
+		long size = (long) to - from;
+		if (size == 0) {
+			return null;
+		}
+		int chunkCount = (int) Math.min(chunks, size);
+		Object[] results = new Object[chunkCount];
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(chunkCount);
+
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			int index = chunk;
+			// Verdeel het bereik zo dat de chunks maximaal 1 element in grootte verschillen.
+			int chunkFrom = (int) (from + size * chunk / chunkCount);
+			int chunkTo = (int) (from + size * (chunk + 1) / chunkCount);
+			try {
+				executor.execute(() -> {
+					try {
+						results[index] = task.call(chunkFrom, chunkTo);
+					}
+					catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+					finally {
+						done.countDown();
+					}
+				});
+			}
+			catch (RejectedExecutionException e) {
+				// Ook een geweigerde chunk moet afgeteld worden, anders wacht de await hieronder voor altijd.
+				failure.compareAndSet(null, e);
+				done.countDown();
+			}
+		}
+		// De await zorgt ook voor de zichtbaarheid van de resultaten die de andere threads in de array gezet hebben.
+		done.await();
+
+		if (failure.get() != null) {
+			throw new ExecutionException(failure.get());
+		}
+		@SuppressWarnings("unchecked")
+		R result = (R) results[0];
+		for (int i = 1; i < chunkCount; i++) {
+			@SuppressWarnings("unchecked")
+			R chunkResult = (R) results[i];
+			result = combiner.apply(result, chunkResult);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,118 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Een invokeAll waarbij je de resultaten krijgt in de volgorde waarin ze klaar zijn, met 1 deadline voor alles.
+ * <p>
+ * {@link ExecutorService#invokeAll(Collection)} komt pas terug als alle tasks klaar zijn,
+ * en geeft de futures in de volgorde van de tasks. Het eerste resultaat kan je dus pas verwerken als het laatste er is.
+ * Hier wordt een {@link ExecutorCompletionService} gebruikt: met {@link #next()} krijg je steeds de eerstvolgende
+ * future die klaar is, zodat je direct verder kan.
+ * <p>
+ * De deadline geldt voor alle tasks samen. Is die verstreken, dan gooit {@link #next()} een {@link TimeoutException}
+ * en worden de tasks die nog niet klaar zijn geannuleerd, net als bij invokeAll met een timeout.
+ * Met {@link #close()} (of try-with-resources) worden de overgebleven tasks ook geannuleerd.
+ * <pre>
+ * try (CompletionOrder&lt;String&gt; results = CompletionOrder.invokeAll(executorService, tasks, 1, TimeUnit.SECONDS)) {
+ *     while (results.hasNext()) {
+ *         System.out.println(results.next().get());
+ *     }
+ * }
+ * </pre>
+ */
+public class CompletionOrder<T> implements AutoCloseable
+{
+	private final ExecutorCompletionService<T> completionService;
+	private final List<Future<T>> futures;
+	private final long deadline;
+	private int remaining;
+
+	private CompletionOrder(ExecutorService executorService, Collection<? extends Callable<T>> tasks, long deadline)
+	{
+		this.completionService = new ExecutorCompletionService<>(executorService);
+		this.futures = new ArrayList<>(tasks.size());
+		this.deadline = deadline;
+		try {
+			for (Callable<T> task : tasks) {
+				futures.add(completionService.submit(task));
+			}
+		}
+		catch (RuntimeException e) {
+			cancelAll();
+			throw e;
+		}
+		this.remaining = futures.size();
+	}
+
+	/**
+	 * Submit alle tasks en geef de resultaten in de volgorde waarin ze klaar zijn.
+	 *
+	 * @param timeout de tijd die alle tasks samen hebben, gerekend vanaf nu.
+	 */
+	public static <T> CompletionOrder<T> invokeAll(ExecutorService executorService, Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+	{
+		return new CompletionOrder<>(executorService, tasks, System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	public boolean hasNext()
+	{
+		return remaining > 0;
+	}
+
+	/**
+	 * Het aantal tasks waarvan de future nog niet via {@link #next()} opgehaald is.
+	 * Na een timeout is dit 0, want de overgebleven tasks zijn geannuleerd.
+	 */
+	public int remaining()
+	{
+		return remaining;
+	}
+
+	/**
+	 * Wacht op de eerstvolgende task die klaar is. De future is altijd done, dus get() wacht niet meer.
+	 *
+	 * @throws TimeoutException als de deadline verstreken is. De overgebleven tasks zijn dan geannuleerd,
+	 *                          en {@link #hasNext()} geeft daarna false.
+	 */
+	public Future<T> next() throws InterruptedException, TimeoutException
+	{
+		if (remaining == 0) {
+			throw new NoSuchElementException();
+		}
+		Future<T> done = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		if (done == null) {
+			cancelAll();
+			int timedOut = remaining;
+			remaining = 0;
+			throw new TimeoutException(timedOut + " tasks did not complete before the deadline");
+		}
+		remaining--;
+		return done;
+	}
+
+	/**
+	 * Annuleer de tasks die nog niet klaar zijn.
+	 */
+	@Override
+	public void close()
+	{
+		cancelAll();
+	}
+
+	private void cancelAll()
+	{
+		for (Future<T> future : futures) {
+			future.cancel(true);
+		}
+	}
+}
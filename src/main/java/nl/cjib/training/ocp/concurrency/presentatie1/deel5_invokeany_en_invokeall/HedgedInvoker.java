@@ -0,0 +1,235 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices.LatencyHistogram;
+
+/**
+ * Een invokeAny voor replica's van dezelfde aanvraag, waarbij de replica's niet allemaal tegelijk gestart worden.
+ * <p>
+ * {@link ExecutorService#invokeAny(java.util.Collection)} start alle tasks direct. Bij replica's (bijvoorbeeld dezelfde
+ * lookup op 3 servers) is dat zonde: meestal is de eerste snel genoeg, en dan heb je de andere voor niets belast.
+ * Wacht je helemaal niet, dan bepaalt de traagste server af en toe je responstijd (de tail latency).
+ * <p>
+ * Deze class start eerst alleen de eerste replica. Als die na de hedge delay nog niet klaar is,
+ * wordt de volgende replica als backup gestart, enzovoort. Het eerste geslaagde resultaat wint,
+ * en de replica's die dan nog lopen worden geannuleerd (met een interrupt).
+ * Als een replica faalt, wordt de volgende direct gestart, zonder op de hedge delay te wachten.
+ * <p>
+ * De hedge delay is vast, of wordt afgeleid van een percentiel van de gemeten looptijden.
+ * Bij het 95e percentiel wordt dus bij ongeveer 5% van de aanvragen een backup gestart.
+ * <p>
+ * De looptijd van de replica die wint wordt gemeten vanaf zijn eigen start. Als de eerste replica verliest van een
+ * backup, wordt hij geannuleerd, maar telt de tijd die hij toen al liep toch mee (de echte looptijd is minstens zo lang).
+ * Zonder die meting zouden alleen snelle looptijden vastgelegd worden, en zou de hedge delay steeds verder zakken.
+ */
+public class HedgedInvoker
+{
+	// Het aantal metingen dat nodig is voordat het percentiel gebruikt wordt in plaats van de initiele delay.
+	private static final int MIN_SAMPLES = 100;
+
+	private final ExecutorService executorService;
+	private final long initialDelayNanos;
+	// Het percentiel waarop de hedge delay gebaseerd is, of 0 voor een vaste delay.
+	private final double percentile;
+
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder invocations = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+
+	/**
+	 * Een invoker met een vaste hedge delay.
+	 */
+	public HedgedInvoker(ExecutorService executorService, long hedgeDelay, TimeUnit unit)
+	{
+		this(executorService, hedgeDelay, unit, 0.0);
+	}
+
+	private HedgedInvoker(ExecutorService executorService, long hedgeDelay, TimeUnit unit, double percentile)
+	{
+		if (hedgeDelay < 0) {
+			throw new IllegalArgumentException("hedgeDelay must not be negative, but was " + hedgeDelay);
+		}
+		this.executorService = executorService;
+		this.initialDelayNanos = unit.toNanos(hedgeDelay);
+		this.percentile = percentile;
+	}
+
+	/**
+	 * Een invoker waarvan de hedge delay het gegeven percentiel is van de gemeten looptijden.
+	 * Zolang er nog te weinig metingen zijn, wordt de initiele delay gebruikt.
+	 *
+	 * @param percentile bijvoorbeeld 95.0 voor het 95e percentiel.
+	 */
+	public static HedgedInvoker withPercentile(ExecutorService executorService, double percentile, long initialDelay, TimeUnit unit)
+	{
+		if (percentile <= 0.0 || percentile >= 100.0) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100, but was " + percentile);
+		}
+		return new HedgedInvoker(executorService, initialDelay, unit, percentile);
+	}
+
+	/**
+	 * Geeft het resultaat van de eerste replica die slaagt.
+	 *
+	 * @throws ExecutionException als alle replica's falen, met de exception van de laatste als oorzaak.
+	 */
+	public <T> T invokeAny(List<? extends Callable<T>> replicas) throws InterruptedException, ExecutionException
+	{
+		try {
+			return doInvokeAny(replicas, false, 0L);
+		}
+		catch (TimeoutException e) {
+			// Kan niet voorkomen zonder timeout.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Geeft het resultaat van de eerste replica die slaagt, binnen de gegeven tijd.
+	 *
+	 * @throws TimeoutException als er binnen de tijd geen replica geslaagd is. De lopende replica's worden dan geannuleerd.
+	 */
+	public <T> T invokeAny(List<? extends Callable<T>> replicas, long timeout, TimeUnit unit)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return doInvokeAny(replicas, true, unit.toNanos(timeout));
+	}
+
+	/**
+	 * De hedge delay die op dit moment gebruikt wordt.
+	 */
+	public long getHedgeDelay(TimeUnit unit)
+	{
+		if (percentile > 0.0 && latencies.getCount() >= MIN_SAMPLES) {
+			return unit.convert(latencies.getPercentile(percentile, TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		}
+		return unit.convert(initialDelayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public long getInvocations()
+	{
+		return invocations.sum();
+	}
+
+	/**
+	 * Het aantal gestarte backups.
+	 */
+	public long getHedges()
+	{
+		return hedges.sum();
+	}
+
+	/**
+	 * Het aantal keer dat een backup eerder klaar was dan de eerste replica.
+	 */
+	public long getHedgeWins()
+	{
+		return hedgeWins.sum();
+	}
+
+	public LatencyHistogram getLatencies()
+	{
+		return latencies;
+	}
+
+	private <T> T doInvokeAny(List<? extends Callable<T>> replicas, boolean timed, long timeoutNanos)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if (replicas.isEmpty()) {
+			throw new IllegalArgumentException("At least 1 replica is needed");
+		}
+		invocations.increment();
+		long start = System.nanoTime();
+		long deadline = start + timeoutNanos;
+		long hedgeDelayNanos = getHedgeDelay(TimeUnit.NANOSECONDS);
+
+		ExecutorCompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+		List<Future<T>> futures = new ArrayList<>(replicas.size());
+		long[] submitted = new long[replicas.size()];
+		ExecutionException lastFailure = null;
+		try {
+			submitNext(completionService, replicas, futures, submitted);
+			int running = 1;
+			while (true) {
+				boolean canHedge = futures.size() < replicas.size();
+				Future<T> done;
+				if (canHedge) {
+					long wait = hedgeDelayNanos;
+					if (timed) {
+						wait = Math.min(wait, deadline - System.nanoTime());
+					}
+					done = completionService.poll(wait, TimeUnit.NANOSECONDS);
+				}
+				else if (timed) {
+					done = completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				}
+				else {
+					done = completionService.take();
+				}
+
+				if (done == null) {
+					if (timed && deadline - System.nanoTime() <= 0) {
+						throw new TimeoutException("No replica completed within the timeout");
+					}
+					if (canHedge) {
+						// De vorige replica is te traag: start een backup.
+						submitNext(completionService, replicas, futures, submitted);
+						hedges.increment();
+						running++;
+					}
+					continue;
+				}
+
+				running--;
+				try {
+					T result = done.get();
+					int winner = futures.indexOf(done);
+					latencies.record(System.nanoTime() - submitted[winner]);
+					if (winner > 0) {
+						hedgeWins.increment();
+					}
+					return result;
+				}
+				catch (ExecutionException e) {
+					lastFailure = e;
+				}
+				if (futures.size() < replicas.size()) {
+					// Een gefaalde replica wordt direct vervangen.
+					submitNext(completionService, replicas, futures, submitted);
+					running++;
+				}
+				else if (running == 0) {
+					throw lastFailure;
+				}
+			}
+		}
+		finally {
+			// cancel geeft alleen true als de eerste replica nog liep: leg vast hoe lang hij minstens geduurd heeft.
+			if (!futures.isEmpty() && futures.get(0).cancel(true)) {
+				latencies.record(System.nanoTime() - submitted[0]);
+			}
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static <T> void submitNext(ExecutorCompletionService<T> completionService, List<? extends Callable<T>> replicas,
+		List<Future<T>> futures, long[] submitted)
+	{
+		int index = futures.size();
+		submitted[index] = System.nanoTime();
+		futures.add(completionService.submit(replicas.get(index)));
+	}
+}
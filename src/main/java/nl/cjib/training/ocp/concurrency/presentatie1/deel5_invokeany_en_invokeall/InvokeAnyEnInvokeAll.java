@@ -7,10 +7,15 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Je kan ook meerdere {@link Callable} tasks tegelijk submitten.
  * Dit kan op meerdere manieren, afhankelijk van wat je bedoeling is.
+ * <p>
+ * Zie ook {@link HedgedInvoker} voor een invokeAny die replica's pas start als de vorige te traag is,
+ * en {@link CompletionOrder} voor een invokeAll die de resultaten geeft zodra ze klaar zijn.
  */
 public class InvokeAnyEnInvokeAll
 {
@@ -42,5 +47,30 @@ public class InvokeAnyEnInvokeAll
 		// Zoals altijd tenminste een shutdown.
 		executorServiceSingle.shutdown();
 
+		ExecutorService executorServiceMultiple = Executors.newFixedThreadPool(4);
+
+		// Een hedged invokeAny: de tweede replica wordt pas gestart als de eerste na 50 ms nog niet klaar is.
+		// De replica die dan nog loopt wordt geannuleerd.
+		Callable<String> slowReplica = () -> {
+			Thread.sleep(1000);
+			return "Slow replica";
+		};
+		Callable<String> fastReplica = () -> "Fast replica";
+		HedgedInvoker hedgedInvoker = new HedgedInvoker(executorServiceMultiple, 50, TimeUnit.MILLISECONDS);
+		System.out.println("Hedged result: " + hedgedInvoker.invokeAny(Arrays.asList(slowReplica, fastReplica)));
+
+		// Een invokeAll waarbij de resultaten in de volgorde van afronden binnenkomen, met 1 deadline voor alles.
+		// De trage task haalt de deadline niet en wordt geannuleerd.
+		try (CompletionOrder<String> results = CompletionOrder.invokeAll(
+			executorServiceMultiple, Arrays.asList(slowReplica, task1, task2), 500, TimeUnit.MILLISECONDS)) {
+			while (results.hasNext()) {
+				System.out.println("In completion order: " + results.next().get());
+			}
+		}
+		catch (TimeoutException e) {
+			System.out.println("Deadline passed: " + e.getMessage());
+		}
+
+		executorServiceMultiple.shutdown();
 	}
 }
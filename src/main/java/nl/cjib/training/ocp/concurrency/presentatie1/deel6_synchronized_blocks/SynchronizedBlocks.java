@@ -8,6 +8,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall.BatchExecutor;
+
 /**
  * Als je werkt met het synchronized keyword, dan maak je gebruik van een intrinsic lock (ook wel een monitor genoemd).
  * <p>
@@ -33,7 +35,7 @@ public class SynchronizedBlocks
 	 * Meerdere threads kunnen tegelijkertijd proberen om de waarde van de counter op te hogen
 	 * Dit kan ervoor zorgen dat de waarde niet altijd goed opgehoogd wordt.
 	 */
-	private static boolean inc()
+	static boolean inc()
 	{
 		counter++;
 		return true;
@@ -46,7 +48,7 @@ public class SynchronizedBlocks
 	 * Er kan maar 1 thread tegelijk de waarde ophogen
 	 * Dit garandeert dat de waarde goed opgehoogd wordt.
 	 */
-	private static boolean syncedInc()
+	static boolean syncedInc()
 	{
 		synchronized (lock) {
 			counter++;
@@ -59,7 +61,7 @@ public class SynchronizedBlocks
 	 * In dat geval wordt de het object van de method gebruikt als lock
 	 * (of in dit geval de class van de method, omdat de method static is)
 	 */
-	private static synchronized boolean methodSyncedInc()
+	static synchronized boolean methodSyncedInc()
 	{
 		counter++;
 		return true;
@@ -101,6 +103,12 @@ public class SynchronizedBlocks
 		}
 		System.out.println(counter);
 
+		// Bij zoveel kleine tasks kost het queuen van de tasks en het ophalen van de futures meer tijd dan het tellen.
+		// Met een BatchExecutor wordt het werk in 1 chunk per thread verdeeld en wordt er maar 1 keer gewacht.
+		counter = 0;
+		new BatchExecutor(executorService, 100).forEach(50000, i -> syncedInc());
+		System.out.println(counter);
+
 		executorService.shutdown();
 	}
 }
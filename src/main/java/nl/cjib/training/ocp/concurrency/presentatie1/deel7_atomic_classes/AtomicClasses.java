@@ -67,5 +67,12 @@ public class AtomicClasses
 		atomicIntegerArray.get(0);
 		atomicLongArray.addAndGet(1, 5);
 		atomicStringAtomicReferenceArray.compareAndSet(2, "Goedemorgen", "Goedemiddag");
+
+		// Als heel veel threads dezelfde teller ophogen, wordt die ene atomic waarde een bottleneck.
+		// Een StripedCounter verdeelt de increments dan over meerdere atomic cellen.
+		StripedCounter stripedCounter = new StripedCounter();
+		stripedCounter.increment();
+		stripedCounter.add(41);
+		System.out.println("striped: " + stripedCounter.sum());
 	}
 }
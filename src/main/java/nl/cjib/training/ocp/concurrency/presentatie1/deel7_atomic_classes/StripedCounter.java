@@ -0,0 +1,318 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel7_atomic_classes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Een teller die increments over meerdere cellen verdeelt, voor situaties met veel threads die tegelijk ophogen.
+ * <p>
+ * Bij een {@link AtomicLong} doen alle threads een compareAndSet op dezelfde waarde.
+ * Op een machine met veel cores gaat de cache line met die waarde dan continu heen en weer tussen de cores,
+ * en mislukken veel compareAndSet pogingen.
+ * <p>
+ * Deze teller begint met 1 cel. Zodra een compareAndSet mislukt, wordt overgestapt op een array van cellen.
+ * Elke thread kiest een cel op basis van een eigen probe waarde. Blijft een thread botsen,
+ * dan kiest hij een andere cel en wordt het aantal cellen verdubbeld (tot het aantal processoren).
+ * De cellen zijn opgevuld (padding), zodat twee cellen nooit in dezelfde cache line liggen.
+ * <p>
+ * {@link #sum()} telt alle cellen bij elkaar op zonder de schrijvers te blokkeren.
+ * Als er tijdens het optellen geschreven wordt, is het resultaat dus geen exacte momentopname.
+ * Als je dat wel nodig hebt, maak de teller dan aan met consistentSnapshots = true en gebruik {@link #snapshot()}.
+ * Schrijvers zijn in die modus iets duurder, omdat ze moeten kunnen worden tegengehouden tijdens een snapshot.
+ */
+public class StripedCounter
+{
+	private static final VarHandle VALUE;
+	private static final VarHandle WRITERS;
+	private static final int MAX_CELLS = nextPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			VALUE = lookup.findVarHandle(CellValue.class, "value", long.class);
+			WRITERS = lookup.findVarHandle(CellValue.class, "writers", int.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// Elke thread heeft zijn eigen probe, waarmee een cel gekozen wordt.
+	private static final ThreadLocal<int[]> probe = ThreadLocal.withInitial(
+		() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+	private final boolean consistentSnapshots;
+	private final Cell base = new Cell();
+	private volatile Cell[] cells;
+	// Wordt gebruikt als spin lock bij het aanmaken en vergroten van de cells array.
+	private final AtomicBoolean cellsBusy = new AtomicBoolean();
+
+	// Alleen gebruikt als consistentSnapshots aan staat.
+	private volatile boolean frozen;
+	private final ReentrantLock snapshotLock = new ReentrantLock();
+
+	public StripedCounter()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param consistentSnapshots als true, dan zijn {@link #snapshot()} en {@link #snapshotThenReset()} beschikbaar.
+	 */
+	public StripedCounter(boolean consistentSnapshots)
+	{
+		this.consistentSnapshots = consistentSnapshots;
+	}
+
+	public void increment()
+	{
+		add(1L);
+	}
+
+	public void decrement()
+	{
+		add(-1L);
+	}
+
+	public void add(long x)
+	{
+		int[] threadProbe = probe.get();
+		int h = threadProbe[0];
+		boolean collided = false;
+		while (true) {
+			Cell[] cs = cells;
+			Cell cell = cs == null ? base : cs[h & (cs.length - 1)];
+			if (tryAdd(cell, x)) {
+				return;
+			}
+			// De compareAndSet is mislukt, er is dus contention op deze cel.
+			if (cs == null) {
+				initCells();
+			}
+			else if (collided && cs.length < MAX_CELLS) {
+				grow(cs);
+				collided = false;
+			}
+			else {
+				collided = true;
+			}
+			// Kies bij een volgende poging een andere cel (xorshift).
+			h ^= h << 13;
+			h ^= h >>> 17;
+			h ^= h << 5;
+			threadProbe[0] = h;
+		}
+	}
+
+	/**
+	 * Geeft de som van alle cellen. Dit blokkeert geen schrijvers,
+	 * dus gelijktijdige updates kunnen wel of niet meegeteld zijn.
+	 */
+	public long sum()
+	{
+		long sum = (long) VALUE.getVolatile(base);
+		Cell[] cs = cells;
+		if (cs != null) {
+			for (Cell cell : cs) {
+				sum += (long) VALUE.getVolatile(cell);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Geeft de som van alle cellen en zet ze op 0.
+	 * Elke cel wordt atomair uitgelezen en gereset, dus er gaan geen updates verloren.
+	 * Een update die tijdens deze aanroep binnenkomt, telt mee in deze som of in de volgende.
+	 */
+	public long sumThenReset()
+	{
+		long sum = (long) VALUE.getAndSet(base, 0L);
+		Cell[] cs = cells;
+		if (cs != null) {
+			for (Cell cell : cs) {
+				sum += (long) VALUE.getAndSet(cell, 0L);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Geeft een exacte momentopname van de teller: alle updates die voor deze aanroep klaar waren tellen mee,
+	 * en er wordt geen update half meegeteld. Schrijvers wachten zolang de snapshot duurt.
+	 *
+	 * @throws IllegalStateException als de teller niet met consistentSnapshots aangemaakt is.
+	 */
+	public long snapshot()
+	{
+		return frozenSum(false);
+	}
+
+	/**
+	 * Als {@link #snapshot()}, maar zet daarna alle cellen op 0 voordat de schrijvers verder mogen.
+	 */
+	public long snapshotThenReset()
+	{
+		return frozenSum(true);
+	}
+
+	/**
+	 * Het aantal cellen dat op dit moment gebruikt wordt, handig om het effect van contention te zien.
+	 */
+	public int stripes()
+	{
+		Cell[] cs = cells;
+		return cs == null ? 1 : cs.length;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Long.toString(sum());
+	}
+
+	private boolean tryAdd(Cell cell, long x)
+	{
+		if (!consistentSnapshots) {
+			long value = (long) VALUE.getVolatile(cell);
+			return VALUE.compareAndSet(cell, value, value + x);
+		}
+		while (true) {
+			while (frozen) {
+				Thread.onSpinWait();
+			}
+			// Eerst aanmelden als schrijver en dan pas opnieuw frozen controleren.
+			// Een snapshot zet eerst frozen en controleert dan de schrijvers,
+			// zo zien ze elkaar altijd (beide zijn volatile operaties).
+			WRITERS.getAndAdd(cell, 1);
+			if (frozen) {
+				WRITERS.getAndAdd(cell, -1);
+				continue;
+			}
+			try {
+				long value = (long) VALUE.getVolatile(cell);
+				return VALUE.compareAndSet(cell, value, value + x);
+			}
+			finally {
+				WRITERS.getAndAdd(cell, -1);
+			}
+		}
+	}
+
+	private long frozenSum(boolean reset)
+	{
+		if (!consistentSnapshots) {
+			throw new IllegalStateException("This counter was not created with consistent snapshots enabled");
+		}
+		snapshotLock.lock();
+		try {
+			frozen = true;
+			// Zorg dat de cells array niet groeit tijdens de snapshot.
+			lockCells();
+			try {
+				long sum = drain(base, reset);
+				Cell[] cs = cells;
+				if (cs != null) {
+					for (Cell cell : cs) {
+						sum += drain(cell, reset);
+					}
+				}
+				return sum;
+			}
+			finally {
+				cellsBusy.set(false);
+			}
+		}
+		finally {
+			frozen = false;
+			snapshotLock.unlock();
+		}
+	}
+
+	/**
+	 * Wacht tot er geen schrijvers meer bezig zijn in deze cel en lees dan de waarde uit.
+	 */
+	private static long drain(Cell cell, boolean reset)
+	{
+		while ((int) WRITERS.getVolatile(cell) != 0) {
+			Thread.onSpinWait();
+		}
+		return reset ? (long) VALUE.getAndSet(cell, 0L) : (long) VALUE.getVolatile(cell);
+	}
+
+	private void initCells()
+	{
+		if (cells == null && cellsBusy.compareAndSet(false, true)) {
+			try {
+				if (cells == null) {
+					cells = new Cell[]{new Cell(), new Cell()};
+				}
+			}
+			finally {
+				cellsBusy.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Verdubbel het aantal cellen. De bestaande cellen worden meegenomen,
+	 * zodat threads die nog een oude cel vasthouden geen updates kwijtraken.
+	 */
+	private void grow(Cell[] current)
+	{
+		if (cells == current && cellsBusy.compareAndSet(false, true)) {
+			try {
+				if (cells == current) {
+					Cell[] grown = new Cell[current.length << 1];
+					System.arraycopy(current, 0, grown, 0, current.length);
+					for (int i = current.length; i < grown.length; i++) {
+						grown[i] = new Cell();
+					}
+					cells = grown;
+				}
+			}
+			finally {
+				cellsBusy.set(false);
+			}
+		}
+	}
+
+	private void lockCells()
+	{
+		while (!cellsBusy.compareAndSet(false, true)) {
+			Thread.onSpinWait();
+		}
+	}
+
+	private static int nextPowerOfTwo(int n)
+	{
+		return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+	}
+
+	/*
+	 * De padding wordt via overerving gedaan, omdat de JVM de volgorde van velden binnen 1 class mag aanpassen.
+	 * Velden van een superclass komen altijd voor de velden van een subclass.
+	 */
+
+	@SuppressWarnings("unused")
+	private static class CellLeftPadding
+	{
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	private static class CellValue extends CellLeftPadding
+	{
+		volatile long value;
+		volatile int writers;
+	}
+
+	@SuppressWarnings("unused")
+	private static final class Cell extends CellValue
+	{
+		long p11, p12, p13, p14, p15, p16, p17;
+	}
+}
@@ -0,0 +1,60 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Een lock-free variant van de Task uit {@link RaceCondition}.
+ * <p>
+ * In de Task worden het lezen en het schrijven van het nummer als 2 losse stappen gedaan.
+ * Een andere thread kan daartussen het nummer veranderen, en die verandering wordt dan overschreven.
+ * <p>
+ * Hier wordt de nieuwe waarde alleen geschreven met een compareAndSet:
+ * als het nummer sinds het lezen veranderd is, mislukt de compareAndSet en wordt de berekening opnieuw gedaan
+ * met de actuele waarde. Zo gaat er nooit een update verloren, en zijn alleen de uitkomsten 5 en 9 mogelijk.
+ * <p>
+ * Het aantal mislukte pogingen wordt bijgehouden, zodat je kan zien hoeveel contention er was.
+ */
+public class AtomicTask
+{
+	private final AtomicInteger number = new AtomicInteger(1);
+	private final AtomicInteger retries = new AtomicInteger();
+
+	public int plusTwo()
+	{
+		return update(number -> number + 2);
+	}
+
+	public int triple()
+	{
+		return update(number -> number * 3);
+	}
+
+	public int getNumber()
+	{
+		return number.get();
+	}
+
+	/**
+	 * Het aantal keer dat een compareAndSet mislukte omdat een andere thread tussendoor het nummer veranderde.
+	 */
+	public int getRetries()
+	{
+		return retries.get();
+	}
+
+	/**
+	 * Dit doet hetzelfde als {@link AtomicInteger#updateAndGet}, maar telt ook de mislukte pogingen.
+	 */
+	private int update(IntUnaryOperator operator)
+	{
+		while (true) {
+			int current = number.get();
+			int next = operator.applyAsInt(current);
+			if (number.compareAndSet(current, next)) {
+				return next;
+			}
+			retries.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Een contention policy voor het verkrijgen van locks met tryLock, om een livelock zoals in {@link LiveLock} te voorkomen.
+ * <p>
+ * In {@link LiveLock} wachten beide threads steeds precies even lang en doen ze daarna precies hetzelfde.
+ * Zo blijven ze elkaar voor altijd in de weg lopen. Deze policy doorbreekt die symmetrie op 2 manieren:
+ *  - Tussen pogingen wordt exponentieel langer gewacht, met een willekeurige afwijking (jitter).
+ *    Twee threads lopen daardoor niet meer in de pas;
+ *  - Elke partij heeft een prioriteit. Als een lock bezet is door een partij met een hogere prioriteit,
+ *    dan krijgt de aanroeper {@link Outcome#BACK_OFF} en moet hij zijn eigen locks loslaten.
+ *    Is de bezetter lager in prioriteit, dan blijft de aanroeper wachten.
+ *    Omdat alleen lagere partijen wijken, komt de partij met de hoogste prioriteit altijd verder.
+ * <p>
+ * Het aantal pogingen is begrensd. Als het budget op is, krijgt de aanroeper {@link Outcome#EXHAUSTED}.
+ * <p>
+ * Locks die met {@link #acquire(Lock, int)} verkregen zijn, moeten met {@link #release(Lock)} losgelaten worden,
+ * zodat de policy weet wie welke lock heeft.
+ */
+public class BackoffPolicy
+{
+	public enum Outcome
+	{
+		/**
+		 * De lock is verkregen.
+		 */
+		ACQUIRED,
+		/**
+		 * De lock is bezet door een partij met een hogere prioriteit. Laat eigen locks los en probeer het later opnieuw.
+		 */
+		BACK_OFF,
+		/**
+		 * Het maximaal aantal pogingen is bereikt zonder de lock te krijgen.
+		 */
+		EXHAUSTED
+	}
+
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final int retryBudget;
+
+	// Wie welke lock heeft, zodat een wachtende partij kan bepalen of hij moet wijken.
+	private final Map<Lock, Integer> owners = new ConcurrentHashMap<>();
+
+	private final long createdNanos = System.nanoTime();
+	private final LongAdder acquisitions = new LongAdder();
+	private final LongAdder failedAttempts = new LongAdder();
+	private final LongAdder backOffs = new LongAdder();
+	private final LongAdder exhausted = new LongAdder();
+
+	/**
+	 * @param initialBackoff de wachttijd na de eerste mislukte poging, die daarna steeds verdubbelt.
+	 * @param maxBackoff     de maximale wachttijd tussen twee pogingen.
+	 * @param retryBudget    het maximale aantal extra pogingen na de eerste.
+	 */
+	public BackoffPolicy(long initialBackoff, long maxBackoff, TimeUnit unit, int retryBudget)
+	{
+		if (initialBackoff <= 0 || maxBackoff < initialBackoff) {
+			throw new IllegalArgumentException("Expected 0 < initialBackoff <= maxBackoff");
+		}
+		if (retryBudget < 0) {
+			throw new IllegalArgumentException("retryBudget must not be negative, but was " + retryBudget);
+		}
+		this.initialBackoffNanos = unit.toNanos(initialBackoff);
+		this.maxBackoffNanos = unit.toNanos(maxBackoff);
+		this.retryBudget = retryBudget;
+	}
+
+	/**
+	 * Probeer de lock te verkrijgen volgens deze policy.
+	 *
+	 * @param priority de prioriteit van de aanroeper. Bij bezetting door een hogere prioriteit wijkt de aanroeper.
+	 *                 Partijen die elkaar kunnen tegenkomen moeten een verschillende prioriteit hebben.
+	 */
+	public Outcome acquire(Lock lock, int priority) throws InterruptedException
+	{
+		for (int attempt = 0; ; attempt++) {
+			if (lock.tryLock()) {
+				owners.put(lock, priority);
+				acquisitions.increment();
+				return Outcome.ACQUIRED;
+			}
+			failedAttempts.increment();
+
+			Integer owner = owners.get(lock);
+			if (owner != null && owner > priority) {
+				backOffs.increment();
+				return Outcome.BACK_OFF;
+			}
+			if (attempt >= retryBudget) {
+				exhausted.increment();
+				return Outcome.EXHAUSTED;
+			}
+			TimeUnit.NANOSECONDS.sleep(backoffNanos(attempt));
+		}
+	}
+
+	/**
+	 * Laat een lock los die met {@link #acquire(Lock, int)} verkregen is.
+	 */
+	public void release(Lock lock)
+	{
+		// Eerst de eigenaar weghalen en dan pas unlocken, anders kan de registratie van de volgende eigenaar verdwijnen.
+		owners.remove(lock);
+		lock.unlock();
+	}
+
+	/**
+	 * Wacht de backoff tijd voor de gegeven poging, bijvoorbeeld na een {@link Outcome#BACK_OFF}.
+	 */
+	public void pause(int attempt) throws InterruptedException
+	{
+		TimeUnit.NANOSECONDS.sleep(backoffNanos(attempt));
+	}
+
+	/**
+	 * Exponentiele backoff met "equal jitter": de helft vast en de andere helft willekeurig.
+	 */
+	private long backoffNanos(int attempt)
+	{
+		// Verder schuiven dan de vrije bits aan de linkerkant loopt over, en dan kan er een klein getal uitkomen.
+		long backoff = attempt >= Long.numberOfLeadingZeros(initialBackoffNanos) - 1
+			? maxBackoffNanos
+			: Math.min(maxBackoffNanos, initialBackoffNanos << attempt);
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+
+	public Metrics metrics()
+	{
+		return new Metrics(acquisitions.sum(), failedAttempts.sum(), backOffs.sum(), exhausted.sum(),
+			System.nanoTime() - createdNanos);
+	}
+
+	/**
+	 * Een momentopname van de metrics van een {@link BackoffPolicy}.
+	 */
+	public static class Metrics
+	{
+		private final long acquisitions;
+		private final long failedAttempts;
+		private final long backOffs;
+		private final long exhausted;
+		private final long elapsedNanos;
+
+		private Metrics(long acquisitions, long failedAttempts, long backOffs, long exhausted, long elapsedNanos)
+		{
+			this.acquisitions = acquisitions;
+			this.failedAttempts = failedAttempts;
+			this.backOffs = backOffs;
+			this.exhausted = exhausted;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public long getAcquisitions()
+		{
+			return acquisitions;
+		}
+
+		/**
+		 * Het aantal tryLock pogingen dat niets opleverde.
+		 */
+		public long getWastedRetries()
+		{
+			return failedAttempts;
+		}
+
+		public long getBackOffs()
+		{
+			return backOffs;
+		}
+
+		public long getExhausted()
+		{
+			return exhausted;
+		}
+
+		/**
+		 * Het aantal verkregen locks per seconde sinds de policy aangemaakt is.
+		 */
+		public double getProgressRate()
+		{
+			return elapsedNanos == 0 ? 0.0 : acquisitions * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%d acquisitions (%.2f/s), %d wasted retries, %d back-offs, %d exhausted",
+				acquisitions, getProgressRate(), failedAttempts, backOffs, exhausted);
+		}
+	}
+}
@@ -9,6 +9,8 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * Hieronder is een voorbeeld met de metafoor van een smalle steeg.
  * Je kan de steeg van beide kanten doorlopen, maar er is geen ruimte om elkaar te passeren.
+ * <p>
+ * In {@link DeadLockPrevention} zie je hoe dit voorkomen kan worden door de locks in een vaste volgorde te verkrijgen.
  */
 public class DeadLock
 {
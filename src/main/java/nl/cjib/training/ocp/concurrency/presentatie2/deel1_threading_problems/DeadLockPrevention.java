@@ -0,0 +1,59 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+/**
+ * Hetzelfde voorbeeld als bij {@link DeadLock}, maar nu met een {@link OrderedLockManager}.
+ * <p>
+ * De thread die naar beneden loopt, laat zijn huidige positie los als de volgende positie bezet is.
+ * Daardoor kunnen de threads nooit op elkaar blijven wachten.
+ */
+public class DeadLockPrevention
+{
+	private static final OrderedLockManager alley = new OrderedLockManager(5);
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		Thread thread1 = new Thread(() -> {
+			alley.lock(0);
+			System.out.println("Thread 1 starts at location 0");
+			for (int i = 0; i < 4; i++) {
+				alley.move(i, i + 1);
+				System.out.println("Thread 1 moves from location " + i + " to location " + (i + 1));
+				sleep();
+			}
+			System.out.println("Thread 1 ends at location 4");
+			alley.unlock(4);
+		});
+
+		Thread thread2 = new Thread(() -> {
+			alley.lock(4);
+			System.out.println("Thread 2 starts at location 4");
+			for (int i = 4; i > 0; i--) {
+				alley.move(i, i - 1);
+				System.out.println("Thread 2 moves from location " + i + " to location " + (i - 1));
+				sleep();
+			}
+			System.out.println("Thread 2 ends at location 0");
+			alley.unlock(0);
+		});
+
+		thread1.start();
+		thread2.start();
+		thread1.join();
+		thread2.join();
+
+		// Na afloop kan je per locatie zien hoe vaak en hoe lang er gewacht is.
+		for (int i = 0; i < alley.size(); i++) {
+			System.out.println(alley.stats(i));
+		}
+	}
+
+	private static void sleep()
+	{
+		try {
+			Thread.sleep(1000);
+		}
+		catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+import nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices.LatencyHistogram;
+
+/**
+ * Een reentrant {@link Lock} waarbij je expliciet kiest hoe eerlijk de lock is, om starvation zoals in
+ * {@link Starvation} te voorkomen.
+ * <p>
+ * Bij een synchronized methode (en een niet-fair ReentrantLock) kan een thread die de lock net losliet,
+ * hem direct weer pakken voordat een wachtende thread wakker is. Dat heet "barging".
+ * Barging geeft een hogere throughput, maar een wachtende thread kan daardoor heel lang moeten wachten.
+ * <p>
+ * Deze lock heeft 3 modi:
+ *  - {@link #strictFair()}: de lock gaat altijd naar de thread die het langst wacht;
+ *  - {@link #barging()}: een thread mag altijd voordringen als de lock toevallig vrij is;
+ *  - {@link #boundedUnfair(int)}: er mag maximaal N keer voorgedrongen worden,
+ *    daarna is eerst de langst wachtende thread aan de beurt.
+ * <p>
+ * Per thread (op naam) wordt een {@link LatencyHistogram} bijgehouden van hoe lang er op de lock gewacht is.
+ * Alleen de buitenste lock telt mee: een thread die de lock al heeft, hoeft bij een geneste lock nooit te wachten.
+ * <p>
+ * Conditions worden niet ondersteund.
+ */
+public class FairnessLock implements Lock
+{
+	private final Sync sync;
+	private final Map<String, LatencyHistogram> waitTimes = new ConcurrentHashMap<>();
+
+	private FairnessLock(int maxBarges)
+	{
+		this.sync = new Sync(maxBarges);
+	}
+
+	public static FairnessLock strictFair()
+	{
+		return new FairnessLock(0);
+	}
+
+	public static FairnessLock barging()
+	{
+		return new FairnessLock(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxBarges hoe vaak er maximaal voorgedrongen mag worden voordat de langst wachtende thread aan de beurt is.
+	 */
+	public static FairnessLock boundedUnfair(int maxBarges)
+	{
+		if (maxBarges < 0) {
+			throw new IllegalArgumentException("maxBarges must not be negative, but was " + maxBarges);
+		}
+		return new FairnessLock(maxBarges);
+	}
+
+	@Override
+	public void lock()
+	{
+		boolean nested = sync.isHeldExclusively();
+		long start = System.nanoTime();
+		sync.acquire(1);
+		recordWait(nested, start);
+	}
+
+	@Override
+	public void lockInterruptibly() throws InterruptedException
+	{
+		boolean nested = sync.isHeldExclusively();
+		long start = System.nanoTime();
+		sync.acquireInterruptibly(1);
+		recordWait(nested, start);
+	}
+
+	/**
+	 * Probeer de lock direct te krijgen. Ook hierbij wordt de gekozen modus gerespecteerd,
+	 * dus in de strict fair modus lukt dit niet als er al threads wachten.
+	 */
+	@Override
+	public boolean tryLock()
+	{
+		return sync.tryAcquire(1);
+	}
+
+	@Override
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException
+	{
+		boolean nested = sync.isHeldExclusively();
+		long start = System.nanoTime();
+		if (sync.tryAcquireNanos(1, unit.toNanos(time))) {
+			recordWait(nested, start);
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void unlock()
+	{
+		sync.release(1);
+	}
+
+	@Override
+	public Condition newCondition()
+	{
+		throw new UnsupportedOperationException("FairnessLock does not support conditions");
+	}
+
+	public boolean isHeldByCurrentThread()
+	{
+		return sync.isHeldExclusively();
+	}
+
+	public int getQueueLength()
+	{
+		return sync.getQueueLength();
+	}
+
+	/**
+	 * Geeft de wachttijd histogrammen per thread naam.
+	 */
+	public Map<String, LatencyHistogram> getWaitTimes()
+	{
+		return Collections.unmodifiableMap(waitTimes);
+	}
+
+	private void recordWait(boolean nested, long start)
+	{
+		if (nested) {
+			return;
+		}
+		long waited = System.nanoTime() - start;
+		waitTimes.computeIfAbsent(Thread.currentThread().getName(), name -> new LatencyHistogram()).record(waited);
+	}
+
+	/**
+	 * De state bevat in bit 0 of de lock bezet is, en in de overige bits hoe vaak er achter elkaar voorgedrongen is.
+	 * Zo worden de controle op het aantal keer voordringen en het verkrijgen van de lock in 1 compareAndSet gedaan.
+	 */
+	private static final class Sync extends AbstractQueuedSynchronizer
+	{
+		private final int maxBarges;
+		// Alleen de eigenaar van de lock leest en schrijft dit veld.
+		private int holds;
+
+		private Sync(int maxBarges)
+		{
+			this.maxBarges = maxBarges;
+		}
+
+		@Override
+		protected boolean tryAcquire(int ignored)
+		{
+			Thread current = Thread.currentThread();
+			int state = getState();
+			if ((state & 1) != 0) {
+				if (getExclusiveOwnerThread() == current) {
+					holds++;
+					return true;
+				}
+				return false;
+			}
+			int next;
+			if (hasQueuedPredecessors()) {
+				// Er wachten al threads, dus deze thread zou voordringen.
+				int barges = state >>> 1;
+				if (barges >= maxBarges) {
+					return false;
+				}
+				next = maxBarges == Integer.MAX_VALUE ? 1 : ((barges + 1) << 1) | 1;
+			}
+			else {
+				// De eerste wachtende thread (of er wacht niemand): de teller begint opnieuw.
+				next = 1;
+			}
+			if (compareAndSetState(state, next)) {
+				setExclusiveOwnerThread(current);
+				holds = 1;
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		protected boolean tryRelease(int ignored)
+		{
+			if (getExclusiveOwnerThread() != Thread.currentThread()) {
+				throw new IllegalMonitorStateException();
+			}
+			if (--holds > 0) {
+				return false;
+			}
+			setExclusiveOwnerThread(null);
+			setState(getState() & ~1);
+			return true;
+		}
+
+		@Override
+		protected boolean isHeldExclusively()
+		{
+			return getExclusiveOwnerThread() == Thread.currentThread();
+		}
+	}
+}
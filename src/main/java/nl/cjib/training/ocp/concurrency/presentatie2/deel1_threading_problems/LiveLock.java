@@ -14,6 +14,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p>
  * Hieronder is weer het voorbeeld met de metafoor van een smalle steeg.
  * Je kan de steeg van beide kanten doorlopen, maar er is geen ruimte om elkaar te passeren.
+ * <p>
+ * In {@link LiveLockPrevention} zie je hoe dit voorkomen kan worden met een {@link BackoffPolicy}.
  */
 public class LiveLock
 {
@@ -0,0 +1,113 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hetzelfde voorbeeld als bij {@link LiveLock}, maar nu met een {@link BackoffPolicy}.
+ * <p>
+ * Thread 2 heeft een hogere prioriteit dan thread 1. Als ze elkaar tegenkomen, blijft thread 2 wachten
+ * en stapt thread 1 terug. Kan thread 1 niet verder terug, dan stapt hij even opzij.
+ * Daarnaast wordt er met een willekeurige, steeds langere wachttijd gewacht, zodat de threads niet in de pas lopen.
+ */
+public class LiveLockPrevention
+{
+	private static final BackoffPolicy policy = new BackoffPolicy(50, 1000, TimeUnit.MILLISECONDS, 10);
+
+	private static final Lock[] locationLocks = new Lock[]{
+		new ReentrantLock(), new ReentrantLock(), new ReentrantLock(), new ReentrantLock(), new ReentrantLock()
+	};
+
+	private static void printAlleyStartLocation(int startLocationIndex, int threadNumber) throws InterruptedException
+	{
+		reclaim(startLocationIndex, threadNumber);
+		System.out.println("Thread " + threadNumber + " starts at location " + startLocationIndex);
+	}
+
+	private static void printAlleyEndLocation(int endLocationIndex, int threadNumber)
+	{
+		System.out.println("Thread " + threadNumber + " ends at location " + endLocationIndex);
+		policy.release(locationLocks[endLocationIndex]);
+	}
+
+	private static int printAlleyLocation(int oldLocationIndex, int newLocationIndex, int backupLocationIndex, int threadNumber) throws InterruptedException
+	{
+		// De thread nummer wordt hier als prioriteit gebruikt.
+		BackoffPolicy.Outcome outcome = policy.acquire(locationLocks[newLocationIndex], threadNumber);
+		if (outcome == BackoffPolicy.Outcome.ACQUIRED) {
+			System.out.println("Thread " + threadNumber + " moves from location " + oldLocationIndex + " to location " + newLocationIndex);
+			policy.release(locationLocks[oldLocationIndex]);
+			return newLocationIndex;
+		}
+		if (outcome == BackoffPolicy.Outcome.BACK_OFF) {
+			// Een thread met een hogere prioriteit staat in de weg, dus deze thread wijkt.
+			if (backupLocationIndex >= 0 && backupLocationIndex <= 4
+				&& policy.acquire(locationLocks[backupLocationIndex], threadNumber) == BackoffPolicy.Outcome.ACQUIRED) {
+				System.out.println("Thread " + threadNumber + " moves back from location " + oldLocationIndex + " to location " + backupLocationIndex);
+				policy.release(locationLocks[oldLocationIndex]);
+				return backupLocationIndex;
+			}
+			// Als terugstappen niet kan, geeft de thread zijn plek even vrij.
+			System.out.println("Thread " + threadNumber + " steps aside at location " + oldLocationIndex);
+			policy.release(locationLocks[oldLocationIndex]);
+			policy.pause(0);
+			reclaim(oldLocationIndex, threadNumber);
+			System.out.println("Thread " + threadNumber + " steps back in at location " + oldLocationIndex);
+			return oldLocationIndex;
+		}
+		System.out.println("Thread " + threadNumber + " was unable to move");
+		return oldLocationIndex;
+	}
+
+	/**
+	 * Blijf proberen tot de lock verkregen is. Deze thread heeft op dat moment geen andere locks in handen.
+	 */
+	private static void reclaim(int locationIndex, int threadNumber) throws InterruptedException
+	{
+		int attempt = 0;
+		while (policy.acquire(locationLocks[locationIndex], threadNumber) != BackoffPolicy.Outcome.ACQUIRED) {
+			policy.pause(attempt++);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		Thread thread1 = new Thread(() -> {
+			try {
+				printAlleyStartLocation(0, 1);
+				int i = 0;
+				while (i < 4) {
+					i = printAlleyLocation(i, i + 1, i - 1, 1);
+					Thread.sleep(1000);
+				}
+				printAlleyEndLocation(4, 1);
+			}
+			catch (InterruptedException e) {
+				System.exit(1);
+			}
+		});
+
+		Thread thread2 = new Thread(() -> {
+			try {
+				printAlleyStartLocation(4, 2);
+				int i = 4;
+				while (i > 0) {
+					i = printAlleyLocation(i, i - 1, i + 1, 2);
+					Thread.sleep(1000);
+				}
+				printAlleyEndLocation(0, 2);
+			}
+			catch (InterruptedException e) {
+				System.exit(1);
+			}
+		});
+
+		thread1.start();
+		thread2.start();
+		thread1.join();
+		thread2.join();
+
+		System.out.println(policy.metrics());
+	}
+}
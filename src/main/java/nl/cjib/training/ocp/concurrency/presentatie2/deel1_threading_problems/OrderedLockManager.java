@@ -0,0 +1,277 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Beheert een rij locks die altijd in een vaste volgorde (oplopende index) verkregen worden.
+ * <p>
+ * Een deadlock ontstaat als threads locks in een verschillende volgorde proberen te krijgen,
+ * zoals in {@link DeadLock}: de ene thread loopt de steeg van links naar rechts door, de andere van rechts naar links.
+ * Als elke thread zijn locks altijd van laag naar hoog verkrijgt, kan er geen cyclische wachtrij ontstaan.
+ * <p>
+ * Deze class dwingt die volgorde af:
+ *  - {@link #lock(int)} gooit een {@link IllegalStateException} als de thread al een hogere lock heeft;
+ *  - {@link #lockAll(int...)} sorteert de indexen eerst;
+ *  - {@link #move(int, int)} verplaatst een thread hand-over-hand naar een andere lock.
+ *    Naar boven wordt gewoon gewacht. Naar beneden wordt eerst tryLock geprobeerd,
+ *    en als dat niet lukt wordt de oude lock eerst losgelaten voordat er gewacht wordt.
+ * <p>
+ * Per lock wordt bijgehouden hoe vaak hij verkregen is, hoe vaak er gewacht moest worden en hoe lang.
+ * <p>
+ * Per thread wordt bijgehouden welke locks hij heeft, zodat de controle op de volgorde alleen naar de hoogste
+ * hoeft te kijken in plaats van naar alle locks. Locks van deze manager moeten dus ook via {@link #unlock(int)}
+ * (of {@link #unlockAll(int...)}) losgelaten worden.
+ */
+public class OrderedLockManager
+{
+	private final ReentrantLock[] locks;
+	private final Stats[] stats;
+	// De indexen van de locks die een thread heeft. Een thread zonder locks staat er niet in.
+	private final Map<Thread, BitSet> held = new ConcurrentHashMap<>();
+
+	public OrderedLockManager(int size)
+	{
+		this(size, false);
+	}
+
+	/**
+	 * @param fair of de onderliggende {@link ReentrantLock}s fair moeten zijn.
+	 */
+	public OrderedLockManager(int size, boolean fair)
+	{
+		locks = new ReentrantLock[size];
+		stats = new Stats[size];
+		for (int i = 0; i < size; i++) {
+			locks[i] = new ReentrantLock(fair);
+			stats[i] = new Stats();
+		}
+	}
+
+	public int size()
+	{
+		return locks.length;
+	}
+
+	/**
+	 * Verkrijg de lock met de gegeven index.
+	 *
+	 * @throws IllegalStateException als de huidige thread al een lock met een hogere index heeft.
+	 */
+	public void lock(int index)
+	{
+		checkOrder(index, -1);
+		acquire(index);
+	}
+
+	public void unlock(int index)
+	{
+		ReentrantLock lock = locks[index];
+		lock.unlock();
+		if (!lock.isHeldByCurrentThread()) {
+			Thread current = Thread.currentThread();
+			BitSet indexes = held.get(current);
+			indexes.clear(index);
+			if (indexes.isEmpty()) {
+				held.remove(current);
+			}
+		}
+	}
+
+	/**
+	 * Verkrijg alle gegeven locks, in oplopende volgorde. Dubbele indexen worden maar 1 keer gelockt.
+	 */
+	public void lockAll(int... indexes)
+	{
+		int[] sorted = Arrays.stream(indexes).sorted().distinct().toArray();
+		if (sorted.length > 0) {
+			checkOrder(sorted[0], -1);
+		}
+		for (int index : sorted) {
+			acquire(index);
+		}
+	}
+
+	/**
+	 * Laat alle gegeven locks los, in aflopende volgorde.
+	 */
+	public void unlockAll(int... indexes)
+	{
+		int[] sorted = Arrays.stream(indexes).sorted().distinct().toArray();
+		for (int i = sorted.length - 1; i >= 0; i--) {
+			unlock(sorted[i]);
+		}
+	}
+
+	/**
+	 * Verplaats de huidige thread van de lock op from naar de lock op to.
+	 * Na afloop heeft de thread de lock op to en niet meer die op from.
+	 * <p>
+	 * Bij een stap naar beneden kan het zijn dat de thread kort geen van beide locks heeft.
+	 * Dat is de prijs voor het voorkomen van een deadlock.
+	 */
+	public void move(int from, int to)
+	{
+		if (!locks[from].isHeldByCurrentThread()) {
+			throw new IllegalStateException("Current thread does not hold lock " + from);
+		}
+		// Controleer voordat er iets losgelaten of verkregen wordt, zodat een fout de thread niets kost,
+		// en zodat het resultaat niet afhangt van of de lock op to toevallig vrij is.
+		checkOrder(to, from);
+		if (to > from) {
+			acquire(to);
+			unlock(from);
+		}
+		else if (to < from) {
+			if (locks[to].tryLock()) {
+				stats[to].acquired(0L, false);
+				markHeld(to);
+				unlock(from);
+			}
+			else {
+				// Wachten op een lagere lock terwijl we een hogere vasthouden kan een deadlock geven.
+				// Daarom eerst loslaten en dan pas wachten.
+				unlock(from);
+				acquire(to);
+			}
+		}
+	}
+
+	/**
+	 * Geeft de statistieken van een lock, zoals ze op dit moment zijn.
+	 */
+	public LockStats stats(int index)
+	{
+		return stats[index].snapshot(index);
+	}
+
+	/**
+	 * Controleer dat de huidige thread geen lock hoger dan index heeft.
+	 *
+	 * @param leaving een lock die de thread direct loslaat (bij een move), of -1.
+	 */
+	private void checkOrder(int index, int leaving)
+	{
+		BitSet indexes = held.get(Thread.currentThread());
+		if (indexes == null) {
+			return;
+		}
+		int highest = indexes.length() - 1;
+		if (highest == leaving && locks[leaving].getHoldCount() == 1) {
+			highest = indexes.previousSetBit(leaving - 1);
+		}
+		if (highest > index) {
+			throw new IllegalStateException("Cannot acquire lock " + index + " while holding lock " + highest);
+		}
+	}
+
+	private void acquire(int index)
+	{
+		ReentrantLock lock = locks[index];
+		if (lock.tryLock()) {
+			stats[index].acquired(0L, false);
+		}
+		else {
+			long start = System.nanoTime();
+			lock.lock();
+			stats[index].acquired(System.nanoTime() - start, true);
+		}
+		markHeld(index);
+	}
+
+	private void markHeld(int index)
+	{
+		held.computeIfAbsent(Thread.currentThread(), thread -> new BitSet(locks.length)).set(index);
+	}
+
+	private static class Stats
+	{
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder contendedAcquisitions = new LongAdder();
+		private final LongAdder totalWaitNanos = new LongAdder();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+
+		private void acquired(long waitNanos, boolean contended)
+		{
+			acquisitions.increment();
+			if (contended) {
+				contendedAcquisitions.increment();
+				totalWaitNanos.add(waitNanos);
+				maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+			}
+		}
+
+		private LockStats snapshot(int index)
+		{
+			return new LockStats(index, acquisitions.sum(), contendedAcquisitions.sum(), totalWaitNanos.sum(), maxWaitNanos.get());
+		}
+	}
+
+	/**
+	 * De wachttijd statistieken van 1 lock.
+	 */
+	public static class LockStats
+	{
+		private final int index;
+		private final long acquisitions;
+		private final long contendedAcquisitions;
+		private final long totalWaitNanos;
+		private final long maxWaitNanos;
+
+		private LockStats(int index, long acquisitions, long contendedAcquisitions, long totalWaitNanos, long maxWaitNanos)
+		{
+			this.index = index;
+			this.acquisitions = acquisitions;
+			this.contendedAcquisitions = contendedAcquisitions;
+			this.totalWaitNanos = totalWaitNanos;
+			this.maxWaitNanos = maxWaitNanos;
+		}
+
+		public int getIndex()
+		{
+			return index;
+		}
+
+		public long getAcquisitions()
+		{
+			return acquisitions;
+		}
+
+		/**
+		 * Het aantal keer dat de lock niet direct vrij was en er gewacht moest worden.
+		 */
+		public long getContendedAcquisitions()
+		{
+			return contendedAcquisitions;
+		}
+
+		public long getTotalWait(TimeUnit unit)
+		{
+			return unit.convert(totalWaitNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public long getMaxWait(TimeUnit unit)
+		{
+			return unit.convert(maxWaitNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public double getAverageWaitNanos()
+		{
+			return contendedAcquisitions == 0 ? 0.0 : (double) totalWaitNanos / contendedAcquisitions;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Lock " + index + ": " + acquisitions + " acquisitions, " + contendedAcquisitions + " contended, "
+				+ "avg wait " + TimeUnit.NANOSECONDS.toMicros((long) getAverageWaitNanos()) + " us, "
+				+ "max wait " + getMaxWait(TimeUnit.MICROSECONDS) + " us";
+		}
+	}
+}
@@ -5,6 +5,8 @@ import java.util.Random;
 /**
  * Een race condition is als meerdere threads dezelfde resource proberen te veranderen,
  * waarbij de volgorde en het al dan niet gebruik maken van locks de uiteindelijke state van de resource zal bepalen.
+ * <p>
+ * In {@link RaceConditionStress} wordt dit op grote schaal getest, samen met de lock-free {@link AtomicTask}.
  */
 public class RaceCondition
 {
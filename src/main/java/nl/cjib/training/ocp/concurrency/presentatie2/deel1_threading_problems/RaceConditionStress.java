@@ -0,0 +1,51 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Test de race condition uit {@link RaceCondition} met een {@link StressHarness},
+ * in plaats van met een oneindige loop die 1 uitkomst per seconde print.
+ * <p>
+ * Eerst met een Task die, net als in {@link RaceCondition}, apart leest en schrijft (maar zonder sleeps),
+ * en daarna met de lock-free {@link AtomicTask}.
+ */
+public class RaceConditionStress
+{
+	/**
+	 * Dezelfde read-modify-write als de Task uit {@link RaceCondition}, zonder sleep en print.
+	 */
+	private static class PlainTask
+	{
+		private int number = 1;
+
+		public void plusTwo()
+		{
+			int number = this.number + 2;
+			this.number = number;
+		}
+
+		public void triple()
+		{
+			int number = this.number * 3;
+			this.number = number;
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		// Hier kan ook de uitkomst 3 voorkomen, als beide threads de 1 lezen voordat een van beide schrijft.
+		StressHarness<PlainTask> plainHarness = new StressHarness<>(PlainTask::new, task -> task.number,
+			PlainTask::plusTwo, PlainTask::triple);
+		System.out.println("Plain task:  " + plainHarness.run(1000, 10000));
+
+		// Hier zijn alleen 5 en 9 mogelijk. De mislukte compareAndSets worden bij het observeren opgeteld.
+		LongAdder retries = new LongAdder();
+		StressHarness<AtomicTask> atomicHarness = new StressHarness<>(AtomicTask::new, task -> {
+			retries.add(task.getRetries());
+			return task.getNumber();
+		}, AtomicTask::plusTwo, AtomicTask::triple);
+		StressHarness.Result result = atomicHarness.run(1000, 10000);
+		System.out.println("Atomic task: " + result);
+		System.out.printf("CAS retries: %d (%.4f%% of the runs)%n", retries.sum(), 100.0 * retries.sum() / result.getInterleavings());
+	}
+}
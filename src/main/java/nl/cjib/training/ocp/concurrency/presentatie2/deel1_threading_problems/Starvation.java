@@ -3,6 +3,8 @@ package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
 /**
  * Starvation is wanneer een bepaalde thread een lock onnodig lang vasthoudt,
  * waardoor andere threads niet (vaak) de kans krijgen om deze lock in handen te krijgen.
+ * <p>
+ * In {@link StarvationPrevention} zie je hoe je met een {@link FairnessLock} zelf kiest hoe eerlijk de lock verdeeld wordt.
  */
 public class Starvation
 {
@@ -0,0 +1,92 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hetzelfde voorbeeld als bij {@link Starvation}, maar nu met een {@link FairnessLock} in plaats van synchronized.
+ * <p>
+ * De greedy thread houdt de lock nog steeds vast voor 10 aanroepen achter elkaar.
+ * Het verschil zit in wat er gebeurt als hij de lock loslaat en direct weer probeert te pakken:
+ *  - barging: de greedy thread kan meteen weer voordringen, de cheap thread komt er zelden tussen;
+ *  - strict fair: de cheap thread wacht al, dus die is eerst aan de beurt;
+ *  - bounded unfair: de greedy thread mag een paar keer voordringen, daarna is de cheap thread aan de beurt.
+ * <p>
+ * Per modus wordt 3 seconden gedraaid. Daarna zie je per thread hoe vaak hij de lock had en hoe lang hij wachtte.
+ */
+public class StarvationPrevention
+{
+	private static void printThreadNumber(FairnessLock lock, int threadNumber, AtomicInteger turns)
+	{
+		lock.lock();
+		try {
+			turns.incrementAndGet();
+			Thread.sleep(10);
+		}
+		catch (InterruptedException e) {
+			System.exit(1);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private static void cheapPrintThreadNumber(FairnessLock lock, int threadNumber, AtomicInteger turns)
+	{
+		for (int i = 0; i < 10; i++) {
+			printThreadNumber(lock, threadNumber, turns);
+		}
+	}
+
+	/**
+	 * Net als bij {@link Starvation} houdt deze methode de lock vast voor alle 10 aanroepen.
+	 * De lock is reentrant, dus de geneste aanroepen kunnen de lock opnieuw pakken.
+	 */
+	private static void greedyPrintThreadNumber(FairnessLock lock, int threadNumber, AtomicInteger turns)
+	{
+		lock.lock();
+		try {
+			for (int i = 0; i < 10; i++) {
+				printThreadNumber(lock, threadNumber, turns);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private static void run(String mode, FairnessLock lock) throws InterruptedException
+	{
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicInteger cheapTurns = new AtomicInteger();
+		AtomicInteger greedyTurns = new AtomicInteger();
+
+		Thread cheap = new Thread(() -> {
+			while (running.get()) {
+				cheapPrintThreadNumber(lock, 1, cheapTurns);
+			}
+		}, "Thread 1 (cheap)");
+		Thread greedy = new Thread(() -> {
+			while (running.get()) {
+				greedyPrintThreadNumber(lock, 2, greedyTurns);
+			}
+		}, "Thread 2 (greedy)");
+
+		cheap.start();
+		greedy.start();
+		Thread.sleep(3000);
+		running.set(false);
+		cheap.join();
+		greedy.join();
+
+		System.out.println(mode + ": cheap had the lock " + cheapTurns + " times, greedy " + greedyTurns + " times");
+		lock.getWaitTimes().forEach((threadName, histogram) -> System.out.println("  " + threadName + ": " + histogram));
+	}
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		run("barging", FairnessLock.barging());
+		run("strict fair", FairnessLock.strictFair());
+		run("bounded unfair (max 3 barges)", FairnessLock.boundedUnfair(3));
+	}
+}
@@ -0,0 +1,159 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Voert een aantal acties tegelijk uit op steeds nieuwe objecten en telt welke uitkomsten er voorkomen.
+ * <p>
+ * In {@link RaceCondition} wordt elke keer een nieuwe thread gestart en een seconde gewacht,
+ * waardoor je maar 1 uitkomst per seconde ziet.
+ * Deze harness start per actie 1 thread die blijft draaien. Elke thread voert zijn actie uit op een hele batch
+ * objecten, waarna alle threads op een {@link CyclicBarrier} wachten. Bij het trippen van de barrier wordt de uitkomst
+ * van elk object geteld en wordt de batch gevuld met nieuwe objecten.
+ * Zo worden er miljoenen interleavings per seconde getest.
+ * <p>
+ * Het aantal batches en de batch grootte liggen vast, dus elke run test evenveel objecten.
+ * Welke interleavings er voorkomen blijft natuurlijk afhankelijk van de scheduling van de threads.
+ *
+ * @param <S> het type object waarop de acties uitgevoerd worden.
+ */
+public class StressHarness<S>
+{
+	private final Supplier<S> stateFactory;
+	private final List<Consumer<S>> actors;
+	private final ToIntFunction<S> observer;
+
+	/**
+	 * @param stateFactory maakt een nieuw object in de begintoestand.
+	 * @param observer     bepaalt de uitkomst van een object, nadat alle acties erop uitgevoerd zijn.
+	 * @param actors       de acties die tegelijkertijd, elk in een eigen thread, uitgevoerd worden.
+	 */
+	@SafeVarargs
+	public StressHarness(Supplier<S> stateFactory, ToIntFunction<S> observer, Consumer<S>... actors)
+	{
+		if (actors.length == 0) {
+			throw new IllegalArgumentException("At least one actor is required");
+		}
+		this.stateFactory = stateFactory;
+		this.observer = observer;
+		// De array zelf niet doorgeven aan een andere varargs methode, zie @SafeVarargs.
+		List<Consumer<S>> copy = new ArrayList<>(actors.length);
+		for (Consumer<S> actor : actors) {
+			copy.add(actor);
+		}
+		this.actors = Collections.unmodifiableList(copy);
+	}
+
+	public Result run(int batches, int batchSize) throws InterruptedException
+	{
+		List<S> states = new ArrayList<>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			states.add(stateFactory.get());
+		}
+		Map<Integer, long[]> outcomes = new TreeMap<>();
+
+		// De barrier actie draait in de laatste thread die aankomt, terwijl de andere threads wachten.
+		CyclicBarrier batchDone = new CyclicBarrier(actors.size(), () -> {
+			for (int i = 0; i < batchSize; i++) {
+				outcomes.computeIfAbsent(observer.applyAsInt(states.get(i)), outcome -> new long[1])[0]++;
+				states.set(i, stateFactory.get());
+			}
+		});
+		CyclicBarrier start = new CyclicBarrier(actors.size());
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		List<Thread> threads = new ArrayList<>();
+		for (int a = 0; a < actors.size(); a++) {
+			Consumer<S> actor = actors.get(a);
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (int b = 0; b < batches && failure.get() == null; b++) {
+						for (int i = 0; i < batchSize; i++) {
+							actor.accept(states.get(i));
+						}
+						batchDone.await();
+					}
+				}
+				catch (InterruptedException | BrokenBarrierException e) {
+					failure.compareAndSet(null, e);
+				}
+				catch (RuntimeException | Error e) {
+					failure.compareAndSet(null, e);
+					// Een reset van de barrier helpt alleen de threads die er al op wachten. De andere threads komen
+					// later aan en zouden dan op een nieuwe ronde wachten die nooit vol raakt. Door ze te interrupten
+					// faalt hun await altijd, ook als ze nu nog met hun batch bezig zijn.
+					for (Thread other : threads) {
+						if (other != Thread.currentThread()) {
+							other.interrupt();
+						}
+					}
+				}
+			}, "stress-actor-" + a);
+			threads.add(thread);
+		}
+
+		long startNanos = System.nanoTime();
+		threads.forEach(Thread::start);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+
+		if (failure.get() != null) {
+			throw new IllegalStateException("Stress run failed", failure.get());
+		}
+		SortedMap<Integer, Long> counts = new TreeMap<>();
+		outcomes.forEach((outcome, count) -> counts.put(outcome, count[0]));
+		return new Result(counts, (long) batches * batchSize, elapsedNanos);
+	}
+
+	/**
+	 * Het resultaat van een stress run: hoe vaak elke uitkomst voorkwam.
+	 */
+	public static class Result
+	{
+		private final SortedMap<Integer, Long> outcomes;
+		private final long interleavings;
+		private final long elapsedNanos;
+
+		private Result(SortedMap<Integer, Long> outcomes, long interleavings, long elapsedNanos)
+		{
+			this.outcomes = Collections.unmodifiableSortedMap(outcomes);
+			this.interleavings = interleavings;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public SortedMap<Integer, Long> getOutcomes()
+		{
+			return outcomes;
+		}
+
+		public long getInterleavings()
+		{
+			return interleavings;
+		}
+
+		public double getInterleavingsPerSecond()
+		{
+			return elapsedNanos == 0 ? 0.0 : interleavings * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%d interleavings (%.0f/s), outcomes: %s", interleavings, getInterleavingsPerSecond(), outcomes);
+		}
+	}
+}
@@ -1,9 +1,11 @@
 package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -65,6 +67,15 @@ public class ConcurrentCollections
 			System.exit(1);
 		}
 
+		// Een RingBufferQueue is ook een BlockingQueue, maar dan lock-free en zonder een node per element.
+		// De capacity wordt afgerond op een macht van 2 (hier dus 8).
+		// Met drainTo worden meerdere elementen in 1 keer uit de queue gehaald.
+		BlockingQueue<Integer> ringBufferQueue = new RingBufferQueue<>(5, RingBufferQueue.WaitStrategy.PARK);
+		ringBufferQueue.addAll(collection);
+		List<Integer> drained = new ArrayList<>();
+		ringBufferQueue.drainTo(drained, 3);
+		System.out.println("Drained " + drained + ", remaining " + ringBufferQueue);
+
 		// SkipList set en map zijn de concurrent versies van TreeSet en TreeMap en zijn dus sorted en navigable
 		SortedSet<Integer> sortedSet = new ConcurrentSkipListSet<>(collection);
 		SortedMap<String, Integer> sortedMap = new ConcurrentSkipListMap<>(map);
@@ -108,8 +119,23 @@ public class ConcurrentCollections
 			System.out.println(elem);
 		}
 
+		// Een PersistentVectorList heeft dezelfde momentopname iterators, maar kopieert bij een add of set
+		// alleen het pad naar het element in plaats van de hele lijst. Zo blijft ook een grote lijst goed te wijzigen.
+		List<Integer> persistentVectorList = new PersistentVectorList<>(collection);
+		Iterator<Integer> snapshotIterator = persistentVectorList.iterator();
+		persistentVectorList.add(6);
+		// ook hier wordt 6 niet geprint, want de iterator houdt de versie van voor de add vast
+		snapshotIterator.forEachRemaining(System.out::println);
+
 		// overige concurrent collections:
 		ConcurrentMap<String, Integer> concurrentHashMap = new ConcurrentHashMap<>(map);
+
+		// Voor tellers van long naar long is er de ConcurrentLongLongMap, die geen objecten per entry aanmaakt.
+		// Een ontbrekende key geeft hier de missingValue (0) terug in plaats van null.
+		ConcurrentLongLongMap counters = new ConcurrentLongLongMap(0L);
+		counters.addAndGet(42L, 5L);
+		counters.incrementAndGet(42L);
+		System.out.println("Counter 42: " + counters.get(42L) + ", counter 43: " + counters.get(43L));
 		Queue<Integer> concurrentLinkedQueue = new ConcurrentLinkedQueue<>(collection);
 		Deque<Integer> concurrentLinkedDeque = new ConcurrentLinkedDeque<>(collection);
 
@@ -125,6 +151,14 @@ public class ConcurrentCollections
 
 		SortedMap<String, Integer> synchronizedSortedMap = Collections.synchronizedSortedMap(new TreeMap<>(map));
 		SortedSet<Integer> synchronizedSortedSet = Collections.synchronizedSortedSet(new TreeSet<>(set));
+
+		// Als alternatief voor de synchronized wrappers zijn er wrappers die niet alles via 1 monitor laten lopen.
+		// StripedMap en StripedSet verdelen de entries op basis van de hash van de key over meerdere locks.
+		// ReadWriteNavigableMap laat lezers tegelijk lezen, met een ReadWriteLock of een StampedLock.
+		Map<String, Integer> stripedMap = StripedMap.copyOf(map);
+		Set<Integer> stripedSet = new StripedSet<>(set);
+		NavigableMap<String, Integer> readWriteNavigableMap = new ReadWriteNavigableMap<>(new TreeMap<>(map));
+		NavigableMap<String, Integer> stampedNavigableMap = ReadWriteNavigableMap.withStampedLock(new TreeMap<>(map));
 	}
 
 	private static void sleep()
@@ -0,0 +1,432 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Een concurrent map van long naar long, zonder objecten per entry.
+ * <p>
+ * In een {@code ConcurrentHashMap<Long, Long>} kost elke entry een Node, een Long voor de key en een Long voor de value.
+ * Bij miljoenen tellers is dat zo'n 80 bytes per entry, en veel werk voor de garbage collector.
+ * Deze map slaat keys en values direct op in een long array (open addressing met linear probing),
+ * zodat een entry gemiddeld zo'n 25 tot 40 bytes kost.
+ * <p>
+ * De map is verdeeld in segmenten op basis van de hash van de key. Per segment geldt:
+ * <ul>
+ *     <li>Lezen is lock-free: een lezer probeert de key te vinden, zonder lock;</li>
+ *     <li>Schrijven gebeurt met compareAndSet op de key en de value. Schrijvers delen een read lock van een
+ *     {@link StampedLock}, dus ze houden elkaar niet tegen;</li>
+ *     <li>Vergroten gebeurt onder de write lock, zodat er tijdens het kopieren niet geschreven wordt.
+ *     Lezers gaan gewoon door op de oude array, en kijken na het lezen of er inmiddels een nieuwe array is.</li>
+ * </ul>
+ * <p>
+ * Omdat er geen plek is voor null, kies je bij het aanmaken een missingValue. {@link #get(long)} geeft die waarde
+ * als de key ontbreekt, en het opslaan van missingValue betekent hetzelfde als een remove.
+ * Bij tellers is 0 meestal een handige keuze: een teller die op 0 uitkomt verdwijnt dan vanzelf uit de map.
+ * <p>
+ * Een verwijderde key blijft zijn plek in de array houden tot het segment de volgende keer gekopieerd wordt.
+ */
+public class ConcurrentLongLongMap
+{
+	/**
+	 * Een actie voor een entry, zonder boxing.
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer
+	{
+		void accept(long key, long value);
+	}
+
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+	// Een lege plek voor een key. De key 0 zelf wordt apart opgeslagen.
+	private static final long EMPTY = 0L;
+	private static final int MIN_SEGMENT_CAPACITY = 16;
+
+	private final long missingValue;
+	private final Segment[] segments;
+	private final int segmentShift;
+	private final AtomicLong zeroKeyValue;
+
+	/**
+	 * Een map met een beginruimte voor 1024 entries.
+	 *
+	 * @param missingValue de waarde die "geen entry" betekent.
+	 */
+	public ConcurrentLongLongMap(long missingValue)
+	{
+		this(1024, missingValue);
+	}
+
+	/**
+	 * @param expectedSize het verwachte aantal entries, zodat er niet onnodig vergroot hoeft te worden.
+	 * @param missingValue de waarde die "geen entry" betekent.
+	 */
+	public ConcurrentLongLongMap(int expectedSize, long missingValue)
+	{
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative, but was " + expectedSize);
+		}
+		this.missingValue = missingValue;
+		this.zeroKeyValue = new AtomicLong(missingValue);
+		int segmentCount = powerOfTwo(Math.min(1 << 10, 4 * Runtime.getRuntime().availableProcessors()));
+		this.segmentShift = 64 - Integer.numberOfTrailingZeros(segmentCount);
+		this.segments = new Segment[segmentCount];
+		// De tabellen worden tot 3/4 gevuld, dus reken wat ruimte extra.
+		int segmentCapacity = powerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, (int) Math.min(1 << 29, (long) expectedSize * 4 / 3 / segmentCount + 1)));
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	public long getMissingValue()
+	{
+		return missingValue;
+	}
+
+	/**
+	 * Geeft de waarde van de key, of missingValue als de key ontbreekt. Dit gebruikt geen locks.
+	 */
+	public long get(long key)
+	{
+		if (key == EMPTY) {
+			return zeroKeyValue.get();
+		}
+		long hash = hash(key);
+		Segment segment = segmentFor(hash);
+		while (true) {
+			long[] table = segment.table;
+			int slot = findSlot(table, key, hash);
+			long value = slot < 0 ? missingValue : (long) SLOTS.getVolatile(table, slot + 1);
+			// Als het segment intussen gekopieerd is, kan deze waarde verouderd zijn. Lees dan opnieuw.
+			if (segment.table == table) {
+				return value;
+			}
+		}
+	}
+
+	public long getOrDefault(long key, long defaultValue)
+	{
+		long value = get(key);
+		return value == missingValue ? defaultValue : value;
+	}
+
+	public boolean containsKey(long key)
+	{
+		return get(key) != missingValue;
+	}
+
+	/**
+	 * @return de vorige waarde, of missingValue.
+	 */
+	public long put(long key, long value)
+	{
+		return update(key, old -> value, false);
+	}
+
+	/**
+	 * @return de huidige waarde, of missingValue als de nieuwe waarde gezet is.
+	 */
+	public long putIfAbsent(long key, long value)
+	{
+		return update(key, old -> old == missingValue ? value : old, false);
+	}
+
+	/**
+	 * @return de verwijderde waarde, of missingValue.
+	 */
+	public long remove(long key)
+	{
+		return update(key, old -> missingValue, false);
+	}
+
+	/**
+	 * Tel delta op bij de waarde van de key, waarbij een ontbrekende key als 0 telt.
+	 *
+	 * @return de nieuwe waarde.
+	 */
+	public long addAndGet(long key, long delta)
+	{
+		return update(key, old -> (old == missingValue ? 0L : old) + delta, true);
+	}
+
+	public long incrementAndGet(long key)
+	{
+		return addAndGet(key, 1L);
+	}
+
+	/**
+	 * Net als {@link java.util.Map#merge}: als de key ontbreekt wordt value gezet, anders de uitkomst van de functie.
+	 * De functie kan vaker aangeroepen worden als andere threads tegelijk dezelfde key wijzigen.
+	 *
+	 * @return de nieuwe waarde.
+	 */
+	public long merge(long key, long value, LongBinaryOperator remappingFunction)
+	{
+		return update(key, old -> old == missingValue ? value : remappingFunction.applyAsLong(old, value), true);
+	}
+
+	/**
+	 * Het aantal entries. Bij gelijktijdige wijzigingen is dit een benadering.
+	 */
+	public int size()
+	{
+		long size = zeroKeyValue.get() != missingValue ? 1 : 0;
+		for (Segment segment : segments) {
+			size += segment.live.get();
+		}
+		return (int) Math.min(Integer.MAX_VALUE, size);
+	}
+
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+
+	/**
+	 * Voer de actie uit voor elke entry. Wijzigingen tijdens het doorlopen worden wel of niet gezien,
+	 * net als bij de iterators van {@link ConcurrentHashMap}.
+	 */
+	public void forEach(EntryConsumer action)
+	{
+		long zero = zeroKeyValue.get();
+		if (zero != missingValue) {
+			action.accept(EMPTY, zero);
+		}
+		for (Segment segment : segments) {
+			long[] table = segment.table;
+			for (int slot = 0; slot < table.length; slot += 2) {
+				long key = (long) SLOTS.getAcquire(table, slot);
+				if (key != EMPTY) {
+					long value = (long) SLOTS.getVolatile(table, slot + 1);
+					if (value != missingValue) {
+						action.accept(key, value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Het totaal aantal plekken in alle segmenten, om het geheugengebruik in te schatten (16 bytes per plek).
+	 */
+	public long capacity()
+	{
+		long capacity = 0;
+		for (Segment segment : segments) {
+			capacity += segment.table.length / 2;
+		}
+		return capacity;
+	}
+
+	private long update(long key, LongUnaryOperator function, boolean returnNew)
+	{
+		if (key == EMPTY) {
+			return updateZeroKey(function, returnNew);
+		}
+		long hash = hash(key);
+		Segment segment = segmentFor(hash);
+		while (true) {
+			long stamp = segment.lock.readLock();
+			long[] table = segment.table;
+			try {
+				int slot = findSlot(table, key, hash);
+				if (slot < 0) {
+					if (function.applyAsLong(missingValue) == missingValue) {
+						// Niets toe te voegen, bijvoorbeeld een remove van een ontbrekende key.
+						return missingValue;
+					}
+					if (segment.used.get() < threshold(table)) {
+						slot = claimSlot(segment, table, key, hash);
+					}
+				}
+				if (slot >= 0) {
+					return updateValue(segment, table, slot + 1, function, returnNew);
+				}
+			}
+			finally {
+				segment.lock.unlockRead(stamp);
+			}
+			// Het segment is te vol: kopieer het naar een grotere array en probeer het opnieuw.
+			resize(segment, table);
+		}
+	}
+
+	private long updateValue(Segment segment, long[] table, int valueSlot, LongUnaryOperator function, boolean returnNew)
+	{
+		while (true) {
+			long old = (long) SLOTS.getVolatile(table, valueSlot);
+			long updated = function.applyAsLong(old);
+			if (updated == old) {
+				return returnNew ? updated : old;
+			}
+			if (SLOTS.compareAndSet(table, valueSlot, old, updated)) {
+				if (old == missingValue) {
+					segment.live.incrementAndGet();
+				}
+				else if (updated == missingValue) {
+					segment.live.decrementAndGet();
+				}
+				return returnNew ? updated : old;
+			}
+		}
+	}
+
+	private long updateZeroKey(LongUnaryOperator function, boolean returnNew)
+	{
+		while (true) {
+			long old = zeroKeyValue.get();
+			long updated = function.applyAsLong(old);
+			if (updated == old || zeroKeyValue.compareAndSet(old, updated)) {
+				return returnNew ? updated : old;
+			}
+		}
+	}
+
+	/**
+	 * Zoekt de plek van de key, of -1 als de key niet in de array staat.
+	 */
+	private static int findSlot(long[] table, long key, long hash)
+	{
+		int mask = table.length / 2 - 1;
+		int index = (int) hash & mask;
+		for (int probes = 0; probes <= mask; probes++) {
+			long current = (long) SLOTS.getAcquire(table, 2 * index);
+			if (current == key) {
+				return 2 * index;
+			}
+			if (current == EMPTY) {
+				return -1;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Claimt met compareAndSet een lege plek voor de key, of geeft de plek terug die een andere thread net geclaimd heeft.
+	 * Geeft -1 als er geen lege plek meer is.
+	 */
+	private static int claimSlot(Segment segment, long[] table, long key, long hash)
+	{
+		int mask = table.length / 2 - 1;
+		int index = (int) hash & mask;
+		for (int probes = 0; probes <= mask; probes++) {
+			int slot = 2 * index;
+			long current = (long) SLOTS.getAcquire(table, slot);
+			if (current == EMPTY) {
+				if (SLOTS.compareAndSet(table, slot, EMPTY, key)) {
+					segment.used.incrementAndGet();
+					return slot;
+				}
+				current = (long) SLOTS.getAcquire(table, slot);
+			}
+			if (current == key) {
+				return slot;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void resize(Segment segment, long[] expected)
+	{
+		long stamp = segment.lock.writeLock();
+		try {
+			if (segment.table != expected) {
+				// Een andere thread heeft het segment al gekopieerd.
+				return;
+			}
+			int live = 0;
+			for (int slot = 0; slot < expected.length; slot += 2) {
+				if (expected[slot] != EMPTY && expected[slot + 1] != missingValue) {
+					live++;
+				}
+			}
+			// Verwijderde keys worden niet meegekopieerd, dus soms is een array van dezelfde grootte genoeg.
+			int capacity = powerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, live * 2));
+			long[] resized = newTable(capacity);
+			int mask = capacity - 1;
+			for (int slot = 0; slot < expected.length; slot += 2) {
+				long key = expected[slot];
+				long value = expected[slot + 1];
+				if (key != EMPTY && value != missingValue) {
+					int index = (int) hash(key) & mask;
+					while (resized[2 * index] != EMPTY) {
+						index = (index + 1) & mask;
+					}
+					resized[2 * index] = key;
+					resized[2 * index + 1] = value;
+				}
+			}
+			segment.used.set(live);
+			segment.live.set(live);
+			// Door de volatile write zien lezers de volledig gevulde nieuwe array.
+			segment.table = resized;
+		}
+		finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	private long[] newTable(int capacity)
+	{
+		long[] table = new long[2 * capacity];
+		if (missingValue != 0L) {
+			for (int slot = 1; slot < table.length; slot += 2) {
+				table[slot] = missingValue;
+			}
+		}
+		return table;
+	}
+
+	private static int threshold(long[] table)
+	{
+		return table.length / 2 / 4 * 3;
+	}
+
+	private Segment segmentFor(long hash)
+	{
+		return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+	}
+
+	/**
+	 * Verspreidt de bits van de key over de hele long (de finalizer van MurmurHash3),
+	 * zodat opeenvolgende keys niet in opeenvolgende plekken terechtkomen.
+	 */
+	private static long hash(long key)
+	{
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static int powerOfTwo(int value)
+	{
+		return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+	}
+
+	private final class Segment
+	{
+		private final StampedLock lock = new StampedLock();
+		// Afwisselend key en value: [key0, value0, key1, value1, ...].
+		private volatile long[] table;
+		// Het aantal geclaimde plekken, inclusief verwijderde keys.
+		private final AtomicInteger used = new AtomicInteger();
+		private final AtomicInteger live = new AtomicInteger();
+
+		private Segment(int capacity)
+		{
+			this.table = newTable(capacity);
+		}
+	}
+}
@@ -0,0 +1,620 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Een thread-safe list met dezelfde momentopname iterators als de {@link CopyOnWriteArrayList},
+ * maar zonder bij elke wijziging de hele array te kopieren.
+ * <p>
+ * De {@link CopyOnWriteArrayList} kopieert bij elke add of set alle elementen. Bij een lijst van 100.000 elementen
+ * is dat 100.000 keer kopieren voor het wijzigen van 1 element.
+ * Deze list bewaart de elementen in een boom waarin elke node 32 kinderen heeft (een persistent vector).
+ * Bij een wijziging worden alleen de nodes op het pad naar het element gekopieerd, en de rest van de boom wordt gedeeld
+ * met de vorige versie. Bij een miljoen elementen is dat pad maar 4 nodes lang, dus add en set zijn O(log32 n).
+ * <p>
+ * Elke versie is immutable. Een iterator (of {@link #snapshot()}) houdt de versie vast van het moment
+ * waarop hij gemaakt werd, dus net als bij de {@link CopyOnWriteArrayList} zie je geen wijzigingen die daarna komen
+ * en krijg je nooit een {@link ConcurrentModificationException}.
+ * <p>
+ * Lezen gebruikt geen locks. Schrijvers wachten op elkaar met een lock, net als bij de {@link CopyOnWriteArrayList},
+ * maar houden die lock maar heel kort vast.
+ * Toevoegen en verwijderen midden in de lijst (add(index, e) en remove(index)) verschuift alle elementen erachter,
+ * en kost dus wel O(n).
+ * Dat geldt ook voor sort, removeIf, replaceAll, removeAll, retainAll en subList(...).clear(): die bouwen onder de lock
+ * in 1 keer een nieuwe vector op, net zoals de {@link CopyOnWriteArrayList} dan 1 nieuwe array maakt.
+ */
+public class PersistentVectorList<E> extends AbstractList<E> implements RandomAccess
+{
+	private final Object lock = new Object();
+	private volatile Vector vector = Vector.EMPTY;
+
+	public PersistentVectorList()
+	{
+	}
+
+	public PersistentVectorList(Collection<? extends E> elements)
+	{
+		addAll(elements);
+	}
+
+	/**
+	 * Een immutable list met de elementen van dit moment.
+	 */
+	public List<E> snapshot()
+	{
+		return new Snapshot<>(vector);
+	}
+
+	@Override
+	public int size()
+	{
+		return vector.size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(int index)
+	{
+		Vector current = vector;
+		Objects.checkIndex(index, current.size);
+		return (E) current.get(index);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E set(int index, E element)
+	{
+		synchronized (lock) {
+			Vector current = vector;
+			Objects.checkIndex(index, current.size);
+			E old = (E) current.get(index);
+			vector = current.set(index, element);
+			return old;
+		}
+	}
+
+	@Override
+	public boolean add(E element)
+	{
+		synchronized (lock) {
+			vector = vector.add(element);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> elements)
+	{
+		// Eerst naar een array, zodat een (concurrent) collection maar 1 keer doorlopen wordt.
+		Object[] toAdd = elements.toArray();
+		if (toAdd.length == 0) {
+			return false;
+		}
+		synchronized (lock) {
+			Vector updated = vector;
+			for (Object element : toAdd) {
+				updated = updated.add(element);
+			}
+			vector = updated;
+			return true;
+		}
+	}
+
+	/**
+	 * Kost O(n), omdat alle elementen vanaf index opschuiven.
+	 */
+	@Override
+	public void add(int index, E element)
+	{
+		synchronized (lock) {
+			Vector current = vector;
+			Objects.checkIndex(index, current.size + 1);
+			if (index == current.size) {
+				vector = current.add(element);
+				return;
+			}
+			Vector updated = current.prefix(index).add(element);
+			for (int i = index; i < current.size; i++) {
+				updated = updated.add(current.get(i));
+			}
+			vector = updated;
+		}
+	}
+
+	/**
+	 * Kost O(n), omdat alle elementen na index opschuiven. Het laatste element verwijderen is O(log32 n).
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public E remove(int index)
+	{
+		synchronized (lock) {
+			Vector current = vector;
+			Objects.checkIndex(index, current.size);
+			E old = (E) current.get(index);
+			Vector updated = current.prefix(index);
+			for (int i = index + 1; i < current.size; i++) {
+				updated = updated.add(current.get(i));
+			}
+			vector = updated;
+			return old;
+		}
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		synchronized (lock) {
+			int index = vector.indexOf(o);
+			if (index < 0) {
+				return false;
+			}
+			remove(index);
+			return true;
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		synchronized (lock) {
+			vector = Vector.EMPTY;
+		}
+	}
+
+	/**
+	 * Verwijdert [fromIndex, toIndex). Wordt gebruikt door subList(fromIndex, toIndex).clear().
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex)
+	{
+		synchronized (lock) {
+			Vector current = vector;
+			Objects.checkFromToIndex(fromIndex, toIndex, current.size);
+			if (fromIndex == toIndex) {
+				return;
+			}
+			Vector updated = current.prefix(fromIndex);
+			for (int i = toIndex; i < current.size; i++) {
+				updated = updated.add(current.get(i));
+			}
+			vector = updated;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean removeIf(Predicate<? super E> filter)
+	{
+		Objects.requireNonNull(filter);
+		synchronized (lock) {
+			Object[] elements = vector.toArray();
+			int kept = 0;
+			for (Object element : elements) {
+				if (!filter.test((E) element)) {
+					elements[kept++] = element;
+				}
+			}
+			if (kept == elements.length) {
+				return false;
+			}
+			vector = Vector.of(elements, kept);
+			return true;
+		}
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c)
+	{
+		Objects.requireNonNull(c);
+		return removeIf(c::contains);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c)
+	{
+		Objects.requireNonNull(c);
+		return removeIf(element -> !c.contains(element));
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void replaceAll(UnaryOperator<E> operator)
+	{
+		Objects.requireNonNull(operator);
+		synchronized (lock) {
+			Object[] elements = vector.toArray();
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = operator.apply((E) elements[i]);
+			}
+			vector = Vector.of(elements, elements.length);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void sort(Comparator<? super E> c)
+	{
+		synchronized (lock) {
+			Object[] elements = vector.toArray();
+			// Zonder comparator sorteert Arrays.sort op de natuurlijke volgorde, net als List.sort.
+			Arrays.sort(elements, (Comparator<Object>) c);
+			vector = Vector.of(elements, elements.length);
+		}
+	}
+
+	@Override
+	public Object[] toArray()
+	{
+		return vector.toArray();
+	}
+
+	@Override
+	public int indexOf(Object o)
+	{
+		return vector.indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+
+	/**
+	 * Een iterator over de elementen van dit moment. Ondersteunt geen remove, set of add.
+	 */
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new SnapshotIterator<>(vector, 0);
+	}
+
+	@Override
+	public ListIterator<E> listIterator()
+	{
+		return new SnapshotIterator<>(vector, 0);
+	}
+
+	@Override
+	public ListIterator<E> listIterator(int index)
+	{
+		Vector current = vector;
+		Objects.checkIndex(index, current.size + 1);
+		return new SnapshotIterator<>(current, index);
+	}
+
+	/**
+	 * Een immutable persistent vector. Een wijziging geeft een nieuwe vector terug die zoveel mogelijk nodes deelt.
+	 * <p>
+	 * De laatste (maximaal 32) elementen staan in een aparte tail array, zodat een add meestal alleen de tail kopieert.
+	 * Een volle tail wordt als blad in de boom gehangen.
+	 */
+	private static final class Vector
+	{
+		private static final int BITS = 5;
+		private static final int WIDTH = 1 << BITS;
+		private static final int MASK = WIDTH - 1;
+		private static final Vector EMPTY = new Vector(0, BITS, new Object[WIDTH], new Object[0]);
+
+		private final int size;
+		// Het aantal bits dat de index in de root naar rechts geschoven wordt, BITS per niveau.
+		private final int shift;
+		private final Object[] root;
+		private final Object[] tail;
+
+		private Vector(int size, int shift, Object[] root, Object[] tail)
+		{
+			this.size = size;
+			this.shift = shift;
+			this.root = root;
+			this.tail = tail;
+		}
+
+		/**
+		 * Een vector met de eerste count elementen van de array. Hele bladen worden direct als blad gebruikt.
+		 */
+		private static Vector of(Object[] elements, int count)
+		{
+			Vector vector = EMPTY;
+			int start = 0;
+			for (; start + WIDTH <= count; start += WIDTH) {
+				vector = vector.addLeaf(Arrays.copyOfRange(elements, start, start + WIDTH));
+			}
+			for (int i = start; i < count; i++) {
+				vector = vector.add(elements[i]);
+			}
+			return vector;
+		}
+
+		private int tailOffset()
+		{
+			return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+		}
+
+		/**
+		 * Het blad (of de tail) waarin het element met deze index staat.
+		 */
+		private Object[] leafFor(int index)
+		{
+			if (index >= tailOffset()) {
+				return tail;
+			}
+			Object[] node = root;
+			for (int level = shift; level > 0; level -= BITS) {
+				node = (Object[]) node[(index >>> level) & MASK];
+			}
+			return node;
+		}
+
+		private Object get(int index)
+		{
+			return leafFor(index)[index & MASK];
+		}
+
+		private Vector set(int index, Object element)
+		{
+			if (index >= tailOffset()) {
+				Object[] newTail = tail.clone();
+				newTail[index & MASK] = element;
+				return new Vector(size, shift, root, newTail);
+			}
+			return new Vector(size, shift, assoc(shift, root, index, element), tail);
+		}
+
+		private static Object[] assoc(int level, Object[] node, int index, Object element)
+		{
+			Object[] copy = node.clone();
+			if (level == 0) {
+				copy[index & MASK] = element;
+			}
+			else {
+				int child = (index >>> level) & MASK;
+				copy[child] = assoc(level - BITS, (Object[]) node[child], index, element);
+			}
+			return copy;
+		}
+
+		private Vector add(Object element)
+		{
+			if (size - tailOffset() < WIDTH) {
+				Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+				newTail[tail.length] = element;
+				return new Vector(size + 1, shift, root, newTail);
+			}
+			// De tail is vol en wordt als blad in de boom gehangen.
+			Object[] newRoot;
+			int newShift = shift;
+			if ((size >>> BITS) > (1 << shift)) {
+				// De boom is vol: er komt een niveau bij.
+				newRoot = new Object[WIDTH];
+				newRoot[0] = root;
+				newRoot[1] = newPath(shift, tail);
+				newShift += BITS;
+			}
+			else {
+				newRoot = pushTail(shift, root, tail);
+			}
+			return new Vector(size + 1, newShift, newRoot, new Object[]{element});
+		}
+
+		private Object[] pushTail(int level, Object[] parent, Object[] leaf)
+		{
+			int child = ((size - 1) >>> level) & MASK;
+			Object[] copy = parent.clone();
+			if (level == BITS) {
+				copy[child] = leaf;
+			}
+			else {
+				Object[] existing = (Object[]) parent[child];
+				copy[child] = existing != null ? pushTail(level - BITS, existing, leaf) : newPath(level - BITS, leaf);
+			}
+			return copy;
+		}
+
+		private static Object[] newPath(int level, Object[] leaf)
+		{
+			if (level == 0) {
+				return leaf;
+			}
+			Object[] node = new Object[WIDTH];
+			node[0] = newPath(level - BITS, leaf);
+			return node;
+		}
+
+		/**
+		 * Een vector met de eerste count elementen.
+		 */
+		private Vector prefix(int count)
+		{
+			Vector prefix = EMPTY;
+			// Hele bladen kunnen gedeeld worden, dus alleen het laatste deel wordt element voor element toegevoegd.
+			int start = 0;
+			while (start + WIDTH <= count && start + WIDTH <= tailOffset()) {
+				prefix = prefix.addLeaf(leafFor(start));
+				start += WIDTH;
+			}
+			for (int i = start; i < count; i++) {
+				prefix = prefix.add(get(i));
+			}
+			return prefix;
+		}
+
+		/**
+		 * Voeg een vol blad toe aan een vector waarvan de grootte een veelvoud van 32 is.
+		 */
+		private Vector addLeaf(Object[] leaf)
+		{
+			if (size == 0) {
+				return new Vector(WIDTH, BITS, root, leaf);
+			}
+			// De huidige (volle) tail gaat de boom in, en het nieuwe blad wordt de tail.
+			Vector full = new Vector(size, shift, root, tail);
+			Vector pushed = full.add(null);
+			return new Vector(size + WIDTH, pushed.shift, pushed.root, leaf);
+		}
+
+		private Object[] toArray()
+		{
+			Object[] elements = new Object[size];
+			for (int start = 0; start < size; start += WIDTH) {
+				System.arraycopy(leafFor(start), 0, elements, start, Math.min(WIDTH, size - start));
+			}
+			return elements;
+		}
+
+		private int indexOf(Object o)
+		{
+			for (int start = 0; start < size; start += WIDTH) {
+				Object[] leaf = leafFor(start);
+				int end = Math.min(WIDTH, size - start);
+				for (int i = 0; i < end; i++) {
+					if (Objects.equals(o, leaf[i])) {
+						return start + i;
+					}
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Een immutable view op 1 versie van de list.
+	 */
+	private static final class Snapshot<E> extends AbstractList<E> implements RandomAccess
+	{
+		private final Vector vector;
+
+		private Snapshot(Vector vector)
+		{
+			this.vector = vector;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public E get(int index)
+		{
+			Objects.checkIndex(index, vector.size);
+			return (E) vector.get(index);
+		}
+
+		@Override
+		public int size()
+		{
+			return vector.size;
+		}
+
+		@Override
+		public int indexOf(Object o)
+		{
+			return vector.indexOf(o);
+		}
+
+		@Override
+		public Iterator<E> iterator()
+		{
+			return new SnapshotIterator<>(vector, 0);
+		}
+	}
+
+	/**
+	 * Doorloopt 1 versie van de list, blad voor blad, zodat niet voor elk element door de boom gezocht hoeft te worden.
+	 */
+	private static final class SnapshotIterator<E> implements ListIterator<E>
+	{
+		private final Vector vector;
+		private int cursor;
+		private Object[] leaf;
+		private int leafStart = -1;
+
+		private SnapshotIterator(Vector vector, int cursor)
+		{
+			this.vector = vector;
+			this.cursor = cursor;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return cursor < vector.size;
+		}
+
+		@Override
+		public E next()
+		{
+			if (cursor >= vector.size) {
+				throw new NoSuchElementException();
+			}
+			return elementAt(cursor++);
+		}
+
+		@Override
+		public boolean hasPrevious()
+		{
+			return cursor > 0;
+		}
+
+		@Override
+		public E previous()
+		{
+			if (cursor <= 0) {
+				throw new NoSuchElementException();
+			}
+			return elementAt(--cursor);
+		}
+
+		@Override
+		public int nextIndex()
+		{
+			return cursor;
+		}
+
+		@Override
+		public int previousIndex()
+		{
+			return cursor - 1;
+		}
+
+		@SuppressWarnings("unchecked")
+		private E elementAt(int index)
+		{
+			int start = index & ~Vector.MASK;
+			if (start != leafStart) {
+				leaf = vector.leafFor(index);
+				leafStart = start;
+			}
+			return (E) leaf[index & Vector.MASK];
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("A snapshot iterator cannot modify the list");
+		}
+
+		@Override
+		public void set(E e)
+		{
+			throw new UnsupportedOperationException("A snapshot iterator cannot modify the list");
+		}
+
+		@Override
+		public void add(E e)
+		{
+			throw new UnsupportedOperationException("A snapshot iterator cannot modify the list");
+		}
+	}
+}
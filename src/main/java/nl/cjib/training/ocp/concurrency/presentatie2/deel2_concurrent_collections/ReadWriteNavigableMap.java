@@ -0,0 +1,728 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Een thread-safe {@link NavigableMap} wrapper met een {@link ReadWriteLock}, als vervanging van
+ * {@link Collections#synchronizedNavigableMap(NavigableMap)}.
+ * <p>
+ * Bij de synchronizedNavigableMap wacht ook een lezer op alle andere lezers, terwijl lezen een {@link TreeMap}
+ * niet verandert. Hier delen lezers de read lock, en alleen schrijvers krijgen de map voor zich alleen.
+ * Dat loont als er veel meer gelezen dan geschreven wordt.
+ * <p>
+ * De lock is een {@link ReentrantReadWriteLock}, of met {@link #withStampedLock(NavigableMap)}
+ * de read/write view van een {@link StampedLock}. Die is goedkoper, maar niet reentrant: de functies die je meegeeft
+ * aan compute, merge enzovoort mogen deze map dan niet zelf gebruiken.
+ * <p>
+ * Views (subMap, headMap, descendingMap, navigableKeySet, ...) delen de lock met deze map.
+ * Anders dan bij de synchronized wrappers hoef je tijdens het itereren niet zelf te locken: een iterator doorloopt
+ * een kopie die onder de read lock gemaakt is. {@link Iterator#remove()} werkt via de map.
+ */
+public class ReadWriteNavigableMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V>
+{
+	private final NavigableMap<K, V> delegate;
+	private final Lock readLock;
+	private final Lock writeLock;
+	private final ReadWriteLock lock;
+
+	/**
+	 * Wrap de map met een {@link ReentrantReadWriteLock}. De map zelf mag daarna niet meer direct gebruikt worden.
+	 */
+	public ReadWriteNavigableMap(NavigableMap<K, V> delegate)
+	{
+		this(delegate, new ReentrantReadWriteLock());
+	}
+
+	public ReadWriteNavigableMap(NavigableMap<K, V> delegate, ReadWriteLock lock)
+	{
+		this.delegate = delegate;
+		this.lock = lock;
+		this.readLock = lock.readLock();
+		this.writeLock = lock.writeLock();
+	}
+
+	/**
+	 * Wrap de map met een {@link StampedLock}. Deze lock is niet reentrant.
+	 */
+	public static <K, V> ReadWriteNavigableMap<K, V> withStampedLock(NavigableMap<K, V> delegate)
+	{
+		return new ReadWriteNavigableMap<>(delegate, new StampedLock().asReadWriteLock());
+	}
+
+	private <T> T read(Supplier<T> action)
+	{
+		readLock.lock();
+		try {
+			return action.get();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	private <T> T write(Supplier<T> action)
+	{
+		writeLock.lock();
+		try {
+			return action.get();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Een view op een deel van de map, met dezelfde lock.
+	 */
+	private ReadWriteNavigableMap<K, V> view(NavigableMap<K, V> view)
+	{
+		return new ReadWriteNavigableMap<>(view, lock);
+	}
+
+	@Override
+	public int size()
+	{
+		return read(delegate::size);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return read(delegate::isEmpty);
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return read(() -> delegate.containsKey(key));
+	}
+
+	@Override
+	public boolean containsValue(Object value)
+	{
+		return read(() -> delegate.containsValue(value));
+	}
+
+	@Override
+	public V get(Object key)
+	{
+		return read(() -> delegate.get(key));
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue)
+	{
+		return read(() -> delegate.getOrDefault(key, defaultValue));
+	}
+
+	@Override
+	public V put(K key, V value)
+	{
+		return write(() -> delegate.put(key, value));
+	}
+
+	@Override
+	public V remove(Object key)
+	{
+		return write(() -> delegate.remove(key));
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m)
+	{
+		write(() -> {
+			delegate.putAll(m);
+			return null;
+		});
+	}
+
+	@Override
+	public void clear()
+	{
+		write(() -> {
+			delegate.clear();
+			return null;
+		});
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value)
+	{
+		return write(() -> delegate.putIfAbsent(key, value));
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		return write(() -> delegate.remove(key, value));
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue)
+	{
+		return write(() -> delegate.replace(key, oldValue, newValue));
+	}
+
+	@Override
+	public V replace(K key, V value)
+	{
+		return write(() -> delegate.replace(key, value));
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction)
+	{
+		return write(() -> delegate.computeIfAbsent(key, mappingFunction));
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+	{
+		return write(() -> delegate.computeIfPresent(key, remappingFunction));
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+	{
+		return write(() -> delegate.compute(key, remappingFunction));
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+	{
+		return write(() -> delegate.merge(key, value, remappingFunction));
+	}
+
+	@Override
+	public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function)
+	{
+		write(() -> {
+			delegate.replaceAll(function);
+			return null;
+		});
+	}
+
+	/**
+	 * De actie wordt uitgevoerd op een kopie, buiten de lock.
+	 */
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action)
+	{
+		for (Entry<K, V> entry : copyEntries()) {
+			action.accept(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public Set<K> keySet()
+	{
+		return navigableKeySet();
+	}
+
+	@Override
+	public Collection<V> values()
+	{
+		return new Values();
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet()
+	{
+		return new EntrySet();
+	}
+
+	@Override
+	public Comparator<? super K> comparator()
+	{
+		return delegate.comparator();
+	}
+
+	@Override
+	public K firstKey()
+	{
+		return read(delegate::firstKey);
+	}
+
+	@Override
+	public K lastKey()
+	{
+		return read(delegate::lastKey);
+	}
+
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, K toKey)
+	{
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public NavigableMap<K, V> headMap(K toKey)
+	{
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey)
+	{
+		return tailMap(fromKey, true);
+	}
+
+	@Override
+	public Entry<K, V> lowerEntry(K key)
+	{
+		return read(() -> immutable(delegate.lowerEntry(key)));
+	}
+
+	@Override
+	public K lowerKey(K key)
+	{
+		return read(() -> delegate.lowerKey(key));
+	}
+
+	@Override
+	public Entry<K, V> floorEntry(K key)
+	{
+		return read(() -> immutable(delegate.floorEntry(key)));
+	}
+
+	@Override
+	public K floorKey(K key)
+	{
+		return read(() -> delegate.floorKey(key));
+	}
+
+	@Override
+	public Entry<K, V> ceilingEntry(K key)
+	{
+		return read(() -> immutable(delegate.ceilingEntry(key)));
+	}
+
+	@Override
+	public K ceilingKey(K key)
+	{
+		return read(() -> delegate.ceilingKey(key));
+	}
+
+	@Override
+	public Entry<K, V> higherEntry(K key)
+	{
+		return read(() -> immutable(delegate.higherEntry(key)));
+	}
+
+	@Override
+	public K higherKey(K key)
+	{
+		return read(() -> delegate.higherKey(key));
+	}
+
+	@Override
+	public Entry<K, V> firstEntry()
+	{
+		return read(() -> immutable(delegate.firstEntry()));
+	}
+
+	@Override
+	public Entry<K, V> lastEntry()
+	{
+		return read(() -> immutable(delegate.lastEntry()));
+	}
+
+	@Override
+	public Entry<K, V> pollFirstEntry()
+	{
+		return write(() -> immutable(delegate.pollFirstEntry()));
+	}
+
+	@Override
+	public Entry<K, V> pollLastEntry()
+	{
+		return write(() -> immutable(delegate.pollLastEntry()));
+	}
+
+	@Override
+	public NavigableMap<K, V> descendingMap()
+	{
+		return view(delegate.descendingMap());
+	}
+
+	@Override
+	public NavigableSet<K> navigableKeySet()
+	{
+		return new KeySet<>(this);
+	}
+
+	@Override
+	public NavigableSet<K> descendingKeySet()
+	{
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive)
+	{
+		return view(delegate.subMap(fromKey, fromInclusive, toKey, toInclusive));
+	}
+
+	@Override
+	public NavigableMap<K, V> headMap(K toKey, boolean inclusive)
+	{
+		return view(delegate.headMap(toKey, inclusive));
+	}
+
+	@Override
+	public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive)
+	{
+		return view(delegate.tailMap(fromKey, inclusive));
+	}
+
+	/**
+	 * Verwijder de key en geef aan of hij er was, ook als de value null was.
+	 */
+	private boolean removeKey(Object key)
+	{
+		return write(() -> {
+			if (!delegate.containsKey(key)) {
+				return false;
+			}
+			delegate.remove(key);
+			return true;
+		});
+	}
+
+	private List<Entry<K, V>> copyEntries()
+	{
+		return read(() -> {
+			List<Entry<K, V>> copy = new ArrayList<>(delegate.size());
+			for (Entry<K, V> entry : delegate.entrySet()) {
+				copy.add(new SimpleImmutableEntry<>(entry));
+			}
+			return copy;
+		});
+	}
+
+	private List<K> copyKeys()
+	{
+		return read(() -> new ArrayList<>(delegate.keySet()));
+	}
+
+	private static <K, V> Entry<K, V> immutable(Entry<K, V> entry)
+	{
+		return entry == null ? null : new SimpleImmutableEntry<>(entry);
+	}
+
+	/**
+	 * Een iterator over een kopie, waarvan remove via de map gaat.
+	 */
+	private abstract class CopyIterator<T> implements Iterator<T>
+	{
+		private final Iterator<Entry<K, V>> entries = copyEntries().iterator();
+		private Entry<K, V> last;
+
+		@Override
+		public boolean hasNext()
+		{
+			return entries.hasNext();
+		}
+
+		@Override
+		public T next()
+		{
+			last = entries.next();
+			return element(last);
+		}
+
+		abstract T element(Entry<K, V> entry);
+
+		@Override
+		public void remove()
+		{
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			ReadWriteNavigableMap.this.remove(last.getKey(), last.getValue());
+			last = null;
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<K, V>>
+	{
+		@Override
+		public Iterator<Entry<K, V>> iterator()
+		{
+			return new CopyIterator<Entry<K, V>>()
+			{
+				@Override
+				Entry<K, V> element(Entry<K, V> entry)
+				{
+					return entry;
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return ReadWriteNavigableMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return read(() -> delegate.entrySet().contains(o));
+		}
+
+		@Override
+		public boolean remove(Object o)
+		{
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> entry = (Entry<?, ?>) o;
+			return ReadWriteNavigableMap.this.remove(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public void clear()
+		{
+			ReadWriteNavigableMap.this.clear();
+		}
+	}
+
+	private final class Values extends AbstractCollection<V>
+	{
+		@Override
+		public Iterator<V> iterator()
+		{
+			return new CopyIterator<V>()
+			{
+				@Override
+				V element(Entry<K, V> entry)
+				{
+					return entry.getValue();
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return ReadWriteNavigableMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return containsValue(o);
+		}
+
+		@Override
+		public void clear()
+		{
+			ReadWriteNavigableMap.this.clear();
+		}
+	}
+
+	/**
+	 * De keys als {@link NavigableSet}. Alle operaties gaan via de (thread-safe) map.
+	 */
+	private static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K>
+	{
+		private final ReadWriteNavigableMap<K, ?> map;
+
+		private KeySet(ReadWriteNavigableMap<K, ?> map)
+		{
+			this.map = map;
+		}
+
+		@Override
+		public Iterator<K> iterator()
+		{
+			Iterator<K> keys = map.copyKeys().iterator();
+			return new Iterator<K>()
+			{
+				private K last;
+				private boolean canRemove;
+
+				@Override
+				public boolean hasNext()
+				{
+					return keys.hasNext();
+				}
+
+				@Override
+				public K next()
+				{
+					last = keys.next();
+					canRemove = true;
+					return last;
+				}
+
+				@Override
+				public void remove()
+				{
+					if (!canRemove) {
+						throw new IllegalStateException();
+					}
+					map.removeKey(last);
+					canRemove = false;
+				}
+			};
+		}
+
+		@Override
+		public Iterator<K> descendingIterator()
+		{
+			return descendingSet().iterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return map.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			return map.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o)
+		{
+			return map.removeKey(o);
+		}
+
+		@Override
+		public void clear()
+		{
+			map.clear();
+		}
+
+		@Override
+		public K lower(K k)
+		{
+			return map.lowerKey(k);
+		}
+
+		@Override
+		public K floor(K k)
+		{
+			return map.floorKey(k);
+		}
+
+		@Override
+		public K ceiling(K k)
+		{
+			return map.ceilingKey(k);
+		}
+
+		@Override
+		public K higher(K k)
+		{
+			return map.higherKey(k);
+		}
+
+		@Override
+		public K pollFirst()
+		{
+			Entry<K, ?> entry = map.pollFirstEntry();
+			return entry == null ? null : entry.getKey();
+		}
+
+		@Override
+		public K pollLast()
+		{
+			Entry<K, ?> entry = map.pollLastEntry();
+			return entry == null ? null : entry.getKey();
+		}
+
+		@Override
+		public Comparator<? super K> comparator()
+		{
+			return map.comparator();
+		}
+
+		@Override
+		public K first()
+		{
+			return map.firstKey();
+		}
+
+		@Override
+		public K last()
+		{
+			return map.lastKey();
+		}
+
+		@Override
+		public NavigableSet<K> descendingSet()
+		{
+			return map.descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive)
+		{
+			return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> headSet(K toElement, boolean inclusive)
+		{
+			return map.headMap(toElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<K> tailSet(K fromElement, boolean inclusive)
+		{
+			return map.tailMap(fromElement, inclusive).navigableKeySet();
+		}
+
+		@Override
+		public SortedSet<K> subSet(K fromElement, K toElement)
+		{
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		@Override
+		public SortedSet<K> headSet(K toElement)
+		{
+			return headSet(toElement, false);
+		}
+
+		@Override
+		public SortedSet<K> tailSet(K fromElement)
+		{
+			return tailSet(fromElement, true);
+		}
+	}
+}
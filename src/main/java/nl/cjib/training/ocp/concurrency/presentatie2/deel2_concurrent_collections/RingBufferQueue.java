@@ -0,0 +1,483 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Een begrensde, lock-free {@link BlockingQueue} voor meerdere producers en meerdere consumers, op basis van een array.
+ * <p>
+ * Een {@link LinkedBlockingQueue} maakt voor elk element een nieuwe node aan (en dus garbage),
+ * en een {@link ArrayBlockingQueue} gebruikt 1 lock voor zowel de producers als de consumers.
+ * Deze queue gebruikt een vaste array (een ring buffer) waarvan de grootte een macht van 2 is,
+ * zodat een positie met een bitmask in plaats van een deling omgerekend kan worden naar een index.
+ * <p>
+ * Elke plek in de ring heeft een eigen volgnummer (sequence), dat aangeeft of de plek vrij is voor een producer
+ * of gevuld is voor een consumer. Een producer claimt een plek met 1 compareAndSet op de tail, schrijft het element
+ * en zet dan het volgnummer. Een consumer doet hetzelfde met de head. Producers en consumers hebben dus
+ * elk hun eigen teller, en die tellers zijn opgevuld (padding) zodat ze niet in dezelfde cache line liggen.
+ * <p>
+ * offer en poll blokkeren nooit. Voor put, take en de varianten met een timeout kan je kiezen hoe er gewacht wordt,
+ * zie {@link WaitStrategy}.
+ * <p>
+ * Met {@link #drain(Consumer, int)} en {@link #drainTo(Collection, int)} claimt een consumer meerdere elementen
+ * met 1 compareAndSet, wat bij batch verwerking veel scheelt.
+ * <p>
+ * De iterator is een momentopname van de elementen die op dat moment in de queue staan, en ondersteunt geen remove.
+ * Ook {@link #remove(Object)} wordt niet ondersteund, omdat een element midden uit de ring niet lock-free te verwijderen is.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+	/**
+	 * Hoe put, take en de varianten met een timeout wachten als de queue vol of leeg is.
+	 */
+	public enum WaitStrategy
+	{
+		/**
+		 * Blijf actief proberen. De laagste latency, maar kost een volle core per wachtende thread.
+		 */
+		SPIN,
+		/**
+		 * Probeer even actief, en geef daarna steeds de processor aan een andere thread met {@link Thread#yield()}.
+		 */
+		YIELD,
+		/**
+		 * Probeer even actief, dan met yield, en park daarna de thread tot er iets verandert.
+		 * Kost geen CPU tijdens het wachten, maar het wakker worden duurt langer.
+		 * Elke offer en poll doet in deze mode ook een volledige memory fence, om te zien of er een thread
+		 * geparkeerd is die gewekt moet worden.
+		 */
+		PARK
+	}
+
+	private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle VALUE;
+
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(CounterValue.class, "value", long.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static final int SPINS = 100;
+	private static final int YIELDS = 100;
+
+	private final int capacity;
+	private final int mask;
+	private final Object[] buffer;
+	private final long[] sequences;
+	private final WaitStrategy waitStrategy;
+
+	// Volgende positie om te schrijven (producers) en om te lezen (consumers).
+	private final Counter tail = new Counter();
+	private final Counter head = new Counter();
+
+	// Alleen gebruikt bij WaitStrategy.PARK.
+	private final Queue<Thread> notEmptyWaiters = new ConcurrentLinkedQueue<>();
+	private final Queue<Thread> notFullWaiters = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Een queue die met {@link WaitStrategy#PARK} wacht.
+	 *
+	 * @param capacity wordt naar boven afgerond op een macht van 2, met een minimum van 2.
+	 */
+	public RingBufferQueue(int capacity)
+	{
+		this(capacity, WaitStrategy.PARK);
+	}
+
+	/**
+	 * @param capacity wordt naar boven afgerond op een macht van 2, met een minimum van 2.
+	 */
+	public RingBufferQueue(int capacity, WaitStrategy waitStrategy)
+	{
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30, but was " + capacity);
+		}
+		// Bij een capacity van 1 zijn de volgnummers van een lege en een volle plek gelijk, vandaar minimaal 2.
+		this.capacity = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+		this.mask = this.capacity - 1;
+		this.buffer = new Object[this.capacity];
+		this.sequences = new long[this.capacity];
+		for (int i = 0; i < this.capacity; i++) {
+			sequences[i] = i;
+		}
+		this.waitStrategy = Objects.requireNonNull(waitStrategy);
+	}
+
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public boolean offer(E e)
+	{
+		Objects.requireNonNull(e);
+		while (true) {
+			long position = (long) VALUE.getVolatile(tail);
+			int index = (int) position & mask;
+			long sequence = (long) SEQUENCES.getAcquire(sequences, index);
+			long difference = sequence - position;
+			if (difference == 0) {
+				if (VALUE.compareAndSet(tail, position, position + 1)) {
+					buffer[index] = e;
+					SEQUENCES.setRelease(sequences, index, position + 1);
+					signal(notEmptyWaiters);
+					return true;
+				}
+			}
+			else if (difference < 0) {
+				// De consumer van de vorige ronde heeft deze plek nog niet vrijgegeven: de queue is vol.
+				return false;
+			}
+			// Anders was een andere producer ons voor, probeer de volgende positie.
+		}
+	}
+
+	@Override
+	public E poll()
+	{
+		while (true) {
+			long position = (long) VALUE.getVolatile(head);
+			int index = (int) position & mask;
+			long sequence = (long) SEQUENCES.getAcquire(sequences, index);
+			long difference = sequence - (position + 1);
+			if (difference == 0) {
+				if (VALUE.compareAndSet(head, position, position + 1)) {
+					return take(index, position);
+				}
+			}
+			else if (difference < 0) {
+				// Er is op deze plek nog niets geschreven: de queue is leeg.
+				return null;
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek()
+	{
+		while (true) {
+			long position = (long) VALUE.getVolatile(head);
+			int index = (int) position & mask;
+			long sequence = (long) SEQUENCES.getAcquire(sequences, index);
+			if (sequence - (position + 1) < 0) {
+				return null;
+			}
+			E e = (E) buffer[index];
+			// Alleen als de head niet veranderd is, hoort het gelezen element nog bij deze positie.
+			if (e != null && (long) VALUE.getVolatile(head) == position) {
+				return e;
+			}
+		}
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException
+	{
+		Objects.requireNonNull(e);
+		for (int attempt = 0; !offer(e); attempt++) {
+			idle(attempt, notFullWaiters, Long.MAX_VALUE);
+		}
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		Objects.requireNonNull(e);
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (int attempt = 0; !offer(e); attempt++) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			idle(attempt, notFullWaiters, remaining);
+		}
+		return true;
+	}
+
+	@Override
+	public E take() throws InterruptedException
+	{
+		E e;
+		for (int attempt = 0; (e = poll()) == null; attempt++) {
+			idle(attempt, notEmptyWaiters, Long.MAX_VALUE);
+		}
+		return e;
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E e;
+		for (int attempt = 0; (e = poll()) == null; attempt++) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+			idle(attempt, notEmptyWaiters, remaining);
+		}
+		return e;
+	}
+
+	/**
+	 * Haal in 1 keer maximaal limit elementen uit de queue en geef ze aan de consumer.
+	 * Alle beschikbare elementen tot de limit worden met 1 compareAndSet op de head geclaimd.
+	 * <p>
+	 * Als de consumer een exception gooit, worden de geclaimde elementen die hij nog niet gekregen had weggegooid,
+	 * zodat hun plekken weer vrij komen voor de producers. Net als bij {@link BlockingQueue#drainTo(Collection)}
+	 * staan die elementen dan niet meer in de queue.
+	 *
+	 * @return het aantal elementen dat verwerkt is.
+	 */
+	public int drain(Consumer<? super E> consumer, int limit)
+	{
+		Objects.requireNonNull(consumer);
+		while (limit > 0) {
+			long position = (long) VALUE.getVolatile(head);
+			// Tel hoeveel opeenvolgende plekken vanaf de head gevuld zijn.
+			int available = 0;
+			while (available < limit) {
+				int index = (int) (position + available) & mask;
+				long sequence = (long) SEQUENCES.getAcquire(sequences, index);
+				if (sequence != position + available + 1) {
+					break;
+				}
+				available++;
+			}
+			if (available == 0) {
+				return 0;
+			}
+			// Zolang de head niet veranderd is, zijn deze plekken door niemand anders geclaimd,
+			// en kunnen de producers ze ook niet overschrijven.
+			if (VALUE.compareAndSet(head, position, position + available)) {
+				int taken = 0;
+				try {
+					while (taken < available) {
+						long slot = position + taken++;
+						consumer.accept(take((int) slot & mask, slot));
+					}
+				}
+				finally {
+					// Alleen na een exception: de rest van de plekken is geclaimd, dus niemand anders geeft ze vrij.
+					while (taken < available) {
+						long slot = position + taken++;
+						take((int) slot & mask, slot);
+					}
+				}
+				return available;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c)
+	{
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements)
+	{
+		Objects.requireNonNull(c);
+		if (c == this) {
+			throw new IllegalArgumentException("Cannot drain a queue into itself");
+		}
+		int total = 0;
+		while (total < maxElements) {
+			int drained = drain(c::add, Math.min(maxElements - total, capacity));
+			if (drained == 0) {
+				break;
+			}
+			total += drained;
+		}
+		return total;
+	}
+
+	@Override
+	public int size()
+	{
+		// Lees de head voor en na de tail, zodat de twee waarden bij elkaar passen.
+		while (true) {
+			long before = (long) VALUE.getVolatile(head);
+			long currentTail = (long) VALUE.getVolatile(tail);
+			long after = (long) VALUE.getVolatile(head);
+			if (before == after) {
+				return (int) Math.max(0L, Math.min(capacity, currentTail - after));
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return (long) VALUE.getVolatile(tail) == (long) VALUE.getVolatile(head);
+	}
+
+	@Override
+	public int remainingCapacity()
+	{
+		return capacity - size();
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		throw new UnsupportedOperationException("Elements cannot be removed from the middle of a ring buffer");
+	}
+
+	/**
+	 * Een momentopname van de elementen die op dit moment in de queue staan, van head naar tail.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator()
+	{
+		List<E> snapshot = new ArrayList<>();
+		long start = (long) VALUE.getVolatile(head);
+		long end = (long) VALUE.getVolatile(tail);
+		for (long position = start; position < end && position < start + capacity; position++) {
+			int index = (int) position & mask;
+			if ((long) SEQUENCES.getAcquire(sequences, index) == position + 1) {
+				E e = (E) buffer[index];
+				if (e != null) {
+					snapshot.add(e);
+				}
+			}
+		}
+		Iterator<E> iterator = snapshot.iterator();
+		return new Iterator<E>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next()
+			{
+				return iterator.next();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private E take(int index, long position)
+	{
+		E e = (E) buffer[index];
+		buffer[index] = null;
+		// Geef de plek vrij voor de producer van de volgende ronde.
+		SEQUENCES.setRelease(sequences, index, position + capacity);
+		signal(notFullWaiters);
+		return e;
+	}
+
+	private void idle(int attempt, Queue<Thread> waiters, long remainingNanos) throws InterruptedException
+	{
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		switch (waitStrategy) {
+			case SPIN:
+				Thread.onSpinWait();
+				break;
+			case YIELD:
+				if (attempt < SPINS) {
+					Thread.onSpinWait();
+				}
+				else {
+					Thread.yield();
+				}
+				break;
+			case PARK:
+				if (attempt < SPINS) {
+					Thread.onSpinWait();
+				}
+				else if (attempt < SPINS + YIELDS) {
+					Thread.yield();
+				}
+				else {
+					Thread current = Thread.currentThread();
+					waiters.add(current);
+					try {
+						// Kijk na het aanmelden nog 1 keer: een element of plek van net daarvoor geeft geen signaal meer.
+						if (!isReady(waiters)) {
+							LockSupport.parkNanos(this, remainingNanos);
+						}
+					}
+					finally {
+						waiters.remove(current);
+					}
+				}
+				break;
+			default:
+				throw new IllegalStateException("Unknown wait strategy: " + waitStrategy);
+		}
+	}
+
+	/**
+	 * Of de volgende offer (bij de notFullWaiters) of poll (bij de notEmptyWaiters) kan slagen.
+	 */
+	private boolean isReady(Queue<Thread> waiters)
+	{
+		Counter counter = waiters == notFullWaiters ? tail : head;
+		long position = (long) VALUE.getVolatile(counter);
+		long sequence = (long) SEQUENCES.getAcquire(sequences, (int) position & mask);
+		return waiters == notFullWaiters ? sequence - position >= 0 : sequence - (position + 1) >= 0;
+	}
+
+	/**
+	 * Wekt 1 wachtende thread. Die wordt uit de wachtrij gehaald, zodat het volgende signaal een andere thread wekt.
+	 */
+	private void signal(Queue<Thread> waiters)
+	{
+		if (waitStrategy == WaitStrategy.PARK) {
+			// Samen met het aanmelden in idle: of de wachter ziet de nieuwe sequence, of wij zien de wachter.
+			VarHandle.fullFence();
+			if (!waiters.isEmpty()) {
+				Thread waiter = waiters.poll();
+				if (waiter != null) {
+					LockSupport.unpark(waiter);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static class CounterLeftPadding
+	{
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	private static class CounterValue extends CounterLeftPadding
+	{
+		volatile long value;
+	}
+
+	@SuppressWarnings("unused")
+	private static final class Counter extends CounterValue
+	{
+		long p11, p12, p13, p14, p15, p16, p17;
+	}
+}
@@ -0,0 +1,396 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Een thread-safe {@link Map} die de entries verdeelt over meerdere gewone maps (stripes), elk met een eigen lock.
+ * <p>
+ * {@link Collections#synchronizedMap(Map)} laat elke operatie via 1 monitor lopen, dus threads wachten ook op elkaar
+ * als ze met totaal verschillende keys bezig zijn. Hier bepaalt de hash van de key in welke stripe een entry staat,
+ * en alleen threads die dezelfde stripe nodig hebben wachten op elkaar.
+ * <p>
+ * Dit is bedoeld voor bestaande code die een synchronizedMap gebruikt en niet zomaar kan overstappen op een
+ * {@link ConcurrentHashMap}, bijvoorbeeld omdat er null values of een eigen Map implementatie gebruikt worden.
+ * Net als bij de synchronizedMap zijn putIfAbsent, computeIfAbsent, merge enzovoort atomair.
+ * <p>
+ * Operaties over de hele map (size, equals, iterators) gaan stripe voor stripe. Het resultaat is dus geen momentopname
+ * van de hele map, maar per stripe wel consistent. Anders dan bij de synchronizedMap hoef je tijdens het itereren
+ * niet zelf te locken: de iterator doorloopt per stripe een kopie, en {@link Iterator#remove()} werkt via de map.
+ * De entries van de iterator zijn wel onveranderbaar: {@link Entry#setValue(Object)} gooit een
+ * {@link UnsupportedOperationException}. Gebruik {@link #replaceAll(BiFunction)} of {@link #put(Object, Object)}.
+ */
+public class StripedMap<K, V> extends AbstractMap<K, V>
+{
+	private final Map<K, V>[] stripes;
+	private final Object[] locks;
+	private final int mask;
+	private transient Set<Entry<K, V>> entrySet;
+
+	/**
+	 * Een map met {@link HashMap}s als stripes, 4 stripes per processor.
+	 */
+	public StripedMap()
+	{
+		this(4 * Runtime.getRuntime().availableProcessors(), HashMap::new);
+	}
+
+	/**
+	 * @param stripeCount wordt naar boven afgerond op een macht van 2.
+	 * @param mapFactory  maakt de (lege, niet thread-safe) map voor elke stripe.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public StripedMap(int stripeCount, Supplier<? extends Map<K, V>> mapFactory)
+	{
+		if (stripeCount < 1 || stripeCount > (1 << 16)) {
+			throw new IllegalArgumentException("stripeCount must be between 1 and 2^16, but was " + stripeCount);
+		}
+		int count = stripeCount == 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+		this.stripes = new Map[count];
+		this.locks = new Object[count];
+		this.mask = count - 1;
+		for (int i = 0; i < count; i++) {
+			stripes[i] = mapFactory.get();
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Een striped map met dezelfde entries als de gegeven map, als vervanging van
+	 * {@code Collections.synchronizedMap(source)}. De source zelf wordt daarna niet meer gebruikt.
+	 */
+	public static <K, V> StripedMap<K, V> copyOf(Map<? extends K, ? extends V> source)
+	{
+		StripedMap<K, V> map = new StripedMap<>();
+		map.putAll(source);
+		return map;
+	}
+
+	private int stripeFor(Object key)
+	{
+		int h = key == null ? 0 : key.hashCode();
+		// Meng de hoge bits erdoor, zodat ook keys die alleen in hun hoge bits verschillen verspreid worden.
+		h ^= (h >>> 16);
+		h *= 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	@Override
+	public V get(Object key)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].get(key);
+		}
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].getOrDefault(key, defaultValue);
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].containsKey(key);
+		}
+	}
+
+	@Override
+	public V put(K key, V value)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].put(key, value);
+		}
+	}
+
+	@Override
+	public V remove(Object key)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].remove(key);
+		}
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].putIfAbsent(key, value);
+		}
+	}
+
+	@Override
+	public boolean remove(Object key, Object value)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].remove(key, value);
+		}
+	}
+
+	@Override
+	public boolean replace(K key, V oldValue, V newValue)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].replace(key, oldValue, newValue);
+		}
+	}
+
+	@Override
+	public V replace(K key, V value)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].replace(key, value);
+		}
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].computeIfAbsent(key, mappingFunction);
+		}
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].computeIfPresent(key, remappingFunction);
+		}
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].compute(key, remappingFunction);
+		}
+	}
+
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+	{
+		int stripe = stripeFor(key);
+		synchronized (locks[stripe]) {
+			return stripes[stripe].merge(key, value, remappingFunction);
+		}
+	}
+
+	@Override
+	public void putAll(Map<? extends K, ? extends V> m)
+	{
+		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		long size = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				size += stripes[i].size();
+			}
+		}
+		return (int) Math.min(Integer.MAX_VALUE, size);
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				if (!stripes[i].isEmpty()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsValue(Object value)
+	{
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				if (stripes[i].containsValue(value)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void clear()
+	{
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				stripes[i].clear();
+			}
+		}
+	}
+
+	/**
+	 * Vervangt de values stripe voor stripe, onder de lock van die stripe.
+	 * De functie mag de map dus niet zelf aanpassen.
+	 */
+	@Override
+	public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function)
+	{
+		Objects.requireNonNull(function);
+		for (int i = 0; i < stripes.length; i++) {
+			synchronized (locks[i]) {
+				stripes[i].replaceAll(function);
+			}
+		}
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super K, ? super V> action)
+	{
+		Objects.requireNonNull(action);
+		for (int i = 0; i < stripes.length; i++) {
+			// De actie wordt buiten de lock uitgevoerd, zodat die zelf de map kan gebruiken.
+			for (Entry<K, V> entry : copyStripe(i)) {
+				action.accept(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet()
+	{
+		Set<Entry<K, V>> es = entrySet;
+		if (es == null) {
+			es = new EntrySet();
+			entrySet = es;
+		}
+		return es;
+	}
+
+	private List<Entry<K, V>> copyStripe(int stripe)
+	{
+		synchronized (locks[stripe]) {
+			List<Entry<K, V>> copy = new ArrayList<>(stripes[stripe].size());
+			for (Entry<K, V> entry : stripes[stripe].entrySet()) {
+				copy.add(new SimpleImmutableEntry<>(entry));
+			}
+			return copy;
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<K, V>>
+	{
+		@Override
+		public Iterator<Entry<K, V>> iterator()
+		{
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return StripedMap.this.size();
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> entry = (Entry<?, ?>) o;
+			int stripe = stripeFor(entry.getKey());
+			synchronized (locks[stripe]) {
+				return stripes[stripe].entrySet().contains(entry);
+			}
+		}
+
+		@Override
+		public boolean remove(Object o)
+		{
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry<?, ?> entry = (Entry<?, ?>) o;
+			return StripedMap.this.remove(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public void clear()
+		{
+			StripedMap.this.clear();
+		}
+	}
+
+	/**
+	 * Doorloopt de stripes na elkaar, met per stripe een kopie die onder de lock van die stripe gemaakt is.
+	 */
+	private final class EntryIterator implements Iterator<Entry<K, V>>
+	{
+		private int nextStripe;
+		private Iterator<Entry<K, V>> current = Collections.emptyIterator();
+		private Entry<K, V> last;
+
+		@Override
+		public boolean hasNext()
+		{
+			while (!current.hasNext() && nextStripe < stripes.length) {
+				current = copyStripe(nextStripe++).iterator();
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		public Entry<K, V> next()
+		{
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = current.next();
+			return last;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			StripedMap.this.remove(last.getKey(), last.getValue());
+			last = null;
+		}
+	}
+}
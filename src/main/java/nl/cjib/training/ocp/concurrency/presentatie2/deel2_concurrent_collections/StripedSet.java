@@ -0,0 +1,87 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Een thread-safe {@link Set} met lock striping, als vervanging van {@link Collections#synchronizedSet(Set)}.
+ * <p>
+ * De elementen staan als keys in een {@link StripedMap}, dus alleen threads die dezelfde stripe nodig hebben
+ * wachten op elkaar. Voor het itereren geldt hetzelfde als bij de {@link StripedMap}:
+ * je hoeft niet zelf te locken, en elke stripe wordt als kopie doorlopen.
+ */
+public class StripedSet<E> extends AbstractSet<E>
+{
+	private final StripedMap<E, Boolean> map;
+
+	/**
+	 * Een set met 4 stripes per processor.
+	 */
+	public StripedSet()
+	{
+		this.map = new StripedMap<>();
+	}
+
+	/**
+	 * @param stripeCount wordt naar boven afgerond op een macht van 2.
+	 */
+	public StripedSet(int stripeCount)
+	{
+		this.map = new StripedMap<>(stripeCount, HashMap::new);
+	}
+
+	/**
+	 * Een striped set met dezelfde elementen als de gegeven collection.
+	 */
+	public StripedSet(Collection<? extends E> elements)
+	{
+		this();
+		addAll(elements);
+	}
+
+	@Override
+	public boolean add(E e)
+	{
+		return map.putIfAbsent(e, Boolean.TRUE) == null;
+	}
+
+	@Override
+	public boolean remove(Object o)
+	{
+		return map.remove(o) != null;
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return map.containsKey(o);
+	}
+
+	@Override
+	public int size()
+	{
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return map.isEmpty();
+	}
+
+	@Override
+	public void clear()
+	{
+		map.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return map.keySet().iterator();
+	}
+}
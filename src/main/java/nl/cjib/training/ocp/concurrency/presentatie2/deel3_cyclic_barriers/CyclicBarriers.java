@@ -9,6 +9,8 @@ import java.util.concurrent.TimeoutException;
 
 /**
  * Een {@link CyclicBarrier} kan worden gebruikt om threads met elkaar te synchroniseren.
+ * <p>
+ * Voor berekeningen in fases met een wisselend aantal threads, zie {@link StageEngine} en {@link StageEngineExample}.
  */
 public class CyclicBarriers
 {
@@ -0,0 +1,283 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel3_cyclic_barriers;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/**
+ * Een engine voor berekeningen in stappen (fases), waarbij alle workers na elke fase op elkaar wachten.
+ * <p>
+ * Een {@link java.util.concurrent.CyclicBarrier} heeft een vast aantal parties,
+ * en na een timeout is de barrier broken totdat iemand reset() aanroept.
+ * Deze engine is gebouwd op een {@link Phaser}, waarbij:
+ *  - workers zich op elk moment kunnen aanmelden ({@link #register()}) en afmelden;
+ *  - elke worker per fase een bijdrage meegeeft, die bij het trippen met een reducer samengevoegd wordt.
+ *    Alle workers krijgen het samengevoegde resultaat terug;
+ *  - elke fase een maximale duur heeft. Wordt die overschreden, dan wordt de hele run afgebroken.
+ *    De worker die de timeout merkt krijgt een {@link TimeoutException}, alle andere workers een
+ *    {@link BrokenBarrierException}, ook workers die pas later aankomen;
+ *  - per fase bijgehouden wordt hoeveel tijd er zat tussen de eerste en de laatste worker (de skew).
+ *    Zo zie je welke fases last hebben van een achterblijver.
+ * <p>
+ * De reducer wordt aangeroepen in de volgorde waarin de bijdragen binnenkomen,
+ * dus deze moet associatief en commutatief zijn (zoals optellen of het maximum nemen).
+ *
+ * @param <R> het type van de bijdragen en het resultaat per fase.
+ */
+public class StageEngine<R>
+{
+	// Het aantal fases waarvan de statistieken bewaard blijven.
+	private static final int MAX_HISTORY = 1024;
+	// De starttijd zolang er nog geen worker aangekomen is in de eerste fase.
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	private final BinaryOperator<R> reducer;
+	private final long phaseTimeoutNanos;
+
+	private final Map<Integer, Accumulator<R>> accumulators = new ConcurrentHashMap<>();
+	private final Map<Integer, PhaseStats<R>> completed = new ConcurrentHashMap<>();
+	private final Deque<PhaseStats<R>> history = new ConcurrentLinkedDeque<>();
+	private final AtomicLong phaseStartNanos = new AtomicLong(NOT_STARTED);
+
+	private final Phaser phaser = new Phaser()
+	{
+		/**
+		 * Wordt uitgevoerd door de laatste worker die aankomt, voordat de wachtende workers verder mogen.
+		 */
+		@Override
+		protected boolean onAdvance(int phase, int registeredParties)
+		{
+			Accumulator<R> accumulator = accumulators.remove(phase);
+			PhaseStats<R> stats = accumulator == null
+				? new PhaseStats<>(phase, 0, 0L, null)
+				: accumulator.complete(phase, reducer);
+			completed.put(phase, stats);
+			// Het resultaat van 2 fases terug kan niet meer opgehaald worden, want alle workers zijn daar al voorbij.
+			completed.remove(phase - 2);
+			history.addLast(stats);
+			if (history.size() > MAX_HISTORY) {
+				history.pollFirst();
+			}
+			phaseStartNanos.set(System.nanoTime());
+			return registeredParties == 0;
+		}
+	};
+
+	/**
+	 * @param reducer      voegt de bijdragen van de workers per fase samen.
+	 * @param phaseTimeout de maximale duur van een fase, gerekend vanaf het einde van de vorige fase.
+	 *                     De eerste fase begint pas als de eerste worker aankomt, zodat een engine die
+	 *                     van tevoren gebouwd is niet meteen een timeout geeft.
+	 */
+	public StageEngine(BinaryOperator<R> reducer, long phaseTimeout, TimeUnit unit)
+	{
+		this.reducer = reducer;
+		this.phaseTimeoutNanos = unit.toNanos(phaseTimeout);
+	}
+
+	/**
+	 * Meld een nieuwe worker aan. Deze doet mee vanaf de huidige fase.
+	 */
+	public Party register()
+	{
+		if (phaser.register() < 0) {
+			throw new IllegalStateException("The stage engine has been terminated");
+		}
+		return new Party();
+	}
+
+	/**
+	 * Breek de run af. Alle wachtende en later aankomende workers krijgen een {@link BrokenBarrierException}.
+	 */
+	public void abort()
+	{
+		phaser.forceTermination();
+	}
+
+	/**
+	 * Geeft aan of de run klaar is: afgebroken, of alle workers hebben zich afgemeld.
+	 */
+	public boolean isTerminated()
+	{
+		return phaser.isTerminated();
+	}
+
+	public int getPhase()
+	{
+		return phaser.getPhase();
+	}
+
+	/**
+	 * Geeft de statistieken van de laatst afgeronde fases, de oudste eerst.
+	 */
+	public List<PhaseStats<R>> getPhaseStats()
+	{
+		return new ArrayList<>(history);
+	}
+
+	/**
+	 * Een aangemelde worker. Een Party is bedoeld om door 1 thread gebruikt te worden.
+	 */
+	public class Party
+	{
+		private boolean deregistered;
+
+		private Party()
+		{
+		}
+
+		/**
+		 * Lever de bijdrage voor de huidige fase in en wacht tot alle workers klaar zijn.
+		 *
+		 * @return het samengevoegde resultaat van alle bijdragen in deze fase.
+		 * @throws TimeoutException       als de fase langer duurde dan de timeout. De run wordt dan afgebroken.
+		 * @throws BrokenBarrierException als de run afgebroken is.
+		 */
+		public R arriveAndAwait(R contribution) throws InterruptedException, TimeoutException, BrokenBarrierException
+		{
+			int phase = contribute(contribution);
+			phaser.arrive();
+
+			long remaining = phaseStartNanos.get() + phaseTimeoutNanos - System.nanoTime();
+			try {
+				if (phaser.awaitAdvanceInterruptibly(phase, Math.max(0L, remaining), TimeUnit.NANOSECONDS) < 0) {
+					throw new BrokenBarrierException();
+				}
+			}
+			catch (TimeoutException e) {
+				abort();
+				throw e;
+			}
+			PhaseStats<R> stats = completed.get(phase);
+			if (stats == null) {
+				throw new BrokenBarrierException();
+			}
+			return stats.getResult();
+		}
+
+		/**
+		 * Lever de laatste bijdrage in en meld deze worker af, zonder op de andere workers te wachten.
+		 */
+		public void arriveAndDeregister(R contribution) throws BrokenBarrierException
+		{
+			contribute(contribution);
+			deregistered = true;
+			phaser.arriveAndDeregister();
+		}
+
+		/**
+		 * Meld deze worker af zonder bijdrage voor de huidige fase.
+		 */
+		public void deregister()
+		{
+			if (!deregistered && !phaser.isTerminated()) {
+				deregistered = true;
+				phaser.arriveAndDeregister();
+			}
+		}
+
+		private int contribute(R contribution) throws BrokenBarrierException
+		{
+			if (deregistered) {
+				throw new IllegalStateException("This party has been deregistered");
+			}
+			// Deze worker is nog niet aangekomen, dus de fase kan nu niet veranderen.
+			int phase = phaser.getPhase();
+			if (phase < 0) {
+				throw new BrokenBarrierException();
+			}
+			if (phaseStartNanos.get() == NOT_STARTED) {
+				phaseStartNanos.compareAndSet(NOT_STARTED, System.nanoTime());
+			}
+			accumulators.computeIfAbsent(phase, p -> new Accumulator<>()).add(contribution);
+			return phase;
+		}
+	}
+
+	/**
+	 * Verzamelt de bijdragen en aankomsttijden van 1 fase.
+	 */
+	private static class Accumulator<R>
+	{
+		private final Queue<R> contributions = new ConcurrentLinkedQueue<>();
+		private final AtomicLong firstArrival = new AtomicLong(Long.MAX_VALUE);
+		private final AtomicLong lastArrival = new AtomicLong(Long.MIN_VALUE);
+
+		private void add(R contribution)
+		{
+			long now = System.nanoTime();
+			firstArrival.accumulateAndGet(now, Math::min);
+			lastArrival.accumulateAndGet(now, Math::max);
+			contributions.add(contribution);
+		}
+
+		private PhaseStats<R> complete(int phase, BinaryOperator<R> reducer)
+		{
+			R result = null;
+			for (R contribution : contributions) {
+				result = result == null ? contribution : reducer.apply(result, contribution);
+			}
+			return new PhaseStats<>(phase, contributions.size(), lastArrival.get() - firstArrival.get(), result);
+		}
+	}
+
+	/**
+	 * De statistieken en het resultaat van 1 afgeronde fase.
+	 */
+	public static class PhaseStats<R>
+	{
+		private final int phase;
+		private final int contributions;
+		private final long skewNanos;
+		private final R result;
+
+		private PhaseStats(int phase, int contributions, long skewNanos, R result)
+		{
+			this.phase = phase;
+			this.contributions = contributions;
+			this.skewNanos = skewNanos;
+			this.result = result;
+		}
+
+		public int getPhase()
+		{
+			return phase;
+		}
+
+		public int getContributions()
+		{
+			return contributions;
+		}
+
+		/**
+		 * De tijd tussen de eerste en de laatste bijdrage in deze fase.
+		 */
+		public long getSkew(TimeUnit unit)
+		{
+			return unit.convert(skewNanos, TimeUnit.NANOSECONDS);
+		}
+
+		public R getResult()
+		{
+			return result;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Phase " + phase + ": " + contributions + " contributions, skew "
+				+ getSkew(TimeUnit.MILLISECONDS) + " ms, result " + result;
+		}
+	}
+}
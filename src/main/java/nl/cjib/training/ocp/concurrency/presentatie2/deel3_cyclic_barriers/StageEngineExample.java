@@ -0,0 +1,66 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel3_cyclic_barriers;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Een voorbeeld van een berekening in fases met een {@link StageEngine}.
+ * <p>
+ * 3 workers tellen per fase een getal op. Na elke fase krijgen ze allemaal de som terug.
+ * Worker 3 stopt na fase 1, en vanaf fase 2 doet worker 4 mee.
+ * In fase 4 is worker 1 te traag, waardoor de timeout verloopt en de run afgebroken wordt.
+ */
+public class StageEngineExample
+{
+	private static final StageEngine<Integer> engine = new StageEngine<>(Integer::sum, 1, TimeUnit.SECONDS);
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		Thread worker1 = new Thread(() -> work(1, 0, 5));
+		Thread worker2 = new Thread(() -> work(2, 0, 5));
+		Thread worker3 = new Thread(() -> work(3, 0, 2));
+
+		worker1.start();
+		worker2.start();
+		worker3.start();
+
+		// Wacht tot fase 2 begint en meld dan een nieuwe worker aan.
+		while (engine.getPhase() < 2) {
+			Thread.sleep(10);
+		}
+		Thread worker4 = new Thread(() -> work(4, 2, 5));
+		worker4.start();
+
+		worker1.join();
+		worker2.join();
+		worker3.join();
+		worker4.join();
+
+		// De skew laat zien hoe lang de snelste worker op de langzaamste moest wachten.
+		engine.getPhaseStats().forEach(System.out::println);
+	}
+
+	private static void work(int workerNumber, int firstPhase, int lastPhase)
+	{
+		StageEngine<Integer>.Party party = engine.register();
+		try {
+			for (int phase = firstPhase; phase < lastPhase; phase++) {
+				// Worker 1 is in fase 4 te langzaam.
+				Thread.sleep(workerNumber == 1 && phase == 4 ? 2000 : 100L * workerNumber);
+				int sum = party.arriveAndAwait(workerNumber);
+				System.out.println("Worker " + workerNumber + " finished phase " + phase + ", sum of the phase: " + sum);
+			}
+			party.deregister();
+		}
+		catch (TimeoutException e) {
+			System.out.println("Worker " + workerNumber + " timed out, the run is aborted");
+		}
+		catch (BrokenBarrierException e) {
+			System.out.println("Worker " + workerNumber + " stopped, because the run was aborted");
+		}
+		catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+}
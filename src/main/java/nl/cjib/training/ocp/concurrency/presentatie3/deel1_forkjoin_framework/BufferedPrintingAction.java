@@ -0,0 +1,61 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Een variant van de PrintingAction uit {@link ForkJoinFramework} met een instelbare granulariteit.
+ * <p>
+ * De PrintingAction splitst door tot 1 element en print elk element direct.
+ * Daardoor is de overhead van de taken veel groter dan het werk zelf,
+ * en wachten alle workers op de lock van {@link System#out}.
+ * <p>
+ * Deze action splitst alleen door tot stukken van maximaal leafSize elementen.
+ * Elk stuk wordt in een {@link StringBuilder} opgebouwd en toegevoegd aan de buffer van de worker
+ * in een {@link WorkerBufferedSink}. Na afloop kan de sink in een keer geflusht worden.
+ */
+public class BufferedPrintingAction extends RecursiveAction
+{
+	private final List<String> toPrint;
+	private final int leafSize;
+	private final WorkerBufferedSink sink;
+	// De index van het eerste element in de oorspronkelijke lijst, zodat een geordende flush mogelijk is.
+	private final int offset;
+
+	public BufferedPrintingAction(List<String> toPrint, int leafSize, WorkerBufferedSink sink)
+	{
+		this(toPrint, leafSize, sink, 0);
+	}
+
+	private BufferedPrintingAction(List<String> toPrint, int leafSize, WorkerBufferedSink sink, int offset)
+	{
+		if (leafSize < 1) {
+			throw new IllegalArgumentException("leafSize must be at least 1, but was " + leafSize);
+		}
+		this.toPrint = toPrint;
+		this.leafSize = leafSize;
+		this.sink = sink;
+		this.offset = offset;
+	}
+
+	@Override
+	protected void compute()
+	{
+		int size = toPrint.size();
+		if (size <= leafSize) {
+			String threadName = Thread.currentThread().getName();
+			StringBuilder text = new StringBuilder();
+			for (String element : toPrint) {
+				text.append(element).append(" (").append(threadName).append(')').append(System.lineSeparator());
+			}
+			sink.append(offset, text);
+		}
+		else {
+			int mid = size / 2;
+			ForkJoinTask.invokeAll(
+				new BufferedPrintingAction(toPrint.subList(0, mid), leafSize, sink, offset),
+				new BufferedPrintingAction(toPrint.subList(mid, size), leafSize, sink, offset + mid));
+		}
+	}
+}
@@ -0,0 +1,620 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Een externe merge sort voor bestanden met records van vaste lengte die niet in de heap passen,
+ * als variant van de SortingTask uit {@link ForkJoinFramework} voor tientallen GB aan data.
+ * <p>
+ * Het sorteren gaat in 2 fases:
+ *  - runs maken: het bestand wordt in stukken van runSize bytes gememory-mapt. Van elk stuk wordt een array met
+ *    record indexen parallel gesorteerd met fork/join, waarna de records in die volgorde (ook parallel) naar een
+ *    tijdelijk bestand geschreven worden: een gesorteerde run;
+ *  - mergen: steeds fanIn runs worden samengevoegd tot 1 run (k-way merge met een heap), tot er 1 bestand over is.
+ *    Als er meer dan fanIn runs zijn, gebeurt dat in meerdere passes, en worden de groepen binnen een pass
+ *    parallel gemerged.
+ * <p>
+ * Alle I/O loopt via {@link MappedByteBuffer}s: records worden van buffer naar buffer gekopieerd, zonder tussenkopie
+ * in de heap. Op de heap staan alleen de index arrays van 1 run (8 bytes per record) en per merge een heap van fanIn
+ * readers. De rest van het geheugen dat gebruikt wordt is page cache van het besturingssysteem.
+ * <p>
+ * Een grotere runSize geeft minder runs (en dus minder merge passes), maar grotere index arrays.
+ * Een grotere fanIn geeft minder passes, maar meer gelijktijdig gemapte windows en een diepere heap per record.
+ * <p>
+ * Let op: Java kan een {@link MappedByteBuffer} niet expliciet vrijgeven, dat gebeurt pas als de garbage collector
+ * hem opruimt. Op Windows kunnen de tijdelijke bestanden daarom soms niet direct verwijderd worden.
+ */
+public final class ExternalMergeSort
+{
+	/**
+	 * Vergelijkt 2 records, die elk op een offset in een (gemapte) buffer staan.
+	 * Mag alleen absolute get methodes gebruiken, omdat de buffers door meerdere threads tegelijk gelezen worden.
+	 */
+	@FunctionalInterface
+	public interface RecordComparator
+	{
+		int compare(ByteBuffer left, int leftOffset, ByteBuffer right, int rightOffset);
+
+		/**
+		 * Vergelijkt de bytes [keyOffset, keyOffset + keyLength) van de records als unsigned getallen, van links naar rechts.
+		 * Dat is dezelfde volgorde als bij tekst in ASCII en getallen in big-endian.
+		 */
+		static RecordComparator unsignedBytes(int keyOffset, int keyLength)
+		{
+			return (left, leftOffset, right, rightOffset) -> {
+				int leftPosition = leftOffset + keyOffset;
+				int rightPosition = rightOffset + keyOffset;
+				int i = 0;
+				// Per 8 bytes tegelijk, de buffers zijn big-endian dus de eerste byte weegt het zwaarst.
+				for (; i + Long.BYTES <= keyLength; i += Long.BYTES) {
+					int compared = Long.compareUnsigned(left.getLong(leftPosition + i), right.getLong(rightPosition + i));
+					if (compared != 0) {
+						return compared;
+					}
+				}
+				for (; i < keyLength; i++) {
+					int compared = Byte.toUnsignedInt(left.get(leftPosition + i)) - Byte.toUnsignedInt(right.get(rightPosition + i));
+					if (compared != 0) {
+						return compared;
+					}
+				}
+				return 0;
+			};
+		}
+	}
+
+	/**
+	 * Wat er gesorteerd is en hoe lang dat duurde.
+	 */
+	public static final class Stats
+	{
+		private final long bytes;
+		private final int runs;
+		private final int mergePasses;
+		private final long runNanos;
+		private final long mergeNanos;
+
+		private Stats(long bytes, int runs, int mergePasses, long runNanos, long mergeNanos)
+		{
+			this.bytes = bytes;
+			this.runs = runs;
+			this.mergePasses = mergePasses;
+			this.runNanos = runNanos;
+			this.mergeNanos = mergeNanos;
+		}
+
+		public long getBytes()
+		{
+			return bytes;
+		}
+
+		public int getRuns()
+		{
+			return runs;
+		}
+
+		/**
+		 * Het aantal keer dat alle data gemerged is, inclusief de laatste merge naar het output bestand.
+		 */
+		public int getMergePasses()
+		{
+			return mergePasses;
+		}
+
+		public long getRunNanos()
+		{
+			return runNanos;
+		}
+
+		public long getMergeNanos()
+		{
+			return mergeNanos;
+		}
+
+		/**
+		 * Het aantal gesorteerde bytes per seconde, over beide fases samen.
+		 */
+		public double getBytesPerSecond()
+		{
+			return perSecond(bytes, runNanos + mergeNanos);
+		}
+
+		public double getRunBytesPerSecond()
+		{
+			return perSecond(bytes, runNanos);
+		}
+
+		/**
+		 * Het aantal bytes per seconde dat door de merges ging, dus de data maal het aantal passes.
+		 */
+		public double getMergeBytesPerSecond()
+		{
+			return perSecond(bytes * mergePasses, mergeNanos);
+		}
+
+		private static double perSecond(long bytes, long nanos)
+		{
+			return nanos <= 0 ? 0 : bytes * 1_000_000_000.0 / nanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "bytes=" + bytes + ", runs=" + runs + ", mergePasses=" + mergePasses
+				+ String.format(", total=%.1f MB/s, runs=%.1f MB/s (%d ms), merge=%.1f MB/s (%d ms)",
+				getBytesPerSecond() / 1_000_000, getRunBytesPerSecond() / 1_000_000, runNanos / 1_000_000,
+				getMergeBytesPerSecond() / 1_000_000, mergeNanos / 1_000_000);
+		}
+	}
+
+	public static final long DEFAULT_RUN_SIZE = 256L * 1024 * 1024;
+	public static final int DEFAULT_FAN_IN = 16;
+
+	/**
+	 * De grootte van het stuk van een run dat tijdens het mergen tegelijk gemapt is.
+	 */
+	private static final int WINDOW_SIZE = 32 * 1024 * 1024;
+
+	private final int recordSize;
+	private final RecordComparator comparator;
+	private final int runSize;
+	private final int fanIn;
+	private final int windowSize;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Een sorteerder met runs van {@value #DEFAULT_RUN_SIZE} bytes en een fan-in van {@value #DEFAULT_FAN_IN},
+	 * op de common pool.
+	 */
+	public ExternalMergeSort(int recordSize, RecordComparator comparator)
+	{
+		this(recordSize, comparator, DEFAULT_RUN_SIZE, DEFAULT_FAN_IN, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param runSize het aantal bytes dat per run in 1 keer gesorteerd wordt.
+	 *                Wordt naar beneden afgerond op een veelvoud van recordSize, en mag niet groter zijn dan 2 GB.
+	 * @param fanIn   het aantal runs dat per merge samengevoegd wordt (minimaal 2).
+	 */
+	public ExternalMergeSort(int recordSize, RecordComparator comparator, long runSize, int fanIn, ForkJoinPool pool)
+	{
+		if (recordSize < 1) {
+			throw new IllegalArgumentException("recordSize must be at least 1, but was " + recordSize);
+		}
+		if (runSize < recordSize || runSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("runSize must be between recordSize and " + Integer.MAX_VALUE + ", but was " + runSize);
+		}
+		if (fanIn < 2) {
+			throw new IllegalArgumentException("fanIn must be at least 2, but was " + fanIn);
+		}
+		this.recordSize = recordSize;
+		this.comparator = comparator;
+		this.runSize = (int) (runSize - runSize % recordSize);
+		this.fanIn = fanIn;
+		this.windowSize = Math.max(1, WINDOW_SIZE / recordSize) * recordSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Sorteer de records uit input naar output. De tijdelijke runs komen in tempDirectory,
+	 * en worden na afloop (ook bij een exception) weer verwijderd.
+	 */
+	public Stats sort(Path input, Path output, Path tempDirectory) throws IOException
+	{
+		long start = System.nanoTime();
+		List<Path> runs = new ArrayList<>();
+		try {
+			long bytes;
+			try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+				bytes = channel.size();
+				if (bytes % recordSize != 0) {
+					throw new IllegalArgumentException("The size of " + input + " (" + bytes + " bytes) is not a multiple of the record size " + recordSize);
+				}
+				for (long position = 0; position < bytes; position += runSize) {
+					Path run = Files.createTempFile(tempDirectory, "run-", ".bin");
+					runs.add(run);
+					createRun(channel, position, (int) Math.min(runSize, bytes - position), run);
+				}
+			}
+			long runsCreated = System.nanoTime();
+			int runCount = runs.size();
+
+			int mergePasses = 0;
+			while (runs.size() > fanIn) {
+				runs = mergePass(runs, tempDirectory);
+				mergePasses++;
+			}
+			if (runs.size() == 1) {
+				// Een enkele run is al gesorteerd.
+				Files.move(runs.get(0), output, StandardCopyOption.REPLACE_EXISTING);
+				runs.clear();
+			}
+			else {
+				// Bij een leeg bestand zijn er geen runs, en wordt een lege output geschreven.
+				merge(runs, output);
+				if (runCount > 1) {
+					mergePasses++;
+				}
+			}
+			return new Stats(bytes, runCount, mergePasses, runsCreated - start, System.nanoTime() - runsCreated);
+		}
+		catch (UncheckedIOException e) {
+			// Uit een fork/join taak.
+			throw e.getCause();
+		}
+		finally {
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+
+	/**
+	 * Sorteer [position, position + length) van de input naar een run.
+	 */
+	private void createRun(FileChannel input, long position, int length, Path run) throws IOException
+	{
+		MappedByteBuffer source = input.map(FileChannel.MapMode.READ_ONLY, position, length);
+		int records = length / recordSize;
+		int[] order = new int[records];
+		for (int i = 0; i < records; i++) {
+			order[i] = i * recordSize;
+		}
+		pool.invoke(new OffsetSortAction(source, order, new int[records], 0, records));
+		try (FileChannel output = FileChannel.open(run, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer target = output.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			pool.invoke(new CopyAction(source, order, target, 0, records));
+		}
+	}
+
+	/**
+	 * Merge de runs per groep van fanIn tot nieuwe runs. De groepen worden parallel gemerged.
+	 */
+	private List<Path> mergePass(List<Path> runs, Path tempDirectory) throws IOException
+	{
+		List<Path> merged = new ArrayList<>();
+		List<MergeAction> merges = new ArrayList<>();
+		for (int from = 0; from < runs.size(); from += fanIn) {
+			Path target = Files.createTempFile(tempDirectory, "run-", ".bin");
+			merged.add(target);
+			merges.add(new MergeAction(runs.subList(from, Math.min(runs.size(), from + fanIn)), target));
+		}
+		try {
+			pool.invoke(new RecursiveAction()
+			{
+				@Override
+				protected void compute()
+				{
+					ForkJoinTask.invokeAll(merges);
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			for (Path target : merged) {
+				Files.deleteIfExists(target);
+			}
+			throw e;
+		}
+		for (Path run : runs) {
+			Files.delete(run);
+		}
+		return merged;
+	}
+
+	/**
+	 * k-way merge van gesorteerde runs naar target, met een binaire heap van readers op hun huidige record.
+	 */
+	private void merge(List<Path> runs, Path target) throws IOException
+	{
+		List<FileChannel> channels = new ArrayList<>();
+		try {
+			RecordReader[] heap = new RecordReader[runs.size()];
+			int heapSize = 0;
+			long bytes = 0;
+			for (int i = 0; i < runs.size(); i++) {
+				FileChannel channel = FileChannel.open(runs.get(i), StandardOpenOption.READ);
+				channels.add(channel);
+				bytes += channel.size();
+				RecordReader reader = new RecordReader(channel, i);
+				if (reader.hasRecord()) {
+					heap[heapSize++] = reader;
+				}
+			}
+			for (int i = heapSize / 2 - 1; i >= 0; i--) {
+				siftDown(heap, heapSize, i);
+			}
+			try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				RecordWriter writer = new RecordWriter(output, bytes);
+				while (heapSize > 0) {
+					RecordReader smallest = heap[0];
+					writer.write(smallest.buffer, smallest.offset);
+					if (!smallest.advance()) {
+						heap[0] = heap[--heapSize];
+						heap[heapSize] = null;
+					}
+					if (heapSize > 0) {
+						siftDown(heap, heapSize, 0);
+					}
+				}
+			}
+		}
+		finally {
+			for (FileChannel channel : channels) {
+				channel.close();
+			}
+		}
+	}
+
+	private void siftDown(RecordReader[] heap, int size, int index)
+	{
+		RecordReader reader = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && less(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!less(heap[child], reader)) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = reader;
+	}
+
+	/**
+	 * Bij gelijke records gaat de reader van de eerdere run voor, zodat de sortering stabiel blijft.
+	 */
+	private boolean less(RecordReader left, RecordReader right)
+	{
+		int compared = comparator.compare(left.buffer, left.offset, right.buffer, right.offset);
+		return compared < 0 || compared == 0 && left.runIndex < right.runIndex;
+	}
+
+	/**
+	 * Leest de records van een run via een window dat steeds verder over het bestand geschoven wordt.
+	 */
+	private final class RecordReader
+	{
+		private final FileChannel channel;
+		private final long size;
+		private final int runIndex;
+		private long windowStart;
+		private MappedByteBuffer buffer;
+		private int offset;
+
+		private RecordReader(FileChannel channel, int runIndex) throws IOException
+		{
+			this.channel = channel;
+			this.size = channel.size();
+			this.runIndex = runIndex;
+			map(0);
+		}
+
+		private boolean hasRecord()
+		{
+			return windowStart + offset < size;
+		}
+
+		/**
+		 * Ga naar het volgende record.
+		 *
+		 * @return false als de run op is.
+		 */
+		private boolean advance()
+		{
+			offset += recordSize;
+			if (offset < buffer.limit()) {
+				return true;
+			}
+			if (windowStart + offset >= size) {
+				return false;
+			}
+			try {
+				map(windowStart + offset);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return true;
+		}
+
+		private void map(long position) throws IOException
+		{
+			windowStart = position;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+			offset = 0;
+		}
+	}
+
+	/**
+	 * Schrijft records naar een bestand van bekende grootte via een window dat steeds verder geschoven wordt.
+	 */
+	private final class RecordWriter
+	{
+		private final FileChannel channel;
+		private final long size;
+		private long windowStart;
+		private ByteBuffer buffer;
+
+		private RecordWriter(FileChannel channel, long size) throws IOException
+		{
+			this.channel = channel;
+			this.size = size;
+			map(0);
+		}
+
+		private void write(ByteBuffer source, int offset) throws IOException
+		{
+			if (!buffer.hasRemaining()) {
+				map(windowStart + buffer.position());
+			}
+			ByteBuffer record = source.duplicate();
+			record.position(offset).limit(offset + recordSize);
+			buffer.put(record);
+		}
+
+		private void map(long position) throws IOException
+		{
+			windowStart = position;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(windowSize, size - position));
+		}
+	}
+
+	/**
+	 * Merget een groep runs in een fork/join taak, en zet een {@link IOException} om naar een unchecked exception.
+	 */
+	private final class MergeAction extends RecursiveAction
+	{
+		private final List<Path> runs;
+		private final Path target;
+
+		private MergeAction(List<Path> runs, Path target)
+		{
+			this.runs = runs;
+			this.target = target;
+		}
+
+		@Override
+		protected void compute()
+		{
+			try {
+				merge(runs, target);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Sorteert de record offsets [from, to) op de records waar ze naar wijzen, met een merge sort zoals
+	 * {@link ParallelMergeSort}. De records zelf blijven op hun plek in de gemapte input.
+	 */
+	private final class OffsetSortAction extends RecursiveAction
+	{
+		private final ByteBuffer records;
+		private final int[] offsets;
+		private final int[] buffer;
+		private final int from;
+		private final int to;
+
+		private OffsetSortAction(ByteBuffer records, int[] offsets, int[] buffer, int from, int to)
+		{
+			this.records = records;
+			this.offsets = offsets;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= ParallelMergeSort.DEFAULT_THRESHOLD) {
+				sortSequentially(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			ForkJoinTask.invokeAll(
+				new OffsetSortAction(records, offsets, buffer, from, mid),
+				new OffsetSortAction(records, offsets, buffer, mid, to));
+			merge(from, mid, to);
+		}
+
+		private void sortSequentially(int from, int to)
+		{
+			if (to - from <= 16) {
+				// Insertion sort, stabiel omdat alleen grotere elementen opgeschoven worden.
+				for (int i = from + 1; i < to; i++) {
+					int offset = offsets[i];
+					int j = i - 1;
+					while (j >= from && comparator.compare(records, offsets[j], records, offset) > 0) {
+						offsets[j + 1] = offsets[j];
+						j--;
+					}
+					offsets[j + 1] = offset;
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			sortSequentially(from, mid);
+			sortSequentially(mid, to);
+			merge(from, mid, to);
+		}
+
+		private void merge(int from, int mid, int to)
+		{
+			if (comparator.compare(records, offsets[mid - 1], records, offsets[mid]) <= 0) {
+				return;
+			}
+			System.arraycopy(offsets, from, buffer, from, mid - from);
+			int left = from;
+			int right = mid;
+			int target = from;
+			while (left < mid && right < to) {
+				offsets[target++] = comparator.compare(records, offsets[right], records, buffer[left]) < 0 ? offsets[right++] : buffer[left++];
+			}
+			System.arraycopy(buffer, left, offsets, target, mid - left);
+		}
+	}
+
+	/**
+	 * Kopieert de records in de gesorteerde volgorde naar de run. Elke taak schrijft zijn eigen deel van de run.
+	 */
+	private final class CopyAction extends RecursiveAction
+	{
+		private final ByteBuffer source;
+		private final int[] order;
+		private final ByteBuffer target;
+		private final int from;
+		private final int to;
+
+		private CopyAction(ByteBuffer source, int[] order, ByteBuffer target, int from, int to)
+		{
+			this.source = source;
+			this.order = order;
+			this.target = target;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= ParallelMergeSort.DEFAULT_THRESHOLD) {
+				// Eigen duplicates, omdat position en limit per buffer object bijgehouden worden.
+				ByteBuffer record = source.duplicate();
+				ByteBuffer output = target.duplicate();
+				output.position(from * recordSize);
+				for (int i = from; i < to; i++) {
+					record.limit(order[i] + recordSize).position(order[i]);
+					output.put(record);
+					record.clear();
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			ForkJoinTask.invokeAll(
+				new CopyAction(source, order, target, from, mid),
+				new CopyAction(source, order, target, mid, to));
+		}
+	}
+}
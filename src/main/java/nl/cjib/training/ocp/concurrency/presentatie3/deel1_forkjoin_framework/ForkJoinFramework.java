@@ -1,15 +1,23 @@
 package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.management.JMException;
+
 /**
  * Het fork/join framework is ontworpen voor tasks die in kleinere delen kan worden opgesplits,
  * waardoor deze kleinere delen parallel uitgevoerd kunnen worden.
@@ -19,6 +27,7 @@ import java.util.stream.Collectors;
  * taken kunnen afpakken die in de wacht staan bij andere threads.
  *
  * Het belangrijkste component in het framework is de {@link ForkJoinPool}.
+ * Hoe een pool zich gedraagt (steals, queues, actieve threads) kan je volgen met een {@link ForkJoinPoolSampler}.
  * Je kan deze op verschillende manieren instantieren:
  */
 public class ForkJoinFramework
@@ -53,6 +62,9 @@ public class ForkJoinFramework
 	 *    roep dit gesplitste werk recursief aan en wacht op het resultaat
 	 * <p>
 	 * Hieronder zie je een voorbeeld van een {@link RecursiveAction}, waarbij strings worden uitgeprint.
+	 * <p>
+	 * Voor grote lijsten is het splitsen tot 1 element en direct printen erg duur,
+	 * zie daarvoor {@link BufferedPrintingAction}.
 	 */
 	private static class PrintingAction extends RecursiveAction
 	{
@@ -87,6 +99,9 @@ public class ForkJoinFramework
 
 	/**
 	 * Hieronder zie je een voorbeeld van een {@link RecursiveTask}, waarbij een lijst van nummers gesorteerd wordt.
+	 * <p>
+	 * Dit voorbeeld splitst door tot lijsten van 1 element en werkt met geboxte Integers.
+	 * Voor het sorteren van grote hoeveelheden getallen, zie {@link ParallelMergeSort}.
 	 */
 	private static class SortingTask extends RecursiveTask<List<Integer>>
 	{
@@ -103,6 +118,7 @@ public class ForkJoinFramework
 		 * en geeft een resultaat terug van het type dat opgegeven is in de generics parameter.
 		 *
 		 * Hieronder is een implementatie gemaakt van merge sort, mbv forks en joins.
+		 * Voor data die niet in het geheugen past, zie {@link ExternalMergeSort}.
 		 */
 		@Override
 		protected List<Integer> compute()
@@ -187,15 +203,82 @@ public class ForkJoinFramework
 	/**
 	 * Voorbeeld hoe je de {@link ForkJoinTask}s kan aanroepen:
 	 */
-	public static void main(String[] args)
+	public static void main(String[] args) throws JMException, InterruptedException, IOException
 	{
 		List<String> words = List.of("Ik", "Maan", "Roos", "Vis", "Sok", "Pen");
 		PrintingAction printingAction = new PrintingAction(words);
 		commonPool.invoke(printingAction);
 
+		// Met de BufferedPrintingAction printen de workers niet zelf, maar schrijven ze naar hun eigen buffer.
+		// Door een geordende flush komen de woorden toch in de oorspronkelijke volgorde in de output.
+		WorkerBufferedSink sink = new WorkerBufferedSink();
+		commonPool.invoke(new BufferedPrintingAction(words, 2, sink));
+		sink.flush(System.out, true);
+
 		List<Integer> toSort = List.of(42, 1337, 69, 7, 420, 12);
 		SortingTask sortingTask = new SortingTask(toSort);
 		List<Integer> sorted = commonPool.invoke(sortingTask);
 		System.out.println(sorted.stream().map(Object::toString).collect(Collectors.joining(", ")));
+
+		// Voor grote primitive arrays kan je beter ParallelMergeSort gebruiken.
+		// Hier is de threshold expres klein gezet, zodat er ook bij 6 getallen gesplitst wordt.
+		int[] numbers = {42, 1337, 69, 7, 420, 12};
+		ParallelMergeSort.sort(numbers, 2, commonPool);
+		System.out.println(Arrays.toString(numbers));
+
+		// Een prefix scan (lopend totaal) lijkt sequentieel, maar kan met fork/join in 2 passes: zie ParallelScan.
+		// Daarmee kan je ook per segment reduceren, en parallel filteren met ParallelCompaction.
+		int[] runningTotals = {3, 1, 4, 1, 5, 9, 2, 6};
+		ParallelScan.prefix(runningTotals, Integer::sum, 2, commonPool);
+		System.out.println(Arrays.toString(runningTotals));
+		int[] segmentSums = ParallelScan.segmentedReduce(new int[]{3, 1, 4, 1, 5, 9, 2, 6}, new int[]{0, 3, 3, 8}, 0, Integer::sum, 2, commonPool);
+		System.out.println(Arrays.toString(segmentSums));
+		System.out.println(Arrays.toString(ParallelCompaction.filter(numbers, x -> x % 2 == 0, 2, commonPool)));
+
+		// Past de data niet in de heap, dan sorteert ExternalMergeSort een bestand in runs, die daarna gemerged worden.
+		// Hier zijn de runs en de fan-in expres klein, zodat 1,6 MB aan records 7 runs en 2 merge passes geeft.
+		Path directory = Files.createTempDirectory("external-merge-sort");
+		Path input = directory.resolve("input.bin");
+		Path output = directory.resolve("output.bin");
+		byte[] records = new byte[100_000 * 16];
+		new Random(42).nextBytes(records);
+		Files.write(input, records);
+		ExternalMergeSort externalMergeSort = new ExternalMergeSort(16, ExternalMergeSort.RecordComparator.unsignedBytes(0, 8),
+			256 * 1024, 4, commonPool);
+		System.out.println(externalMergeSort.sort(input, output, directory));
+		Files.delete(input);
+		Files.delete(output);
+		Files.delete(directory);
+
+		// Met een ForkJoinPoolSampler zie je hoe de pools zich gedragen, ook via JMX (bijvoorbeeld in JConsole).
+		// Hier houden 5 slapende taken alle threads van de fiveThreadForkJoinPool bezet.
+		// Nieuwe submissions blijven dan in de queue staan terwijl er niets gestolen wordt: de pool is uitgehongerd.
+		try (ForkJoinPoolSampler sampler = new ForkJoinPoolSampler(20, TimeUnit.MILLISECONDS, 100, 5,
+			(poolName, window) -> System.out.println(poolName + " is uitgehongerd: " + window.get(window.size() - 1)))) {
+			sampler.register("commonPool", commonPool)
+				.register("forkJoinPool", forkJoinPool)
+				.register("fiveThreadForkJoinPool", fiveThreadForkJoinPool);
+			for (int i = 0; i < 5; i++) {
+				fiveThreadForkJoinPool.execute(() -> sleep(500));
+			}
+			for (int i = 0; i < 10; i++) {
+				fiveThreadForkJoinPool.execute(() -> {
+				});
+				Thread.sleep(20);
+			}
+			fiveThreadForkJoinPool.awaitQuiescence(1, TimeUnit.SECONDS);
+			sampler.sampleNow();
+			System.out.println(sampler.getLatest("fiveThreadForkJoinPool"));
+		}
+	}
+
+	private static void sleep(long millis)
+	{
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 }
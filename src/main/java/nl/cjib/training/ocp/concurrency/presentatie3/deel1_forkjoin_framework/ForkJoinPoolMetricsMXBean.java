@@ -0,0 +1,52 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+/**
+ * De metrics van een {@link java.util.concurrent.ForkJoinPool}, zoals een {@link ForkJoinPoolSampler} ze via JMX
+ * zichtbaar maakt (bijvoorbeeld in JConsole). Alle waardes komen uit de laatste sample.
+ */
+public interface ForkJoinPoolMetricsMXBean
+{
+	/**
+	 * Het totaal aantal taken dat een thread van de queue van een andere thread gestolen heeft.
+	 */
+	long getStealCount();
+
+	/**
+	 * Het aantal gestolen taken per seconde, sinds de vorige sample.
+	 */
+	double getStealsPerSecond();
+
+	/**
+	 * Het aantal geforkte taken dat in de queues van de worker threads staat.
+	 */
+	long getQueuedTaskCount();
+
+	/**
+	 * Het aantal taken dat van buiten de pool gesubmit is en nog niet gestart is.
+	 */
+	int getQueuedSubmissionCount();
+
+	/**
+	 * Het aantal threads dat niet geblokkeerd is in een join of een andere vorm van wachten.
+	 */
+	int getRunningThreadCount();
+
+	/**
+	 * Het aantal threads dat een taak uitvoert of taken probeert te stelen.
+	 */
+	int getActiveThreadCount();
+
+	int getPoolSize();
+
+	int getParallelism();
+
+	/**
+	 * Of de pool op dit moment als uitgehongerd gezien wordt, zie {@link ForkJoinPoolSampler}.
+	 */
+	boolean isStarving();
+
+	/**
+	 * Hoe vaak de pool in totaal uitgehongerd geraakt is.
+	 */
+	long getStarvationAlerts();
+}
@@ -0,0 +1,112 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.time.Instant;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * De toestand van een {@link ForkJoinPool} op 1 moment, zoals vastgelegd door een {@link ForkJoinPoolSampler}.
+ * <p>
+ * De getallen worden los van elkaar uit de pool gelezen terwijl die doorwerkt. Ze passen dus niet altijd precies
+ * bij elkaar, maar zijn goed genoeg om het verloop over tijd te volgen.
+ */
+public final class ForkJoinPoolSample
+{
+	private final Instant timestamp;
+	private final long nanoTime;
+	private final long stealCount;
+	private final long queuedTaskCount;
+	private final int queuedSubmissionCount;
+	private final int runningThreadCount;
+	private final int activeThreadCount;
+	private final int poolSize;
+	private final int parallelism;
+
+	private ForkJoinPoolSample(Instant timestamp, long nanoTime, ForkJoinPool pool)
+	{
+		this.timestamp = timestamp;
+		this.nanoTime = nanoTime;
+		this.stealCount = pool.getStealCount();
+		this.queuedTaskCount = pool.getQueuedTaskCount();
+		this.queuedSubmissionCount = pool.getQueuedSubmissionCount();
+		this.runningThreadCount = pool.getRunningThreadCount();
+		this.activeThreadCount = pool.getActiveThreadCount();
+		this.poolSize = pool.getPoolSize();
+		this.parallelism = pool.getParallelism();
+	}
+
+	/**
+	 * Lees de huidige toestand van de pool.
+	 */
+	public static ForkJoinPoolSample of(ForkJoinPool pool)
+	{
+		return new ForkJoinPoolSample(Instant.now(), System.nanoTime(), pool);
+	}
+
+	public Instant getTimestamp()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * De {@link System#nanoTime()} van de sample, om tijdsverschillen tussen samples te berekenen.
+	 */
+	public long getNanoTime()
+	{
+		return nanoTime;
+	}
+
+	public long getStealCount()
+	{
+		return stealCount;
+	}
+
+	public long getQueuedTaskCount()
+	{
+		return queuedTaskCount;
+	}
+
+	public int getQueuedSubmissionCount()
+	{
+		return queuedSubmissionCount;
+	}
+
+	public int getRunningThreadCount()
+	{
+		return runningThreadCount;
+	}
+
+	public int getActiveThreadCount()
+	{
+		return activeThreadCount;
+	}
+
+	public int getPoolSize()
+	{
+		return poolSize;
+	}
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * Het aantal gestolen taken per seconde tussen de gegeven (eerdere) sample en deze.
+	 */
+	public double stealsPerSecondSince(ForkJoinPoolSample previous)
+	{
+		long nanos = nanoTime - previous.nanoTime;
+		if (nanos <= 0) {
+			return 0;
+		}
+		return (stealCount - previous.stealCount) * 1_000_000_000.0 / nanos;
+	}
+
+	@Override
+	public String toString()
+	{
+		return timestamp + ": steals=" + stealCount + ", queuedTasks=" + queuedTaskCount
+			+ ", queuedSubmissions=" + queuedSubmissionCount + ", running=" + runningThreadCount
+			+ ", active=" + activeThreadCount + ", poolSize=" + poolSize + ", parallelism=" + parallelism;
+	}
+}
@@ -0,0 +1,344 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Legt periodiek vast hoe de geregistreerde {@link ForkJoinPool}s zich gedragen.
+ * <p>
+ * Per pool wordt elke interval een {@link ForkJoinPoolSample} genomen, met onder andere het aantal gestolen taken,
+ * de taken in de queues van de workers, de nog niet gestarte submissions en het aantal actieve threads.
+ * De laatste samples worden per pool bewaard als tijdreeks, en de laatste waardes zijn via JMX zichtbaar
+ * als {@link ForkJoinPoolMetricsMXBean}.
+ * <p>
+ * Met deze cijfers kan je een pool en een fork threshold kiezen op basis van data:
+ *  - weinig steals terwijl er taken in de queues staan: de taken zijn te groot, fork eerder;
+ *  - heel veel steals per seconde: de taken zijn te klein, en het stelen kost meer dan het oplevert;
+ *  - minder running dan actieve threads: workers staan te wachten in een join of op iets buiten de pool.
+ * <p>
+ * Een pool is uitgehongerd (starving) als in de laatste starvationWindow samples het aantal queued submissions
+ * steeds oploopt, terwijl er geen enkele taak gestolen wordt. Dan zijn alle workers bezet met taken die niet
+ * opschieten, bijvoorbeeld omdat ze blokkeren op I/O of een lock, en komt nieuw werk niet meer aan de beurt.
+ * Bij het begin van zo'n periode wordt de {@link StarvationListener} 1 keer aangeroepen.
+ */
+public class ForkJoinPoolSampler implements AutoCloseable
+{
+	/**
+	 * Wordt aangeroepen op de thread van de sampler, dus moet snel zijn.
+	 */
+	@FunctionalInterface
+	public interface StarvationListener
+	{
+		/**
+		 * @param window de samples waaruit blijkt dat de pool uitgehongerd is, van oud naar nieuw.
+		 */
+		void onStarvation(String poolName, List<ForkJoinPoolSample> window);
+	}
+
+	public static final int DEFAULT_HISTORY_SIZE = 600;
+	public static final int DEFAULT_STARVATION_WINDOW = 5;
+
+	private final Map<String, PoolMetrics> pools = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final int historySize;
+	private final int starvationWindow;
+	private final StarvationListener listener;
+
+	/**
+	 * Een sampler die de laatste {@value #DEFAULT_HISTORY_SIZE} samples per pool bewaart,
+	 * en alleen via JMX laat zien of een pool uitgehongerd is.
+	 */
+	public ForkJoinPoolSampler(long interval, TimeUnit unit)
+	{
+		this(interval, unit, DEFAULT_HISTORY_SIZE, DEFAULT_STARVATION_WINDOW, (poolName, window) -> {
+		});
+	}
+
+	/**
+	 * @param historySize      het aantal samples dat per pool bewaard wordt.
+	 * @param starvationWindow het aantal opeenvolgende samples waarin de submissions oplopen zonder steals,
+	 *                         voordat een pool als uitgehongerd gezien wordt (minimaal 2).
+	 */
+	public ForkJoinPoolSampler(long interval, TimeUnit unit, int historySize, int starvationWindow, StarvationListener listener)
+	{
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be positive, but was " + interval);
+		}
+		if (starvationWindow < 2 || historySize < starvationWindow) {
+			throw new IllegalArgumentException("starvationWindow must be at least 2 and at most historySize, but was "
+				+ starvationWindow + " with historySize " + historySize);
+		}
+		this.historySize = historySize;
+		this.starvationWindow = starvationWindow;
+		this.listener = listener;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "fork-join-pool-sampler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::sampleNow, interval, interval, unit);
+	}
+
+	/**
+	 * Begin met het samplen van de pool, en maak de metrics via JMX beschikbaar onder de gegeven naam.
+	 */
+	public ForkJoinPoolSampler register(String poolName, ForkJoinPool pool) throws JMException
+	{
+		PoolMetrics metrics = new PoolMetrics(poolName, pool);
+		if (pools.putIfAbsent(poolName, metrics) != null) {
+			throw new IllegalArgumentException("A pool named " + poolName + " is already registered");
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics.objectName);
+		}
+		catch (JMException | RuntimeException e) {
+			pools.remove(poolName, metrics);
+			throw e;
+		}
+		return this;
+	}
+
+	/**
+	 * Stop met het samplen van de pool, en haal de metrics weg uit JMX.
+	 */
+	public void unregister(String poolName) throws JMException
+	{
+		PoolMetrics metrics = pools.remove(poolName);
+		if (metrics != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(metrics.objectName)) {
+				server.unregisterMBean(metrics.objectName);
+			}
+		}
+	}
+
+	/**
+	 * Neem direct een sample van alle pools, naast de periodieke samples.
+	 */
+	public void sampleNow()
+	{
+		for (PoolMetrics metrics : pools.values()) {
+			try {
+				metrics.sample();
+			}
+			catch (RuntimeException e) {
+				// Een exception zou de periodieke taak stoppen, dus die wordt alleen gemeld.
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	/**
+	 * De bewaarde samples van de pool, van oud naar nieuw.
+	 */
+	public List<ForkJoinPoolSample> getHistory(String poolName)
+	{
+		return metrics(poolName).history();
+	}
+
+	/**
+	 * De laatste sample van de pool, of null als die er nog niet is.
+	 */
+	public ForkJoinPoolSample getLatest(String poolName)
+	{
+		return metrics(poolName).latest;
+	}
+
+	public ForkJoinPoolMetricsMXBean getMetrics(String poolName)
+	{
+		return metrics(poolName);
+	}
+
+	private PoolMetrics metrics(String poolName)
+	{
+		PoolMetrics metrics = pools.get(poolName);
+		if (metrics == null) {
+			throw new IllegalArgumentException("No pool named " + poolName + " is registered");
+		}
+		return metrics;
+	}
+
+	/**
+	 * Stop de sampler en haal alle metrics weg uit JMX. De pools zelf worden niet afgesloten.
+	 */
+	@Override
+	public void close() throws JMException
+	{
+		scheduler.shutdownNow();
+		for (String poolName : new ArrayList<>(pools.keySet())) {
+			unregister(poolName);
+		}
+	}
+
+	/**
+	 * De tijdreeks en de starvation status van 1 pool. Alleen de thread van de sampler (of een aanroep van
+	 * {@link #sampleNow()}) voegt samples toe, lezen kan vanaf elke thread.
+	 */
+	private final class PoolMetrics implements ForkJoinPoolMetricsMXBean
+	{
+		private final String poolName;
+		private final ForkJoinPool pool;
+		private final ObjectName objectName;
+		private final Deque<ForkJoinPoolSample> history = new ArrayDeque<>();
+		private volatile ForkJoinPoolSample latest;
+		private volatile double stealsPerSecond;
+		private volatile boolean starving;
+		private volatile long starvationAlerts;
+
+		private PoolMetrics(String poolName, ForkJoinPool pool) throws JMException
+		{
+			this.poolName = poolName;
+			this.pool = pool;
+			this.objectName = new ObjectName("nl.cjib.training.ocp.concurrency:type=ForkJoinPool,name=" + ObjectName.quote(poolName));
+		}
+
+		private void sample()
+		{
+			ForkJoinPoolSample sample = ForkJoinPoolSample.of(pool);
+			List<ForkJoinPoolSample> window = null;
+			synchronized (this) {
+				ForkJoinPoolSample previous = history.peekLast();
+				history.addLast(sample);
+				if (history.size() > historySize) {
+					history.removeFirst();
+				}
+				latest = sample;
+				stealsPerSecond = previous == null ? 0 : sample.stealsPerSecondSince(previous);
+
+				boolean wasStarving = starving;
+				starving = isStarving(lastSamples(starvationWindow));
+				if (starving && !wasStarving) {
+					starvationAlerts++;
+					window = lastSamples(starvationWindow);
+				}
+			}
+			// Buiten de lock, zodat de listener de history kan opvragen zonder te blokkeren.
+			if (window != null) {
+				listener.onStarvation(poolName, window);
+			}
+		}
+
+		/**
+		 * De laatste count samples, of minder als er nog niet zoveel zijn.
+		 */
+		private List<ForkJoinPoolSample> lastSamples(int count)
+		{
+			List<ForkJoinPoolSample> samples = new ArrayList<>(count);
+			Iterator<ForkJoinPoolSample> newestFirst = history.descendingIterator();
+			while (newestFirst.hasNext() && samples.size() < count) {
+				samples.add(newestFirst.next());
+			}
+			Collections.reverse(samples);
+			return samples;
+		}
+
+		private boolean isStarving(List<ForkJoinPoolSample> window)
+		{
+			if (window.size() < starvationWindow) {
+				return false;
+			}
+			ForkJoinPoolSample first = window.get(0);
+			ForkJoinPoolSample last = window.get(window.size() - 1);
+			if (last.getStealCount() != first.getStealCount()
+				|| last.getQueuedSubmissionCount() <= first.getQueuedSubmissionCount()) {
+				return false;
+			}
+			for (int i = 1; i < window.size(); i++) {
+				if (window.get(i).getQueuedSubmissionCount() < window.get(i - 1).getQueuedSubmissionCount()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private synchronized List<ForkJoinPoolSample> history()
+		{
+			return new ArrayList<>(history);
+		}
+
+		/**
+		 * De laatste sample, of een nieuwe als de sampler nog niet langs geweest is.
+		 */
+		private ForkJoinPoolSample current()
+		{
+			ForkJoinPoolSample sample = latest;
+			return sample != null ? sample : ForkJoinPoolSample.of(pool);
+		}
+
+		@Override
+		public long getStealCount()
+		{
+			return current().getStealCount();
+		}
+
+		@Override
+		public double getStealsPerSecond()
+		{
+			return stealsPerSecond;
+		}
+
+		@Override
+		public long getQueuedTaskCount()
+		{
+			return current().getQueuedTaskCount();
+		}
+
+		@Override
+		public int getQueuedSubmissionCount()
+		{
+			return current().getQueuedSubmissionCount();
+		}
+
+		@Override
+		public int getRunningThreadCount()
+		{
+			return current().getRunningThreadCount();
+		}
+
+		@Override
+		public int getActiveThreadCount()
+		{
+			return current().getActiveThreadCount();
+		}
+
+		@Override
+		public int getPoolSize()
+		{
+			return current().getPoolSize();
+		}
+
+		@Override
+		public int getParallelism()
+		{
+			return current().getParallelism();
+		}
+
+		@Override
+		public boolean isStarving()
+		{
+			return starving;
+		}
+
+		@Override
+		public long getStarvationAlerts()
+		{
+			return starvationAlerts;
+		}
+	}
+}
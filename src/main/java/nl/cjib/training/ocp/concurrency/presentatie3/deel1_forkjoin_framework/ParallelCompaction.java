@@ -0,0 +1,301 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * Parallel filteren en partitioneren van primitive arrays, gebouwd op de scan van {@link ScanTree}.
+ * <p>
+ * Om parallel te kunnen filteren moet elk blok weten waar het zijn elementen in het resultaat moet schrijven.
+ * Dat is het aantal geselecteerde elementen in alle blokken ervoor, en dat is precies een prefix som:
+ *  - in de eerste pass telt elk blok hoeveel elementen aan het predicate voldoen;
+ *  - daarna is het totaal bekend, en wordt de resultaat array in 1 keer met de goede grootte aangemaakt;
+ *  - in de tweede pass schrijft elk blok zijn elementen vanaf de som van de blokken ervoor.
+ * Er is dus geen combine die deelresultaten kopieert, en geen synchronisatie tussen de blokken.
+ * <p>
+ * Het predicate wordt voor elk element 2 keer aangeroepen, dus moet goedkoop zijn en geen side effects hebben.
+ * De volgorde van de elementen blijft behouden.
+ */
+public final class ParallelCompaction
+{
+	public static final int DEFAULT_THRESHOLD = ParallelScan.DEFAULT_THRESHOLD;
+
+	private ParallelCompaction()
+	{
+	}
+
+	public static int[] filter(int[] array, IntPredicate predicate)
+	{
+		return filter(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Een nieuwe array met alleen de elementen die aan het predicate voldoen.
+	 */
+	public static int[] filter(int[] array, IntPredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		IntKernel kernel = new IntKernel(array, predicate, false);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		return kernel.target;
+	}
+
+	public static int partition(int[] array, IntPredicate predicate)
+	{
+		return partition(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Zet de elementen die aan het predicate voldoen vooraan in de array, en de rest daarachter.
+	 * Binnen beide delen blijft de volgorde behouden.
+	 *
+	 * @return het aantal elementen dat aan het predicate voldoet.
+	 */
+	public static int partition(int[] array, IntPredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		IntKernel kernel = new IntKernel(array, predicate, true);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		System.arraycopy(kernel.target, 0, array, 0, array.length);
+		return kernel.selected;
+	}
+
+	public static long[] filter(long[] array, LongPredicate predicate)
+	{
+		return filter(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static long[] filter(long[] array, LongPredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		LongKernel kernel = new LongKernel(array, predicate, false);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		return kernel.target;
+	}
+
+	public static int partition(long[] array, LongPredicate predicate)
+	{
+		return partition(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static int partition(long[] array, LongPredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		LongKernel kernel = new LongKernel(array, predicate, true);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		System.arraycopy(kernel.target, 0, array, 0, array.length);
+		return kernel.selected;
+	}
+
+	public static double[] filter(double[] array, DoublePredicate predicate)
+	{
+		return filter(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static double[] filter(double[] array, DoublePredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		DoubleKernel kernel = new DoubleKernel(array, predicate, false);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		return kernel.target;
+	}
+
+	public static int partition(double[] array, DoublePredicate predicate)
+	{
+		return partition(array, predicate, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static int partition(double[] array, DoublePredicate predicate, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		DoubleKernel kernel = new DoubleKernel(array, predicate, true);
+		ScanTree.run(kernel, array.length, threshold, pool);
+		System.arraycopy(kernel.target, 0, array, 0, array.length);
+		return kernel.selected;
+	}
+
+	/**
+	 * Telt in de eerste pass de geselecteerde elementen per blok, en schrijft ze in de tweede pass naar target.
+	 * Bij keepRejected komen de overige elementen in target achter de geselecteerde.
+	 */
+	private static final class IntKernel implements ScanTree.Kernel
+	{
+		private final int[] array;
+		private final IntPredicate predicate;
+		private final boolean keepRejected;
+		// Worden tussen de 2 passes gezet, voordat de taken van de tweede pass gestart worden.
+		private int[] target;
+		private int selected;
+
+		private IntKernel(int[] array, IntPredicate predicate, boolean keepRejected)
+		{
+			this.array = array;
+			this.predicate = predicate;
+			this.keepRejected = keepRejected;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				if (predicate.test(array[i])) {
+					count++;
+				}
+			}
+			node.sum = count;
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return left + right;
+		}
+
+		@Override
+		public void betweenPasses(ScanTree.Node root)
+		{
+			selected = (int) root.sum;
+			target = new int[keepRejected ? array.length : selected];
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			int selectedIndex = hasPrefix ? (int) prefix : 0;
+			// Voor dit blok zijn from - selectedIndex elementen afgewezen.
+			int rejectedIndex = selected + from - selectedIndex;
+			for (int i = from; i < to; i++) {
+				int value = array[i];
+				if (predicate.test(value)) {
+					target[selectedIndex++] = value;
+				}
+				else if (keepRejected) {
+					target[rejectedIndex++] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Filtert of partitioneert een long[], zie {@link IntKernel}.
+	 */
+	private static final class LongKernel implements ScanTree.Kernel
+	{
+		private final long[] array;
+		private final LongPredicate predicate;
+		private final boolean keepRejected;
+		private long[] target;
+		private int selected;
+
+		private LongKernel(long[] array, LongPredicate predicate, boolean keepRejected)
+		{
+			this.array = array;
+			this.predicate = predicate;
+			this.keepRejected = keepRejected;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				if (predicate.test(array[i])) {
+					count++;
+				}
+			}
+			node.sum = count;
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return left + right;
+		}
+
+		@Override
+		public void betweenPasses(ScanTree.Node root)
+		{
+			selected = (int) root.sum;
+			target = new long[keepRejected ? array.length : selected];
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			int selectedIndex = hasPrefix ? (int) prefix : 0;
+			int rejectedIndex = selected + from - selectedIndex;
+			for (int i = from; i < to; i++) {
+				long value = array[i];
+				if (predicate.test(value)) {
+					target[selectedIndex++] = value;
+				}
+				else if (keepRejected) {
+					target[rejectedIndex++] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Filtert of partitioneert een double[], zie {@link IntKernel}.
+	 */
+	private static final class DoubleKernel implements ScanTree.Kernel
+	{
+		private final double[] array;
+		private final DoublePredicate predicate;
+		private final boolean keepRejected;
+		private double[] target;
+		private int selected;
+
+		private DoubleKernel(double[] array, DoublePredicate predicate, boolean keepRejected)
+		{
+			this.array = array;
+			this.predicate = predicate;
+			this.keepRejected = keepRejected;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				if (predicate.test(array[i])) {
+					count++;
+				}
+			}
+			node.sum = count;
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return left + right;
+		}
+
+		@Override
+		public void betweenPasses(ScanTree.Node root)
+		{
+			selected = (int) root.sum;
+			target = new double[keepRejected ? array.length : selected];
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			int selectedIndex = hasPrefix ? (int) prefix : 0;
+			int rejectedIndex = selected + from - selectedIndex;
+			for (int i = from; i < to; i++) {
+				double value = array[i];
+				if (predicate.test(value)) {
+					target[selectedIndex++] = value;
+				}
+				else if (keepRejected) {
+					target[rejectedIndex++] = value;
+				}
+			}
+		}
+	}
+}
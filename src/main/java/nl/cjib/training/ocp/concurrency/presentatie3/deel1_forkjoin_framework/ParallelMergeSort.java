@@ -0,0 +1,227 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Een parallelle merge sort voor grote arrays, als productievariant van de SortingTask uit {@link ForkJoinFramework}.
+ * <p>
+ * Het verschil met de SortingTask:
+ *  - er wordt gesorteerd op primitive arrays (int[] en long[]), dus zonder boxing;
+ *  - onder een instelbare threshold wordt niet verder gesplitst, maar sequentieel gesorteerd met {@link Arrays#sort};
+ *  - er wordt precies 1 hulpbuffer aangemaakt voor de hele sortering.
+ *    Elke merge gebruikt alleen zijn eigen deel van deze buffer, dus de taken zitten elkaar niet in de weg;
+ *  - er wordt niet gesynchroniseerd of geprint tijdens het mergen.
+ * <p>
+ * Voor objecten is er een variant met een {@link Comparator}. Deze sortering is stabiel.
+ */
+public final class ParallelMergeSort
+{
+	/**
+	 * Onder dit aantal elementen wordt niet meer gesplitst.
+	 * Kleiner maken geeft meer parallelisme, maar ook meer overhead per taak.
+	 */
+	public static final int DEFAULT_THRESHOLD = 8192;
+
+	private ParallelMergeSort()
+	{
+	}
+
+	public static void sort(int[] array)
+	{
+		sort(array, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void sort(int[] array, int threshold, ForkJoinPool pool)
+	{
+		checkThreshold(threshold);
+		if (array.length <= threshold) {
+			Arrays.sort(array);
+			return;
+		}
+		pool.invoke(new IntSortAction(array, new int[array.length], 0, array.length, threshold));
+	}
+
+	public static void sort(long[] array)
+	{
+		sort(array, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void sort(long[] array, int threshold, ForkJoinPool pool)
+	{
+		checkThreshold(threshold);
+		if (array.length <= threshold) {
+			Arrays.sort(array);
+			return;
+		}
+		pool.invoke(new LongSortAction(array, new long[array.length], 0, array.length, threshold));
+	}
+
+	public static <T> void sort(T[] array, Comparator<? super T> comparator)
+	{
+		sort(array, comparator, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static <T> void sort(T[] array, Comparator<? super T> comparator, int threshold, ForkJoinPool pool)
+	{
+		checkThreshold(threshold);
+		if (array.length <= threshold) {
+			Arrays.sort(array, comparator);
+			return;
+		}
+		pool.invoke(new ObjectSortAction<>(array, new Object[array.length], comparator, 0, array.length, threshold));
+	}
+
+	private static void checkThreshold(int threshold)
+	{
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be at least 1, but was " + threshold);
+		}
+	}
+
+	/**
+	 * Sorteert het bereik [from, to) van een int[].
+	 */
+	private static class IntSortAction extends RecursiveAction
+	{
+		private final int[] array;
+		private final int[] buffer;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		private IntSortAction(int[] array, int[] buffer, int from, int to, int threshold)
+		{
+			this.array = array;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= threshold) {
+				Arrays.sort(array, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			ForkJoinTask.invokeAll(
+				new IntSortAction(array, buffer, from, mid, threshold),
+				new IntSortAction(array, buffer, mid, to, threshold));
+			// Als de twee helften al op volgorde liggen, hoeft er niet gemerged te worden.
+			if (array[mid - 1] <= array[mid]) {
+				return;
+			}
+			// Alleen de linker helft gaat naar de buffer, de rechter helft wordt vanuit de array zelf gelezen.
+			System.arraycopy(array, from, buffer, from, mid - from);
+			int left = from;
+			int right = mid;
+			int target = from;
+			while (left < mid && right < to) {
+				array[target++] = array[right] < buffer[left] ? array[right++] : buffer[left++];
+			}
+			// De rest van links wordt teruggekopieerd, de rest van rechts staat al op de goede plek.
+			System.arraycopy(buffer, left, array, target, mid - left);
+		}
+	}
+
+	/**
+	 * Sorteert het bereik [from, to) van een long[].
+	 */
+	private static class LongSortAction extends RecursiveAction
+	{
+		private final long[] array;
+		private final long[] buffer;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		private LongSortAction(long[] array, long[] buffer, int from, int to, int threshold)
+		{
+			this.array = array;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= threshold) {
+				Arrays.sort(array, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			ForkJoinTask.invokeAll(
+				new LongSortAction(array, buffer, from, mid, threshold),
+				new LongSortAction(array, buffer, mid, to, threshold));
+			if (array[mid - 1] <= array[mid]) {
+				return;
+			}
+			System.arraycopy(array, from, buffer, from, mid - from);
+			int left = from;
+			int right = mid;
+			int target = from;
+			while (left < mid && right < to) {
+				array[target++] = array[right] < buffer[left] ? array[right++] : buffer[left++];
+			}
+			System.arraycopy(buffer, left, array, target, mid - left);
+		}
+	}
+
+	/**
+	 * Sorteert het bereik [from, to) van een object array met een {@link Comparator}.
+	 * Bij gelijke elementen wordt het linker element eerst geplaatst, zodat de sortering stabiel blijft.
+	 */
+	private static class ObjectSortAction<T> extends RecursiveAction
+	{
+		private final T[] array;
+		private final Object[] buffer;
+		private final Comparator<? super T> comparator;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		private ObjectSortAction(T[] array, Object[] buffer, Comparator<? super T> comparator, int from, int to, int threshold)
+		{
+			this.array = array;
+			this.buffer = buffer;
+			this.comparator = comparator;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected void compute()
+		{
+			if (to - from <= threshold) {
+				Arrays.sort(array, from, to, comparator);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			ForkJoinTask.invokeAll(
+				new ObjectSortAction<>(array, buffer, comparator, from, mid, threshold),
+				new ObjectSortAction<>(array, buffer, comparator, mid, to, threshold));
+			if (comparator.compare(array[mid - 1], array[mid]) <= 0) {
+				return;
+			}
+			System.arraycopy(array, from, buffer, from, mid - from);
+			int left = from;
+			int right = mid;
+			int target = from;
+			while (left < mid && right < to) {
+				T leftElement = (T) buffer[left];
+				array[target++] = comparator.compare(array[right], leftElement) < 0 ? array[right++] : (T) buffer[left++];
+			}
+			System.arraycopy(buffer, left, array, target, mid - left);
+		}
+	}
+}
@@ -0,0 +1,539 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Een parallelle prefix scan (en gesegmenteerde reductie) voor primitive arrays, met fork/join.
+ * <p>
+ * Een (inclusive) prefix scan vervangt elk element door de reductie van alle elementen tot en met dat element:
+ * met optellen wordt [3, 1, 4, 1] dus [3, 4, 8, 9]. Het lijkt inherent sequentieel, maar kan in 2 passes
+ * parallel uitgevoerd worden (zie {@link ScanTree}): eerst de reductie per blok, daarna de scan per blok met de
+ * reductie van de blokken ervoor als startwaarde. De operator moet daarvoor associatief zijn,
+ * maar hoeft geen identiteit te hebben (zoals bij min en max).
+ * <p>
+ * Dit doet hetzelfde als {@link Arrays#parallelPrefix(int[], IntBinaryOperator)}, maar:
+ *  - je kiest zelf de threshold en de {@link ForkJoinPool}, net als bij {@link ParallelMergeSort};
+ *  - het eerste blok wordt al in de eerste pass gescand, omdat het geen prefix nodig heeft;
+ *  - er zijn gesegmenteerde varianten, waarbij de scan of reductie bij elk segment opnieuw begint.
+ * <p>
+ * Segmenten worden opgegeven als offsets, zoals in een CSR matrix: segment i is [offsets[i], offsets[i + 1]).
+ * De eerste offset is 0, de laatste is de lengte van de array, en lege segmenten zijn toegestaan.
+ * <p>
+ * Voor double is optellen niet precies associatief, dus kan het resultaat in de laatste bits afwijken van een
+ * sequentiële loop, net als bij {@link Arrays#parallelPrefix(double[], DoubleBinaryOperator)}.
+ */
+public final class ParallelScan
+{
+	/**
+	 * Onder dit aantal elementen wordt niet meer gesplitst.
+	 * Een blok doet weinig werk per element, dus de blokken zijn groter dan bij {@link ParallelMergeSort}.
+	 */
+	public static final int DEFAULT_THRESHOLD = 16384;
+
+	private ParallelScan()
+	{
+	}
+
+	public static void prefix(int[] array, IntBinaryOperator op)
+	{
+		prefix(array, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Vervang elk element door de reductie van alle elementen tot en met dat element.
+	 */
+	public static void prefix(int[] array, IntBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.run(new IntKernel(array, null, op, null), array.length, threshold, pool);
+	}
+
+	public static void prefix(long[] array, LongBinaryOperator op)
+	{
+		prefix(array, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void prefix(long[] array, LongBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.run(new LongKernel(array, null, op, null), array.length, threshold, pool);
+	}
+
+	public static void prefix(double[] array, DoubleBinaryOperator op)
+	{
+		prefix(array, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void prefix(double[] array, DoubleBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.run(new DoubleKernel(array, null, op, null), array.length, threshold, pool);
+	}
+
+	public static void segmentedPrefix(int[] array, int[] segmentOffsets, IntBinaryOperator op)
+	{
+		segmentedPrefix(array, segmentOffsets, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Een prefix scan die aan het begin van elk segment opnieuw begint.
+	 */
+	public static void segmentedPrefix(int[] array, int[] segmentOffsets, IntBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, array.length);
+		ScanTree.run(new IntKernel(array, segmentOffsets, op, null), array.length, threshold, pool);
+	}
+
+	public static void segmentedPrefix(long[] array, int[] segmentOffsets, LongBinaryOperator op)
+	{
+		segmentedPrefix(array, segmentOffsets, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void segmentedPrefix(long[] array, int[] segmentOffsets, LongBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, array.length);
+		ScanTree.run(new LongKernel(array, segmentOffsets, op, null), array.length, threshold, pool);
+	}
+
+	public static void segmentedPrefix(double[] array, int[] segmentOffsets, DoubleBinaryOperator op)
+	{
+		segmentedPrefix(array, segmentOffsets, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static void segmentedPrefix(double[] array, int[] segmentOffsets, DoubleBinaryOperator op, int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, array.length);
+		ScanTree.run(new DoubleKernel(array, segmentOffsets, op, null), array.length, threshold, pool);
+	}
+
+	public static int[] segmentedReduce(int[] values, int[] segmentOffsets, int identity, IntBinaryOperator op)
+	{
+		return segmentedReduce(values, segmentOffsets, identity, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * De reductie van elk segment, zonder de values te veranderen. Segmenten mogen over de grenzen van blokken heen
+	 * lopen, en een blok mag veel kleine segmenten bevatten.
+	 *
+	 * @param identity het resultaat voor een leeg segment.
+	 */
+	public static int[] segmentedReduce(int[] values, int[] segmentOffsets, int identity, IntBinaryOperator op,
+		int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, values.length);
+		int[] results = new int[segmentOffsets.length - 1];
+		for (int i = 0; i < results.length; i++) {
+			if (segmentOffsets[i] == segmentOffsets[i + 1]) {
+				results[i] = identity;
+			}
+		}
+		ScanTree.run(new IntKernel(values, segmentOffsets, op, results), values.length, threshold, pool);
+		return results;
+	}
+
+	public static long[] segmentedReduce(long[] values, int[] segmentOffsets, long identity, LongBinaryOperator op)
+	{
+		return segmentedReduce(values, segmentOffsets, identity, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static long[] segmentedReduce(long[] values, int[] segmentOffsets, long identity, LongBinaryOperator op,
+		int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, values.length);
+		long[] results = new long[segmentOffsets.length - 1];
+		for (int i = 0; i < results.length; i++) {
+			if (segmentOffsets[i] == segmentOffsets[i + 1]) {
+				results[i] = identity;
+			}
+		}
+		ScanTree.run(new LongKernel(values, segmentOffsets, op, results), values.length, threshold, pool);
+		return results;
+	}
+
+	public static double[] segmentedReduce(double[] values, int[] segmentOffsets, double identity, DoubleBinaryOperator op)
+	{
+		return segmentedReduce(values, segmentOffsets, identity, op, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	public static double[] segmentedReduce(double[] values, int[] segmentOffsets, double identity, DoubleBinaryOperator op,
+		int threshold, ForkJoinPool pool)
+	{
+		ScanTree.checkThreshold(threshold);
+		ScanTree.checkSegmentOffsets(segmentOffsets, values.length);
+		double[] results = new double[segmentOffsets.length - 1];
+		for (int i = 0; i < results.length; i++) {
+			if (segmentOffsets[i] == segmentOffsets[i + 1]) {
+				results[i] = identity;
+			}
+		}
+		ScanTree.run(new DoubleKernel(values, segmentOffsets, op, results), values.length, threshold, pool);
+		return results;
+	}
+
+	/**
+	 * Scant een int[] in place (als results null is), of schrijft de reductie van elk segment naar results.
+	 * Zonder segmentOffsets is de hele array 1 segment.
+	 */
+	private static final class IntKernel implements ScanTree.Kernel
+	{
+		private final int[] array;
+		private final int[] segmentOffsets;
+		private final IntBinaryOperator op;
+		private final int[] results;
+
+		private IntKernel(int[] array, int[] segmentOffsets, IntBinaryOperator op, int[] results)
+		{
+			this.array = array;
+			this.segmentOffsets = segmentOffsets;
+			this.op = op;
+			this.results = results;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			int sum = segmentOffsets == null ? run(from, to, false, 0, from == 0) : runSegmented(from, to, false, 0, false);
+			node.sum = sum;
+			node.reset = ScanTree.containsSegmentStart(segmentOffsets, from, to);
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			if (segmentOffsets == null) {
+				run(from, to, hasPrefix, (int) prefix, true);
+			}
+			else {
+				runSegmented(from, to, hasPrefix, (int) prefix, true);
+			}
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return op.applyAsInt((int) left, (int) right);
+		}
+
+		@Override
+		public boolean completesFirstBlock()
+		{
+			return true;
+		}
+
+		/**
+		 * Loop door [from, to) zonder segmenten, en geef de reductie terug.
+		 *
+		 * @param write of de scan weggeschreven moet worden (in de tweede pass, of voor het eerste blok).
+		 */
+		private int run(int from, int to, boolean hasPrefix, int prefix, boolean write)
+		{
+			int accumulator = hasPrefix ? op.applyAsInt(prefix, array[from]) : array[from];
+			if (write) {
+				array[from] = accumulator;
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsInt(accumulator, array[i]);
+					array[i] = accumulator;
+				}
+			}
+			else {
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsInt(accumulator, array[i]);
+				}
+			}
+			return accumulator;
+		}
+
+		/**
+		 * Loop door [from, to) met segmenten, en geef de reductie vanaf het laatste segment begin terug.
+		 * <p>
+		 * Alleen het eerste stuk van het blok kan bij een segment horen dat al voor het blok begonnen is, en alleen dat
+		 * stuk heeft de prefix nodig. De segmenten die in het blok beginnen worden dus al in de eerste pass afgemaakt,
+		 * en de tweede pass doet alleen het eerste stuk.
+		 */
+		private int runSegmented(int from, int to, boolean hasPrefix, int prefix, boolean secondPass)
+		{
+			int segment = ScanTree.segmentOf(segmentOffsets, from);
+			boolean continuesSegment = segmentOffsets[segment] < from;
+			if (secondPass && !continuesSegment) {
+				return prefix;
+			}
+			boolean hasAccumulator = hasPrefix && continuesSegment;
+			int accumulator = prefix;
+			int i = from;
+			while (i < to) {
+				int segmentEnd = segmentOffsets[segment + 1];
+				int end = Math.min(segmentEnd, to);
+				// In de eerste pass is de prefix van een doorlopend segment nog niet bekend, dus wordt dat stuk alleen opgeteld.
+				boolean write = secondPass || !continuesSegment;
+				if (!hasAccumulator) {
+					accumulator = array[i++];
+					hasAccumulator = true;
+				}
+				if (write && results == null) {
+					for (; i < end; i++) {
+						accumulator = op.applyAsInt(accumulator, array[i]);
+						array[i] = accumulator;
+					}
+				}
+				else {
+					for (; i < end; i++) {
+						accumulator = op.applyAsInt(accumulator, array[i]);
+					}
+				}
+				if (end == segmentEnd) {
+					if (write && results != null) {
+						results[segment] = accumulator;
+					}
+					// Ga naar het volgende segment, en sla lege segmenten over.
+					do {
+						segment++;
+					} while (segment + 1 < segmentOffsets.length && segmentOffsets[segment + 1] <= end);
+					hasAccumulator = false;
+				}
+				if (secondPass) {
+					break;
+				}
+				continuesSegment = false;
+			}
+			return accumulator;
+		}
+	}
+
+	/**
+	 * Scant een long[] in place, of schrijft de reductie van elk segment naar results, zie {@link IntKernel}.
+	 */
+	private static final class LongKernel implements ScanTree.Kernel
+	{
+		private final long[] array;
+		private final int[] segmentOffsets;
+		private final LongBinaryOperator op;
+		private final long[] results;
+
+		private LongKernel(long[] array, int[] segmentOffsets, LongBinaryOperator op, long[] results)
+		{
+			this.array = array;
+			this.segmentOffsets = segmentOffsets;
+			this.op = op;
+			this.results = results;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			long sum = segmentOffsets == null ? run(from, to, false, 0, from == 0) : runSegmented(from, to, false, 0, false);
+			node.sum = sum;
+			node.reset = ScanTree.containsSegmentStart(segmentOffsets, from, to);
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			if (segmentOffsets == null) {
+				run(from, to, hasPrefix, prefix, true);
+			}
+			else {
+				runSegmented(from, to, hasPrefix, prefix, true);
+			}
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return op.applyAsLong(left, right);
+		}
+
+		@Override
+		public boolean completesFirstBlock()
+		{
+			return true;
+		}
+
+		private long run(int from, int to, boolean hasPrefix, long prefix, boolean write)
+		{
+			long accumulator = hasPrefix ? op.applyAsLong(prefix, array[from]) : array[from];
+			if (write) {
+				array[from] = accumulator;
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsLong(accumulator, array[i]);
+					array[i] = accumulator;
+				}
+			}
+			else {
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsLong(accumulator, array[i]);
+				}
+			}
+			return accumulator;
+		}
+
+		private long runSegmented(int from, int to, boolean hasPrefix, long prefix, boolean secondPass)
+		{
+			int segment = ScanTree.segmentOf(segmentOffsets, from);
+			boolean continuesSegment = segmentOffsets[segment] < from;
+			if (secondPass && !continuesSegment) {
+				return prefix;
+			}
+			boolean hasAccumulator = hasPrefix && continuesSegment;
+			long accumulator = prefix;
+			int i = from;
+			while (i < to) {
+				int segmentEnd = segmentOffsets[segment + 1];
+				int end = Math.min(segmentEnd, to);
+				boolean write = secondPass || !continuesSegment;
+				if (!hasAccumulator) {
+					accumulator = array[i++];
+					hasAccumulator = true;
+				}
+				if (write && results == null) {
+					for (; i < end; i++) {
+						accumulator = op.applyAsLong(accumulator, array[i]);
+						array[i] = accumulator;
+					}
+				}
+				else {
+					for (; i < end; i++) {
+						accumulator = op.applyAsLong(accumulator, array[i]);
+					}
+				}
+				if (end == segmentEnd) {
+					if (write && results != null) {
+						results[segment] = accumulator;
+					}
+					do {
+						segment++;
+					} while (segment + 1 < segmentOffsets.length && segmentOffsets[segment + 1] <= end);
+					hasAccumulator = false;
+				}
+				if (secondPass) {
+					break;
+				}
+				continuesSegment = false;
+			}
+			return accumulator;
+		}
+	}
+
+	/**
+	 * Scant een double[] in place, of schrijft de reductie van elk segment naar results, zie {@link IntKernel}.
+	 * De waardes gaan als bits door de boom.
+	 */
+	private static final class DoubleKernel implements ScanTree.Kernel
+	{
+		private final double[] array;
+		private final int[] segmentOffsets;
+		private final DoubleBinaryOperator op;
+		private final double[] results;
+
+		private DoubleKernel(double[] array, int[] segmentOffsets, DoubleBinaryOperator op, double[] results)
+		{
+			this.array = array;
+			this.segmentOffsets = segmentOffsets;
+			this.op = op;
+			this.results = results;
+		}
+
+		@Override
+		public void reduce(int from, int to, ScanTree.Node node)
+		{
+			double sum = segmentOffsets == null ? run(from, to, false, 0, from == 0) : runSegmented(from, to, false, 0, false);
+			node.sum = Double.doubleToRawLongBits(sum);
+			node.reset = ScanTree.containsSegmentStart(segmentOffsets, from, to);
+		}
+
+		@Override
+		public void apply(int from, int to, boolean hasPrefix, long prefix)
+		{
+			if (segmentOffsets == null) {
+				run(from, to, hasPrefix, Double.longBitsToDouble(prefix), true);
+			}
+			else {
+				runSegmented(from, to, hasPrefix, Double.longBitsToDouble(prefix), true);
+			}
+		}
+
+		@Override
+		public long combine(long left, long right)
+		{
+			return Double.doubleToRawLongBits(op.applyAsDouble(Double.longBitsToDouble(left), Double.longBitsToDouble(right)));
+		}
+
+		@Override
+		public boolean completesFirstBlock()
+		{
+			return true;
+		}
+
+		private double run(int from, int to, boolean hasPrefix, double prefix, boolean write)
+		{
+			double accumulator = hasPrefix ? op.applyAsDouble(prefix, array[from]) : array[from];
+			if (write) {
+				array[from] = accumulator;
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsDouble(accumulator, array[i]);
+					array[i] = accumulator;
+				}
+			}
+			else {
+				for (int i = from + 1; i < to; i++) {
+					accumulator = op.applyAsDouble(accumulator, array[i]);
+				}
+			}
+			return accumulator;
+		}
+
+		private double runSegmented(int from, int to, boolean hasPrefix, double prefix, boolean secondPass)
+		{
+			int segment = ScanTree.segmentOf(segmentOffsets, from);
+			boolean continuesSegment = segmentOffsets[segment] < from;
+			if (secondPass && !continuesSegment) {
+				return prefix;
+			}
+			boolean hasAccumulator = hasPrefix && continuesSegment;
+			double accumulator = prefix;
+			int i = from;
+			while (i < to) {
+				int segmentEnd = segmentOffsets[segment + 1];
+				int end = Math.min(segmentEnd, to);
+				boolean write = secondPass || !continuesSegment;
+				if (!hasAccumulator) {
+					accumulator = array[i++];
+					hasAccumulator = true;
+				}
+				if (write && results == null) {
+					for (; i < end; i++) {
+						accumulator = op.applyAsDouble(accumulator, array[i]);
+						array[i] = accumulator;
+					}
+				}
+				else {
+					for (; i < end; i++) {
+						accumulator = op.applyAsDouble(accumulator, array[i]);
+					}
+				}
+				if (end == segmentEnd) {
+					if (write && results != null) {
+						results[segment] = accumulator;
+					}
+					do {
+						segment++;
+					} while (segment + 1 < segmentOffsets.length && segmentOffsets[segment + 1] <= end);
+					hasAccumulator = false;
+				}
+				if (secondPass) {
+					break;
+				}
+				continuesSegment = false;
+			}
+			return accumulator;
+		}
+	}
+}
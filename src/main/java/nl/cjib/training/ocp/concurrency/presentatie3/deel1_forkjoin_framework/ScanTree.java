@@ -0,0 +1,229 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * De boom van deeltaken voor een parallelle scan in 2 passes, gedeeld door {@link ParallelScan} en {@link ParallelCompaction}.
+ * <p>
+ * De array wordt gesplitst in blokken van hoogstens threshold elementen:
+ *  - in de eerste pass berekent elk blok zijn eigen reductie (bijvoorbeeld de som), en worden die in de boom
+ *    naar boven toe gecombineerd;
+ *  - in de tweede pass krijgt elk blok van boven de reductie van alles wat ervoor staat (de prefix) mee,
+ *    en kan het zijn eigen elementen afmaken.
+ * Elke knoop onthoudt zijn reductie uit de eerste pass, zodat de tweede pass niets opnieuw hoeft te berekenen.
+ * <p>
+ * Voor gesegmenteerde operaties kan een blok aangeven dat er een segment in begint (reset). De prefix van links
+ * loopt dan niet verder door dan het begin van dat segment. De segmenten worden opgegeven als offsets:
+ * segment i is [offsets[i], offsets[i + 1]), met offsets[0] == 0 en de laatste offset gelijk aan de lengte.
+ * <p>
+ * Waardes worden als long doorgegeven, voor een int[] of double[] zetten de kernels ze zelf om.
+ */
+final class ScanTree
+{
+	/**
+	 * Het werk dat per blok gedaan moet worden.
+	 */
+	interface Kernel
+	{
+		/**
+		 * Eerste pass voor het blok [from, to): zet node.sum op de reductie vanaf het laatste segment begin in het blok
+		 * (of van het hele blok), en node.reset op true als er een segment in het blok begint.
+		 */
+		void reduce(int from, int to, Node node);
+
+		/**
+		 * Tweede pass voor het blok [from, to).
+		 *
+		 * @param hasPrefix false voor het eerste blok, dat geen prefix heeft.
+		 */
+		void apply(int from, int to, boolean hasPrefix, long prefix);
+
+		/**
+		 * De reductie van 2 opeenvolgende delen. Moet associatief zijn.
+		 */
+		long combine(long left, long right);
+
+		/**
+		 * Of reduce voor het eerste blok (dat geen prefix nodig heeft) ook meteen de tweede pass doet.
+		 * Dat blok wordt dan in de tweede pass overgeslagen.
+		 */
+		default boolean completesFirstBlock()
+		{
+			return false;
+		}
+
+		/**
+		 * Wordt tussen de 2 passes aangeroepen, met de reductie van de hele array in root.sum.
+		 */
+		default void betweenPasses(Node root)
+		{
+		}
+	}
+
+	static final class Node
+	{
+		final int from;
+		final int to;
+		Node left;
+		Node right;
+		long sum;
+		boolean reset;
+
+		private Node(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	private ScanTree()
+	{
+	}
+
+	/**
+	 * Voer beide passes uit over [0, length). Tot en met threshold elementen gebeurt dat in de huidige thread.
+	 *
+	 * @return de wortel van de boom, met de reductie van de hele array.
+	 */
+	static Node run(Kernel kernel, int length, int threshold, ForkJoinPool pool)
+	{
+		Node root = new Node(0, length);
+		if (length == 0) {
+			kernel.betweenPasses(root);
+			return root;
+		}
+		if (length <= threshold) {
+			kernel.reduce(0, length, root);
+			kernel.betweenPasses(root);
+			if (!kernel.completesFirstBlock()) {
+				kernel.apply(0, length, false, 0);
+			}
+			return root;
+		}
+		pool.invoke(new UpSweep(kernel, root, threshold));
+		kernel.betweenPasses(root);
+		pool.invoke(new DownSweep(kernel, root, false, 0));
+		return root;
+	}
+
+	static void checkThreshold(int threshold)
+	{
+		if (threshold < 1) {
+			throw new IllegalArgumentException("threshold must be at least 1, but was " + threshold);
+		}
+	}
+
+	/**
+	 * Controleer dat de offsets de hele array van de gegeven lengte in segmenten verdelen.
+	 */
+	static void checkSegmentOffsets(int[] segmentOffsets, int length)
+	{
+		if (segmentOffsets.length == 0 || segmentOffsets[0] != 0 || segmentOffsets[segmentOffsets.length - 1] != length) {
+			throw new IllegalArgumentException("segmentOffsets must start with 0 and end with the array length " + length);
+		}
+		for (int i = 1; i < segmentOffsets.length; i++) {
+			if (segmentOffsets[i] < segmentOffsets[i - 1]) {
+				throw new IllegalArgumentException("segmentOffsets must not decrease, but offset " + i + " is "
+					+ segmentOffsets[i] + " after " + segmentOffsets[i - 1]);
+			}
+		}
+	}
+
+	/**
+	 * Het segment waar index in valt. Lege segmenten op dezelfde plek worden overgeslagen.
+	 */
+	static int segmentOf(int[] segmentOffsets, int index)
+	{
+		int low = 0;
+		int high = segmentOffsets.length - 2;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (segmentOffsets[mid] <= index) {
+				low = mid;
+			}
+			else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Of er een segment begint in [from, to). Zonder offsets is er maar 1 segment, dat begint voor elk blok.
+	 */
+	static boolean containsSegmentStart(int[] segmentOffsets, int from, int to)
+	{
+		if (segmentOffsets == null) {
+			return false;
+		}
+		int segment = segmentOf(segmentOffsets, from);
+		return segmentOffsets[segment] == from || segmentOffsets[segment + 1] < to;
+	}
+
+	private static final class UpSweep extends RecursiveAction
+	{
+		private final Kernel kernel;
+		private final Node node;
+		private final int threshold;
+
+		private UpSweep(Kernel kernel, Node node, int threshold)
+		{
+			this.kernel = kernel;
+			this.node = node;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (node.to - node.from <= threshold) {
+				kernel.reduce(node.from, node.to, node);
+				return;
+			}
+			int mid = (node.from + node.to) >>> 1;
+			Node left = new Node(node.from, mid);
+			Node right = new Node(mid, node.to);
+			node.left = left;
+			node.right = right;
+			ForkJoinTask.invokeAll(new UpSweep(kernel, left, threshold), new UpSweep(kernel, right, threshold));
+			// Als er rechts een segment begint, telt alles links daarvan niet mee.
+			node.sum = right.reset ? right.sum : kernel.combine(left.sum, right.sum);
+			node.reset = left.reset || right.reset;
+		}
+	}
+
+	private static final class DownSweep extends RecursiveAction
+	{
+		private final Kernel kernel;
+		private final Node node;
+		private final boolean hasPrefix;
+		private final long prefix;
+
+		private DownSweep(Kernel kernel, Node node, boolean hasPrefix, long prefix)
+		{
+			this.kernel = kernel;
+			this.node = node;
+			this.hasPrefix = hasPrefix;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute()
+		{
+			Node left = node.left;
+			if (left == null) {
+				if (node.from != 0 || !kernel.completesFirstBlock()) {
+					kernel.apply(node.from, node.to, hasPrefix, prefix);
+				}
+				return;
+			}
+			// De prefix van rechts is alles voor links, gevolgd door links zelf.
+			long rightPrefix = !hasPrefix || left.reset ? left.sum : kernel.combine(prefix, left.sum);
+			ForkJoinTask.invokeAll(
+				new DownSweep(kernel, left, hasPrefix, prefix),
+				new DownSweep(kernel, node.right, true, rightPrefix));
+		}
+	}
+}
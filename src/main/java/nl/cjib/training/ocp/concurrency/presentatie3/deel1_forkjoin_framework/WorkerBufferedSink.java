@@ -0,0 +1,79 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel1_forkjoin_framework;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Een output sink waarbij elke worker thread in zijn eigen buffer schrijft.
+ * <p>
+ * Als alle workers direct naar {@link System#out} printen, dan moeten ze allemaal wachten op de lock van de
+ * {@link PrintStream}. Met deze sink schrijft een worker alleen naar zijn eigen buffer, dus zonder contention.
+ * Pas bij {@link #flush(PrintStream, boolean)} wordt alles in een keer weggeschreven.
+ * <p>
+ * Elk stuk tekst wordt opgeslagen met een volgnummer (bijvoorbeeld de index van het eerste element),
+ * zodat bij het flushen gekozen kan worden om de oorspronkelijke volgorde te herstellen.
+ * <p>
+ * Let op: flush mag pas aangeroepen worden als alle workers klaar zijn met schrijven,
+ * bijvoorbeeld nadat {@link java.util.concurrent.ForkJoinPool#invoke} teruggekomen is.
+ */
+public class WorkerBufferedSink
+{
+	// De buffer per worker thread. Flush gooit ze weg, zodat de workers daarna niets van deze sink meer vasthouden.
+	private final Map<Thread, List<Chunk>> buffers = new ConcurrentHashMap<>();
+
+	/**
+	 * Voeg een stuk tekst toe aan de buffer van de huidige thread.
+	 */
+	public void append(long order, CharSequence text)
+	{
+		Thread thread = Thread.currentThread();
+		List<Chunk> buffer = buffers.get(thread);
+		if (buffer == null) {
+			// Alleen de thread zelf maakt zijn buffer aan, dus er kan er geen tussendoor gekomen zijn.
+			buffer = new ArrayList<>();
+			buffers.put(thread, buffer);
+		}
+		buffer.add(new Chunk(order, text));
+	}
+
+	/**
+	 * Schrijf alle buffers weg naar de gegeven {@link PrintStream} en gooi ze daarna weg.
+	 *
+	 * @param ordered als true, dan worden de stukken tekst op volgnummer gesorteerd.
+	 *                Als false, dan wordt elke buffer in zijn geheel weggeschreven, in willekeurige volgorde.
+	 */
+	public void flush(PrintStream out, boolean ordered)
+	{
+		List<Chunk> chunks = new ArrayList<>();
+		for (List<Chunk> buffer : buffers.values()) {
+			chunks.addAll(buffer);
+		}
+		buffers.clear();
+		if (ordered) {
+			chunks.sort(Comparator.comparingLong(chunk -> chunk.order));
+		}
+		// De lock van de PrintStream wordt nu maar 1 keer gepakt, in plaats van voor elke regel.
+		synchronized (out) {
+			for (Chunk chunk : chunks) {
+				out.append(chunk.text);
+			}
+			out.flush();
+		}
+	}
+
+	private static class Chunk
+	{
+		private final long order;
+		private final CharSequence text;
+
+		private Chunk(long order, CharSequence text)
+		{
+			this.order = order;
+			this.text = text;
+		}
+	}
+}
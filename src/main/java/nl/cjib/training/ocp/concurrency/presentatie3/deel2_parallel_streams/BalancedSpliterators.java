@@ -0,0 +1,295 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link Spliterator}s voor ranges en arrays waarbij je bepaalt hoe ze gesplitst worden.
+ * <p>
+ * Een parallele stream splitst zijn bron steeds in 2 helften met hetzelfde aantal elementen.
+ * Als sommige elementen veel meer werk kosten dan andere (een scheve verdeling), krijgt de ene thread
+ * dan veel meer werk dan de andere, en moet de rest op die ene thread wachten.
+ * <p>
+ * Met deze spliterators kan je:
+ * <ul>
+ *     <li>een minimale grootte opgeven, zodat er niet gesplitst wordt in stukken die te klein zijn om de moeite waard te zijn;</li>
+ *     <li>een kostenfunctie opgeven, waarmee gesplitst wordt in 2 helften met evenveel werk in plaats van evenveel elementen.</li>
+ * </ul>
+ * De kostenfunctie wordt 1 keer per element aangeroepen bij het aanmaken, en hoeft alleen een schatting te zijn.
+ * De cumulatieve kosten worden opgeslagen, zodat een split daarna met binair zoeken het midden vindt.
+ * <p>
+ * Een parallele stream splitst alleen zolang estimateSize boven (aantal elementen) / (4 * parallelism) ligt.
+ * Een gewogen spliterator geeft daarom een grootte die evenredig is met zijn kosten: een duur deel met weinig elementen
+ * wordt zo verder gesplitst, en een goedkoop deel met veel elementen niet. Die grootte is geen exact aantal,
+ * dus gewogen spliterators zijn niet {@link Spliterator#SIZED}.
+ */
+public final class BalancedSpliterators
+{
+	private BalancedSpliterators()
+	{
+	}
+
+	/**
+	 * Een parallele IntStream over [from, to) die in gelijke aantallen gesplitst wordt, tot minimaal minSplitSize elementen.
+	 */
+	public static IntStream range(int from, int to, int minSplitSize)
+	{
+		return StreamSupport.intStream(new IntRangeSpliterator(from, 0, rangeSize(from, to), minSplitSize, null), true);
+	}
+
+	/**
+	 * Een parallele IntStream over [from, to) die gesplitst wordt in delen met gelijke kosten.
+	 *
+	 * @param cost de geschatte kosten van het verwerken van een waarde (niet negatief).
+	 */
+	public static IntStream weightedRange(int from, int to, int minSplitSize, IntToLongFunction cost)
+	{
+		int size = rangeSize(from, to);
+		long[] prefixCost = prefixCost(size, i -> cost.applyAsLong(from + i));
+		return StreamSupport.intStream(new IntRangeSpliterator(from, 0, size, minSplitSize, prefixCost), true);
+	}
+
+	/**
+	 * Een parallele Stream over de array die in gelijke aantallen gesplitst wordt, tot minimaal minSplitSize elementen.
+	 */
+	public static <T> Stream<T> array(T[] array, int minSplitSize)
+	{
+		return StreamSupport.stream(new ArraySpliterator<>(array, 0, array.length, minSplitSize, null), true);
+	}
+
+	/**
+	 * Een parallele Stream over de array die gesplitst wordt in delen met gelijke kosten.
+	 *
+	 * @param cost de geschatte kosten van het verwerken van een element (niet negatief).
+	 */
+	public static <T> Stream<T> weightedArray(T[] array, int minSplitSize, ToLongFunction<? super T> cost)
+	{
+		long[] prefixCost = prefixCost(array.length, i -> cost.applyAsLong(array[i]));
+		return StreamSupport.stream(new ArraySpliterator<>(array, 0, array.length, minSplitSize, prefixCost), true);
+	}
+
+	/**
+	 * Het aantal waarden in [from, to). Dat moet in een int passen, omdat de indexen ints zijn.
+	 */
+	private static int rangeSize(int from, int to)
+	{
+		long size = (long) to - from;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The range [" + from + ", " + to + ") has more than " + Integer.MAX_VALUE + " values");
+		}
+		return (int) Math.max(0L, size);
+	}
+
+	/**
+	 * prefixCost[i] is de som van de kosten van de elementen 0 tot i, dus de kosten van [lo, hi) zijn
+	 * prefixCost[hi] - prefixCost[lo].
+	 */
+	private static long[] prefixCost(int size, IntToLongFunction cost)
+	{
+		long[] prefixCost = new long[size + 1];
+		for (int i = 0; i < size; i++) {
+			long c = cost.applyAsLong(i);
+			if (c < 0) {
+				throw new IllegalArgumentException("cost must not be negative, but was " + c + " at index " + i);
+			}
+			prefixCost[i + 1] = prefixCost[i] + c;
+		}
+		return prefixCost;
+	}
+
+	/**
+	 * Het punt waarop [lo, hi) gesplitst wordt, of -1 als het deel te klein is.
+	 */
+	private static int splitPoint(int lo, int hi, int minSplitSize, long[] prefixCost)
+	{
+		int minSize = Math.max(1, minSplitSize);
+		if ((hi - lo) / 2 < minSize) {
+			return -1;
+		}
+		int mid;
+		if (prefixCost == null) {
+			mid = lo + (hi - lo) / 2;
+		}
+		else {
+			// Zoek het eerste punt waarop de helft van de kosten van dit deel bereikt is.
+			long target = prefixCost[lo] + (prefixCost[hi] - prefixCost[lo]) / 2;
+			int index = Arrays.binarySearch(prefixCost, lo, hi + 1, target);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			else {
+				// Bij elementen zonder kosten kunnen meerdere punten gelijk zijn, neem het eerste.
+				while (index > lo && prefixCost[index - 1] == target) {
+					index--;
+				}
+			}
+			mid = index;
+		}
+		return Math.max(lo + minSize, Math.min(hi - minSize, mid));
+	}
+
+	/**
+	 * De grootte van [lo, hi) voor estimateSize: het aantal elementen, of bij kosten het deel van het totale aantal
+	 * elementen dat overeenkomt met het deel van de totale kosten.
+	 */
+	private static long estimateSize(int lo, int hi, long[] prefixCost)
+	{
+		if (prefixCost == null || lo >= hi) {
+			return hi - lo;
+		}
+		int size = prefixCost.length - 1;
+		long totalCost = prefixCost[size];
+		if (totalCost == 0) {
+			return hi - lo;
+		}
+		double share = (double) (prefixCost[hi] - prefixCost[lo]) / totalCost;
+		// Minimaal 1, want er zijn nog elementen over.
+		return Math.max(1L, Math.round(share * size));
+	}
+
+	private static final class IntRangeSpliterator implements Spliterator.OfInt
+	{
+		private final int offset;
+		private final int minSplitSize;
+		private final long[] prefixCost;
+		// Indexen ten opzichte van offset, zodat ze overeenkomen met prefixCost.
+		private int lo;
+		private final int hi;
+
+		private IntRangeSpliterator(int offset, int lo, int hi, int minSplitSize, long[] prefixCost)
+		{
+			this.offset = offset;
+			this.lo = lo;
+			this.hi = hi;
+			this.minSplitSize = minSplitSize;
+			this.prefixCost = prefixCost;
+		}
+
+		@Override
+		public OfInt trySplit()
+		{
+			int mid = splitPoint(lo, hi, minSplitSize, prefixCost);
+			if (mid < 0) {
+				return null;
+			}
+			IntRangeSpliterator prefix = new IntRangeSpliterator(offset, lo, mid, minSplitSize, prefixCost);
+			lo = mid;
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(IntConsumer action)
+		{
+			Objects.requireNonNull(action);
+			if (lo < hi) {
+				action.accept(offset + lo++);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(IntConsumer action)
+		{
+			Objects.requireNonNull(action);
+			int end = hi;
+			for (int i = lo; i < end; i++) {
+				action.accept(offset + i);
+			}
+			lo = end;
+		}
+
+		@Override
+		public long estimateSize()
+		{
+			return BalancedSpliterators.estimateSize(lo, hi, prefixCost);
+		}
+
+		@Override
+		public int characteristics()
+		{
+			int characteristics = ORDERED | IMMUTABLE | NONNULL | DISTINCT | SORTED;
+			return prefixCost == null ? characteristics | SIZED | SUBSIZED : characteristics;
+		}
+
+		@Override
+		public Comparator<? super Integer> getComparator()
+		{
+			// SORTED in natuurlijke volgorde.
+			return null;
+		}
+	}
+
+	private static final class ArraySpliterator<T> implements Spliterator<T>
+	{
+		private final T[] array;
+		private final int minSplitSize;
+		private final long[] prefixCost;
+		private int lo;
+		private final int hi;
+
+		private ArraySpliterator(T[] array, int lo, int hi, int minSplitSize, long[] prefixCost)
+		{
+			this.array = array;
+			this.lo = lo;
+			this.hi = hi;
+			this.minSplitSize = minSplitSize;
+			this.prefixCost = prefixCost;
+		}
+
+		@Override
+		public Spliterator<T> trySplit()
+		{
+			int mid = splitPoint(lo, hi, minSplitSize, prefixCost);
+			if (mid < 0) {
+				return null;
+			}
+			ArraySpliterator<T> prefix = new ArraySpliterator<>(array, lo, mid, minSplitSize, prefixCost);
+			lo = mid;
+			return prefix;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action)
+		{
+			Objects.requireNonNull(action);
+			if (lo < hi) {
+				action.accept(array[lo++]);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action)
+		{
+			Objects.requireNonNull(action);
+			int end = hi;
+			for (int i = lo; i < end; i++) {
+				action.accept(array[i]);
+			}
+			lo = end;
+		}
+
+		@Override
+		public long estimateSize()
+		{
+			return BalancedSpliterators.estimateSize(lo, hi, prefixCost);
+		}
+
+		@Override
+		public int characteristics()
+		{
+			return prefixCost == null ? ORDERED | SIZED | SUBSIZED : ORDERED;
+		}
+	}
+}
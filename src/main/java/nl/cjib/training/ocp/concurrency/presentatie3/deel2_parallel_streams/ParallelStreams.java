@@ -1,13 +1,22 @@
 package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * In contrast met de standaard seriële streams, bied java ook een manier om parallele streams te maken.
  * Hierbij worden meerdere threads benut om streams te verwerken.
+ * <p>
+ * Parallele streams draaien standaard op de common {@link ForkJoinPool}. Met {@link StreamPools} kan je ze
+ * op een eigen pool uitvoeren, en met {@link BalancedSpliterators} bepaal je hoe de bron gesplitst wordt.
+ * {@link PrimitiveCollectors} verzamelt het resultaat zonder boxing in een int[] of long[], en {@link UnorderedPipelines}
+ * laat de volgorde los als het resultaat die niet nodig heeft.
  */
 public class ParallelStreams
 {
@@ -59,6 +68,12 @@ public class ParallelStreams
 		integers.stream().unordered().parallel().forEach(x -> System.out.print(x + " "));
 		System.out.println();
 
+		// unordered() helpt alleen voor de stappen erna, dus moet vooraan in de pipeline staan.
+		// UnorderedPipelines doet dat voor distinct automatisch als het eindresultaat (hier een Set) geen volgorde nodig heeft.
+		Set<Integer> distinctRemainders = UnorderedPipelines.collectDistinct(integers.parallelStream(),
+			x -> x % 2 == 0, x -> x % 5, Collectors.toSet());
+		System.out.println(distinctRemainders);
+
 		// PROBEER SIDE EFFECTS TE VOORKOMEN!
 		// Hieronder zie je dat er geen garanties zijn in welke volgorde de map() wordt uitgevoerd
 		// Zelfs als er aan het eind forEachOrdered gebruikt wordt.
@@ -103,5 +118,24 @@ public class ParallelStreams
 
 		System.out.println(listCopy);
 
+		// Die ArrayList slaat elke waarde op als Integer, en kopieert bij elke combine de hele rechter lijst.
+		// PrimitiveCollectors verzamelt in int[] stukken en kopieert pas aan het eind alles 1 keer naar 1 array.
+		int[] arrayCopy = integers.parallelStream()
+			.collect(PrimitiveCollectors.toIntArray(Integer::intValue));
+		System.out.println(Arrays.toString(arrayCopy));
+
+		// Een parallele stream kan ook op een eigen ForkJoinPool uitgevoerd worden,
+		// zoals de fiveThreadForkJoinPool uit ForkJoinFramework, zodat hij de common pool niet bezet houdt.
+		// Hier wordt de bron bovendien gesplitst op basis van de kosten per element:
+		// het werk voor x groeit met x, dus de eerste helft van de kosten bevat veel meer elementen dan de tweede.
+		ForkJoinPool fiveThreadForkJoinPool = new ForkJoinPool(5);
+		long weightedSum = StreamPools.invoke(fiveThreadForkJoinPool,
+			() -> BalancedSpliterators.weightedRange(1, 13, 1, x -> x)
+				.peek(x -> System.out.println(x + " " + Thread.currentThread().getName()))
+				.asLongStream()
+				.sum());
+		System.out.println("Sum: " + weightedSum);
+		fiveThreadForkJoinPool.shutdown();
+
 	}
 }
@@ -0,0 +1,494 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Collector}s die de elementen van een (parallele) stream als int of long in een array verzamelen.
+ * <p>
+ * {@code collect(ArrayList::new, ArrayList::add, ArrayList::addAll)} of {@link Collectors#toList()} heeft in een
+ * parallele stream 2 nadelen: elke waarde wordt als {@link Integer} opgeslagen, en bij elke combine wordt de rechter
+ * lijst achter de linker gekopieerd. Omdat er log(n) niveaus van combines zijn, wordt elk element dus log(n) keer
+ * gekopieerd.
+ * <p>
+ * De collectors hier lossen dat op 2 manieren op:
+ * <ul>
+ *     <li>{@link #toIntArray(ToIntFunction)} en {@link #toLongArray(ToLongFunction)} verzamelen per deeltaak in
+ *     primitieve arrays (leaves). Een combine hangt de leaves van rechts achter die van links, zonder iets te kopiëren.
+ *     Pas aan het eind wordt alles 1 keer naar de uiteindelijke array gekopieerd. De volgorde blijft behouden.</li>
+ *     <li>{@link #toIntArrayConcurrent(ToIntFunction, int)} en {@link #toLongArrayConcurrent(ToLongFunction, int)}
+ *     schrijven met alle threads in 1 gedeelde array. Elke thread claimt daarin steeds een blok, zodat threads
+ *     niet voor elk element op dezelfde teller hoeven te wachten. Er is geen combine, maar de volgorde gaat verloren.</li>
+ * </ul>
+ */
+public final class PrimitiveCollectors
+{
+	/**
+	 * Standaard grootte van de eerste leaf van een deeltaak.
+	 */
+	public static final int DEFAULT_LEAF_CAPACITY = 1024;
+
+	/**
+	 * Het aantal plekken dat een thread in 1 keer claimt in een gedeelde array.
+	 */
+	private static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Een leaf wordt niet groter dan dit, zodat een deeltaak met veel elementen niet 1 enorme array hoeft te vergroten.
+	 */
+	private static final int MAX_LEAF_CAPACITY = 1 << 16;
+
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private PrimitiveCollectors()
+	{
+	}
+
+	/**
+	 * Verzamel in een int[], in de volgorde van de stream.
+	 */
+	public static <T> Collector<T, ?, int[]> toIntArray(ToIntFunction<? super T> mapper)
+	{
+		return toIntArray(mapper, DEFAULT_LEAF_CAPACITY);
+	}
+
+	/**
+	 * Verzamel in een int[], in de volgorde van de stream.
+	 *
+	 * @param leafCapacity de grootte van de eerste leaf van elke deeltaak. Als je ongeveer weet hoeveel elementen een
+	 *                     deeltaak krijgt (het aantal elementen gedeeld door een paar keer het aantal threads),
+	 *                     past alles in 1 leaf.
+	 */
+	public static <T> Collector<T, ?, int[]> toIntArray(ToIntFunction<? super T> mapper, int leafCapacity)
+	{
+		checkCapacity(leafCapacity, "leafCapacity");
+		return Collector.of(
+			() -> new IntLeaves(leafCapacity),
+			(leaves, element) -> leaves.add(mapper.applyAsInt(element)),
+			IntLeaves::append,
+			IntLeaves::toArray);
+	}
+
+	/**
+	 * Verzamel in een long[], in de volgorde van de stream.
+	 */
+	public static <T> Collector<T, ?, long[]> toLongArray(ToLongFunction<? super T> mapper)
+	{
+		return toLongArray(mapper, DEFAULT_LEAF_CAPACITY);
+	}
+
+	/**
+	 * Verzamel in een long[], in de volgorde van de stream.
+	 *
+	 * @param leafCapacity zie {@link #toIntArray(ToIntFunction, int)}.
+	 */
+	public static <T> Collector<T, ?, long[]> toLongArray(ToLongFunction<? super T> mapper, int leafCapacity)
+	{
+		checkCapacity(leafCapacity, "leafCapacity");
+		return Collector.of(
+			() -> new LongLeaves(leafCapacity),
+			(leaves, element) -> leaves.add(mapper.applyAsLong(element)),
+			LongLeaves::append,
+			LongLeaves::toArray);
+	}
+
+	/**
+	 * Verzamel met alle threads tegelijk in 1 gedeelde int[], in willekeurige volgorde.
+	 *
+	 * @param capacity het maximale aantal elementen. Als de stream meer elementen heeft, wordt een
+	 *                 {@link IllegalStateException} gegooid: zodra de threads samen meer dan capacity elementen hebben
+	 *                 toegevoegd, of anders bij het afronden.
+	 */
+	public static <T> Collector<T, ?, int[]> toIntArrayConcurrent(ToIntFunction<? super T> mapper, int capacity)
+	{
+		checkCapacity(capacity, "capacity");
+		return Collector.of(
+			() -> new SharedIntBuffer(capacity),
+			(buffer, element) -> buffer.add(mapper.applyAsInt(element)),
+			SharedIntBuffer::append,
+			SharedIntBuffer::toArray,
+			Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED);
+	}
+
+	/**
+	 * Verzamel met alle threads tegelijk in 1 gedeelde long[], in willekeurige volgorde.
+	 *
+	 * @param capacity zie {@link #toIntArrayConcurrent(ToIntFunction, int)}.
+	 */
+	public static <T> Collector<T, ?, long[]> toLongArrayConcurrent(ToLongFunction<? super T> mapper, int capacity)
+	{
+		checkCapacity(capacity, "capacity");
+		return Collector.of(
+			() -> new SharedLongBuffer(capacity),
+			(buffer, element) -> buffer.add(mapper.applyAsLong(element)),
+			SharedLongBuffer::append,
+			SharedLongBuffer::toArray,
+			Collector.Characteristics.CONCURRENT, Collector.Characteristics.UNORDERED);
+	}
+
+	private static void checkCapacity(int capacity, String name)
+	{
+		if (capacity < 1 || capacity > MAX_ARRAY_SIZE) {
+			throw new IllegalArgumentException(name + " must be between 1 and " + MAX_ARRAY_SIZE + ", but was " + capacity);
+		}
+	}
+
+	private static int nextLeafCapacity(int current)
+	{
+		return Math.max(current, Math.min(MAX_LEAF_CAPACITY, current * 2));
+	}
+
+	private static int checkedSize(long size)
+	{
+		if (size > MAX_ARRAY_SIZE) {
+			throw new IllegalStateException("Too many elements for an array: " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Een linked list van gevulde int[] leaves. Een append koppelt alleen de lijsten aan elkaar.
+	 */
+	private static final class IntLeaves
+	{
+		private final int firstCapacity;
+		private IntLeaf first;
+		private IntLeaf last;
+		private long size;
+
+		private IntLeaves(int firstCapacity)
+		{
+			this.firstCapacity = firstCapacity;
+		}
+
+		private void add(int value)
+		{
+			IntLeaf leaf = last;
+			if (leaf == null || leaf.size == leaf.values.length) {
+				leaf = new IntLeaf(leaf == null ? firstCapacity : nextLeafCapacity(leaf.values.length));
+				if (last == null) {
+					first = leaf;
+				}
+				else {
+					last.next = leaf;
+				}
+				last = leaf;
+			}
+			leaf.values[leaf.size++] = value;
+			size++;
+		}
+
+		private IntLeaves append(IntLeaves other)
+		{
+			if (other.first == null) {
+				return this;
+			}
+			if (first == null) {
+				return other;
+			}
+			last.next = other.first;
+			last = other.last;
+			size += other.size;
+			return this;
+		}
+
+		private int[] toArray()
+		{
+			if (first != null && first == last && first.size == first.values.length) {
+				return first.values;
+			}
+			int[] result = new int[checkedSize(size)];
+			int offset = 0;
+			for (IntLeaf leaf = first; leaf != null; leaf = leaf.next) {
+				System.arraycopy(leaf.values, 0, result, offset, leaf.size);
+				offset += leaf.size;
+			}
+			return result;
+		}
+	}
+
+	private static final class IntLeaf
+	{
+		private final int[] values;
+		private int size;
+		private IntLeaf next;
+
+		private IntLeaf(int capacity)
+		{
+			this.values = new int[capacity];
+		}
+	}
+
+	/**
+	 * Een linked list van gevulde long[] leaves. Een append koppelt alleen de lijsten aan elkaar.
+	 */
+	private static final class LongLeaves
+	{
+		private final int firstCapacity;
+		private LongLeaf first;
+		private LongLeaf last;
+		private long size;
+
+		private LongLeaves(int firstCapacity)
+		{
+			this.firstCapacity = firstCapacity;
+		}
+
+		private void add(long value)
+		{
+			LongLeaf leaf = last;
+			if (leaf == null || leaf.size == leaf.values.length) {
+				leaf = new LongLeaf(leaf == null ? firstCapacity : nextLeafCapacity(leaf.values.length));
+				if (last == null) {
+					first = leaf;
+				}
+				else {
+					last.next = leaf;
+				}
+				last = leaf;
+			}
+			leaf.values[leaf.size++] = value;
+			size++;
+		}
+
+		private LongLeaves append(LongLeaves other)
+		{
+			if (other.first == null) {
+				return this;
+			}
+			if (first == null) {
+				return other;
+			}
+			last.next = other.first;
+			last = other.last;
+			size += other.size;
+			return this;
+		}
+
+		private long[] toArray()
+		{
+			if (first != null && first == last && first.size == first.values.length) {
+				return first.values;
+			}
+			long[] result = new long[checkedSize(size)];
+			int offset = 0;
+			for (LongLeaf leaf = first; leaf != null; leaf = leaf.next) {
+				System.arraycopy(leaf.values, 0, result, offset, leaf.size);
+				offset += leaf.size;
+			}
+			return result;
+		}
+	}
+
+	private static final class LongLeaf
+	{
+		private final long[] values;
+		private int size;
+		private LongLeaf next;
+
+		private LongLeaf(int capacity)
+		{
+			this.values = new long[capacity];
+		}
+	}
+
+	/**
+	 * Een blok [start, end) in een array dat door 1 thread gevuld wordt, tot position.
+	 * Meestal is dat een deel van de gedeelde array, en anders een eigen overflow array.
+	 */
+	private static final class Block
+	{
+		private final Object array;
+		private final int start;
+		private final int end;
+		private int position;
+
+		private Block(Object array, int start, int end)
+		{
+			this.array = array;
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
+	}
+
+	/**
+	 * Claim het volgende blok in de gedeelde array, of null als de gedeelde array al helemaal geclaimd is.
+	 */
+	private static Block claimBlock(Object shared, int capacity, AtomicInteger nextBlock, Queue<Block> blocks)
+	{
+		// Eerst lezen, zodat de teller niet blijft oplopen (en overloopt) als de array vol is.
+		if (nextBlock.get() >= capacity) {
+			return null;
+		}
+		int start = nextBlock.getAndAdd(BLOCK_SIZE);
+		if (start >= capacity) {
+			return null;
+		}
+		Block block = new Block(shared, start, Math.min(capacity, start + BLOCK_SIZE));
+		blocks.add(block);
+		return block;
+	}
+
+	/**
+	 * Voordat een thread een nieuw overflow blok pakt: tel de elementen in alle blokken, en stop als dat er meer zijn
+	 * dan capacity. Zo loopt een te grote stream niet door tot het eind, met steeds meer overflow blokken.
+	 * De posities van andere threads kunnen hier iets achterlopen, dus dit gooit nooit te vroeg.
+	 * Overflow blokken komen pas als de gedeelde array helemaal geclaimd is, dus dit tellen is zelden nodig.
+	 */
+	private static void checkOverflow(int capacity, Queue<Block> blocks)
+	{
+		long size = 0;
+		for (Block block : blocks) {
+			size += block.position - block.start;
+		}
+		if (size > capacity) {
+			throw new IllegalStateException("More elements than the capacity of " + capacity);
+		}
+	}
+
+	/**
+	 * Schuift de blokken van alle threads tegen elkaar aan, zodat de lege plekken aan het eind van elk blok
+	 * verdwijnen. Daarna worden de overflow blokken erachter gekopieerd. Dit gebeurt pas als alle threads klaar zijn.
+	 * <p>
+	 * Overflow blokken zijn nodig omdat threads hun laatste blok meestal niet helemaal vullen: als de stream precies
+	 * capacity elementen heeft, is de gedeelde array al helemaal geclaimd voordat alle elementen erin staan.
+	 *
+	 * @return het aantal gevulde plekken aan het begin van de array.
+	 */
+	private static int compact(Object shared, int capacity, Queue<Block> blocks)
+	{
+		List<Block> sharedBlocks = new ArrayList<>(blocks.size());
+		List<Block> overflowBlocks = new ArrayList<>();
+		for (Block block : blocks) {
+			(block.array == shared ? sharedBlocks : overflowBlocks).add(block);
+		}
+		sharedBlocks.sort(Comparator.comparingInt(block -> block.start));
+		int size = 0;
+		for (Block block : sharedBlocks) {
+			int length = block.position - block.start;
+			if (block.start != size) {
+				System.arraycopy(shared, block.start, shared, size, length);
+			}
+			size += length;
+		}
+		for (Block block : overflowBlocks) {
+			int length = block.position - block.start;
+			if (length > capacity - size) {
+				throw new IllegalStateException("More elements than the capacity of " + capacity);
+			}
+			System.arraycopy(block.array, block.start, shared, size, length);
+			size += length;
+		}
+		return size;
+	}
+
+	/**
+	 * Een gedeelde int[] waarin elke thread een eigen blok vult. Alleen het claimen van een nieuw blok is een
+	 * atomaire operatie op een gedeelde teller.
+	 * <p>
+	 * Het huidige blok per thread staat in een map van de buffer, die bij toArray leeggemaakt wordt.
+	 */
+	private static final class SharedIntBuffer
+	{
+		private final int[] values;
+		private final AtomicInteger nextBlock = new AtomicInteger();
+		private final Queue<Block> blocks = new ConcurrentLinkedQueue<>();
+		private final Map<Thread, Block> currentBlocks = new ConcurrentHashMap<>();
+
+		private SharedIntBuffer(int capacity)
+		{
+			this.values = new int[capacity];
+		}
+
+		private void add(int value)
+		{
+			Thread thread = Thread.currentThread();
+			Block block = currentBlocks.get(thread);
+			if (block == null || block.position == block.end) {
+				block = claimBlock(values, values.length, nextBlock, blocks);
+				if (block == null) {
+					checkOverflow(values.length, blocks);
+					block = new Block(new int[BLOCK_SIZE], 0, BLOCK_SIZE);
+					blocks.add(block);
+				}
+				currentBlocks.put(thread, block);
+			}
+			((int[]) block.array)[block.position++] = value;
+		}
+
+		private SharedIntBuffer append(SharedIntBuffer other)
+		{
+			// Wordt alleen gebruikt als de stream de collector niet concurrent uitvoert, er schrijft dan niemand meer in other.
+			for (int value : other.toArray()) {
+				add(value);
+			}
+			return this;
+		}
+
+		private int[] toArray()
+		{
+			currentBlocks.clear();
+			int size = compact(values, values.length, blocks);
+			return size == values.length ? values : Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Een gedeelde long[] waarin elke thread een eigen blok vult, zie {@link SharedIntBuffer}.
+	 */
+	private static final class SharedLongBuffer
+	{
+		private final long[] values;
+		private final AtomicInteger nextBlock = new AtomicInteger();
+		private final Queue<Block> blocks = new ConcurrentLinkedQueue<>();
+		private final Map<Thread, Block> currentBlocks = new ConcurrentHashMap<>();
+
+		private SharedLongBuffer(int capacity)
+		{
+			this.values = new long[capacity];
+		}
+
+		private void add(long value)
+		{
+			Thread thread = Thread.currentThread();
+			Block block = currentBlocks.get(thread);
+			if (block == null || block.position == block.end) {
+				block = claimBlock(values, values.length, nextBlock, blocks);
+				if (block == null) {
+					checkOverflow(values.length, blocks);
+					block = new Block(new long[BLOCK_SIZE], 0, BLOCK_SIZE);
+					blocks.add(block);
+				}
+				currentBlocks.put(thread, block);
+			}
+			((long[]) block.array)[block.position++] = value;
+		}
+
+		private SharedLongBuffer append(SharedLongBuffer other)
+		{
+			for (long value : other.toArray()) {
+				add(value);
+			}
+			return this;
+		}
+
+		private long[] toArray()
+		{
+			currentBlocks.clear();
+			int size = compact(values, values.length, blocks);
+			return size == values.length ? values : Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+/**
+ * Voert een parallele stream uit op een eigen {@link ForkJoinPool} in plaats van op de common pool.
+ * <p>
+ * Een parallele stream gebruikt standaard {@link ForkJoinPool#commonPool()}, die gedeeld wordt door alle parallele
+ * streams (en {@link java.util.concurrent.CompletableFuture}s) in de JVM. Een trage stream houdt dan alle threads
+ * van de common pool bezig, en alle andere parallele streams moeten wachten.
+ * <p>
+ * Als een parallele stream gestart wordt vanuit een thread van een {@link ForkJoinPool},
+ * dan worden de deeltaken van die stream ook in die pool uitgevoerd. Daarom wordt de hele pipeline hier als
+ * {@link ForkJoinTask} in de gegeven pool gestart. De pipeline moet dus binnen de supplier gebouwd en afgerond worden:
+ * <pre>
+ * long count = StreamPools.invoke(pool, () -&gt; list.parallelStream().filter(...).count());
+ * </pre>
+ * Dit gedrag is niet vastgelegd in de specificatie van streams, maar werkt zo in alle JDK versies sinds Java 8.
+ */
+public final class StreamPools
+{
+	private StreamPools()
+	{
+	}
+
+	/**
+	 * Voer de pipeline uit op de pool en wacht op het resultaat.
+	 * Een exception uit de pipeline wordt doorgegooid zoals {@link ForkJoinTask#join()} dat doet:
+	 * van hetzelfde type, soms als kopie met de oorspronkelijke exception als cause.
+	 */
+	public static <T> T invoke(ForkJoinPool pool, Supplier<T> pipeline)
+	{
+		return pool.invoke(ForkJoinTask.adapt(pipeline::get));
+	}
+
+	/**
+	 * Voer een pipeline zonder resultaat (bijvoorbeeld met forEach) uit op de pool en wacht tot die klaar is.
+	 */
+	public static void run(ForkJoinPool pool, Runnable pipeline)
+	{
+		pool.invoke(ForkJoinTask.adapt(pipeline));
+	}
+}
@@ -0,0 +1,79 @@
+package nl.cjib.training.ocp.concurrency.presentatie3.deel2_parallel_streams;
+
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Voert filter, map en distinct uit zonder encounter order als het eindresultaat die volgorde toch niet gebruikt.
+ * <p>
+ * Een stream over een List of een range heeft een volgorde. In een parallele stream moet distinct die volgorde bewaren:
+ * van elke groep gelijke elementen blijft het eerste over, en dat kost een geordende reductie met een set per deeltaak.
+ * Zonder volgorde gebruikt distinct 1 gedeelde {@link java.util.concurrent.ConcurrentHashMap}. Vaak is die volgorde
+ * niet nodig, bijvoorbeeld als het resultaat in een {@link Set} verzameld wordt, geteld wordt of met forEach verwerkt wordt.
+ * <p>
+ * Een unordered operatie aan het eind van de pipeline (zoals forEach) helpt daarbij niet: distinct kijkt alleen naar
+ * de stappen vóór zich. Daarom moet {@link Stream#unordered()} direct op de bron, en dan geldt het ook voor alle
+ * stappen erna. Bij limit, skip, takeWhile en dropWhile verandert dan het resultaat zelf, niet alleen de volgorde.
+ * Daarom krijgen de methodes hier geen vrije pipeline mee, maar alleen stappen zonder state: een filter en een mapper.
+ * Daarna doen ze zelf de distinct, en alleen daarvan is het resultaat zonder volgorde gelijk (op welke van de gelijke
+ * elementen er overblijft na):
+ * <pre>
+ * Set&lt;String&gt; names = UnorderedPipelines.collectDistinct(people.parallelStream(),
+ *     Person::isActive, Person::getName, Collectors.toSet());
+ * </pre>
+ * De filter en de mapper moeten, zoals altijd bij streams, geen state hebben en geen side effects.
+ * Voor pipelines met andere operaties: gebruik gewoon de stream zelf, en roep unordered() alleen aan als het andere
+ * resultaat geen probleem is.
+ */
+public final class UnorderedPipelines
+{
+	private UnorderedPipelines()
+	{
+	}
+
+	/**
+	 * Of de collector de volgorde van de elementen gebruikt. Collectors zonder de
+	 * {@link Collector.Characteristics#UNORDERED} characteristic (zoals {@link Collectors#toList()}) doen dat wel,
+	 * collectors met (zoals {@link Collectors#toSet()}) niet.
+	 */
+	public static boolean needsOrder(Collector<?, ?, ?> collector)
+	{
+		return !collector.characteristics().contains(Collector.Characteristics.UNORDERED);
+	}
+
+	/**
+	 * Filter, map en distinct de bron, en verzamel het resultaat. Als de collector geen volgorde nodig heeft,
+	 * wordt de bron eerst unordered gemaakt. Anders blijft de volgorde van de bron bewaard.
+	 */
+	public static <T, U, R> R collectDistinct(Stream<T> source, Predicate<? super T> filter,
+		Function<? super T, ? extends U> mapper, Collector<? super U, ?, R> collector)
+	{
+		Stream<T> stream = needsOrder(collector) ? source : source.unordered();
+		return stream.filter(filter).<U>map(mapper).distinct().collect(collector);
+	}
+
+	/**
+	 * Filter, map en distinct de unordered bron, en geef elk resultaat aan de action. Net als bij
+	 * {@link Stream#forEach(Consumer)} is de volgorde waarin de action aangeroepen wordt willekeurig.
+	 */
+	public static <T, U> void forEachDistinct(Stream<T> source, Predicate<? super T> filter,
+		Function<? super T, ? extends U> mapper, Consumer<? super U> action)
+	{
+		source.unordered().filter(filter).<U>map(mapper).distinct().forEach(action);
+	}
+
+	/**
+	 * Filter, map en distinct de unordered bron, en tel het aantal verschillende resultaten.
+	 * Het aantal is hetzelfde als in de geordende pipeline.
+	 */
+	public static <T, U> long countDistinct(Stream<T> source, Predicate<? super T> filter,
+		Function<? super T, ? extends U> mapper)
+	{
+		return source.unordered().filter(filter).<U>map(mapper).distinct().count();
+	}
+}
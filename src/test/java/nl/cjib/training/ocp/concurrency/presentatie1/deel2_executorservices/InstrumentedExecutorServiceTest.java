@@ -0,0 +1,54 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel2_executorservices;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class InstrumentedExecutorServiceTest
+{
+	@Test
+	void failingInvokeAnyTaskCountsAsFailed() throws Exception
+	{
+		// 1 thread, zodat de tasks na elkaar lopen en er geen meer gecanceld wordt voordat hij start.
+		InstrumentedExecutorService executor = new InstrumentedExecutorService(Executors.newSingleThreadExecutor());
+		try {
+			Callable<String> failing = () -> {
+				throw new IllegalStateException("boom");
+			};
+			assertThrows(ExecutionException.class, () -> executor.invokeAny(List.of(failing)));
+		}
+		finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		assertEquals(1, executor.getFailedTasks());
+		assertEquals(0, executor.getCompletedTasks());
+	}
+
+	@Test
+	void submittedTasksAreCountedByOutcome() throws Exception
+	{
+		InstrumentedExecutorService executor = new InstrumentedExecutorService(Executors.newSingleThreadExecutor());
+		try {
+			executor.submit(() -> "ok").get();
+			assertThrows(ExecutionException.class, () -> executor.submit(() -> {
+				throw new IllegalStateException("boom");
+			}).get());
+			executor.execute(() -> { });
+		}
+		finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		assertEquals(1, executor.getFailedTasks());
+		assertEquals(2, executor.getCompletedTasks());
+	}
+}
@@ -0,0 +1,42 @@
+package nl.cjib.training.ocp.concurrency.presentatie1.deel5_invokeany_en_invokeall;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+class CompletionOrderTest
+{
+	@Test
+	void timeoutEndsTheIteration() throws Exception
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			Callable<String> fast = () -> "fast";
+			Callable<String> slow = () -> {
+				Thread.sleep(10_000);
+				return "slow";
+			};
+			CompletionOrder<String> results = CompletionOrder.invokeAll(executorService, List.of(fast, slow), 200, TimeUnit.MILLISECONDS);
+			assertEquals("fast", results.next().get());
+			assertThrows(TimeoutException.class, results::next);
+			assertFalse(results.hasNext());
+			assertEquals(0, results.remaining());
+			assertThrows(NoSuchElementException.class, results::next);
+		}
+		finally {
+			executorService.shutdownNow();
+			assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+		}
+	}
+}
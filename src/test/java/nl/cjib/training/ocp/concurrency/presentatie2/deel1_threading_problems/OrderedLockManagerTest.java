@@ -0,0 +1,68 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel1_threading_problems;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class OrderedLockManagerTest
+{
+	@Test
+	void moveDownPastAHeldLockIsRejectedWithoutLosingTheLock()
+	{
+		OrderedLockManager manager = new OrderedLockManager(6);
+		manager.lockAll(1, 5);
+
+		assertThrows(IllegalStateException.class, () -> manager.move(5, 0));
+		// De thread heeft 5 nog, dus 5 loslaten en 4 pakken mag.
+		assertDoesNotThrow(() -> manager.move(5, 4));
+		assertDoesNotThrow(() -> manager.move(4, 2));
+		manager.unlockAll(1, 2);
+		assertDoesNotThrow(() -> manager.lock(0));
+		manager.unlock(0);
+	}
+
+	@Test
+	void moveDownIsRejectedTheSameWayWhenTheTargetIsContended() throws InterruptedException
+	{
+		OrderedLockManager manager = new OrderedLockManager(6);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			manager.lock(0);
+			locked.countDown();
+			try {
+				release.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			manager.unlock(0);
+		});
+		holder.start();
+		locked.await();
+
+		manager.lockAll(1, 5);
+		assertThrows(IllegalStateException.class, () -> manager.move(5, 0));
+		release.countDown();
+		holder.join();
+		manager.unlockAll(1, 5);
+	}
+
+	@Test
+	void lockingBelowAHeldLockIsRejected()
+	{
+		OrderedLockManager manager = new OrderedLockManager(4);
+		manager.lock(2);
+		manager.lock(2);
+		assertThrows(IllegalStateException.class, () -> manager.lock(1));
+		manager.unlock(2);
+		// Nog steeds 1 keer vast.
+		assertThrows(IllegalStateException.class, () -> manager.lock(1));
+		manager.unlock(2);
+		assertDoesNotThrow(() -> manager.lock(1));
+		manager.unlock(1);
+	}
+}
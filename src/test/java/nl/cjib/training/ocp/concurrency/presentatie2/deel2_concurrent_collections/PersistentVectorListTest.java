@@ -0,0 +1,94 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentVectorListTest
+{
+	// Groter dan 32 * 32, zodat de boom meer dan 1 niveau heeft.
+	private static final int SIZE = 2500;
+
+	private static List<Integer> randomElements()
+	{
+		Random random = new Random(42);
+		List<Integer> elements = new ArrayList<>();
+		for (int i = 0; i < SIZE; i++) {
+			elements.add(random.nextInt(1000));
+		}
+		return elements;
+	}
+
+	@Test
+	void bulkOperationsMatchArrayList()
+	{
+		List<Integer> expected = randomElements();
+		PersistentVectorList<Integer> list = new PersistentVectorList<>(expected);
+
+		expected.sort(Comparator.reverseOrder());
+		list.sort(Comparator.reverseOrder());
+		assertEquals(expected, list);
+
+		expected.sort(null);
+		list.sort(null);
+		assertEquals(expected, list);
+
+		assertTrue(list.removeIf(x -> x % 3 == 0));
+		expected.removeIf(x -> x % 3 == 0);
+		assertEquals(expected, list);
+		assertFalse(list.removeIf(x -> x % 3 == 0));
+
+		list.replaceAll(x -> x * 2);
+		expected.replaceAll(x -> x * 2);
+		assertEquals(expected, list);
+
+		assertTrue(list.removeAll(Set.of(2, 4, 8)));
+		expected.removeAll(Set.of(2, 4, 8));
+		assertEquals(expected, list);
+
+		assertTrue(list.retainAll(Set.of(10, 20, 400, 1000)));
+		expected.retainAll(Set.of(10, 20, 400, 1000));
+		assertEquals(expected, list);
+	}
+
+	@Test
+	void subListClearRemovesTheRange()
+	{
+		List<Integer> expected = randomElements();
+		PersistentVectorList<Integer> list = new PersistentVectorList<>(expected);
+
+		list.subList(100, 1800).clear();
+		expected.subList(100, 1800).clear();
+		assertEquals(expected, list);
+
+		list.subList(0, 33).clear();
+		expected.subList(0, 33).clear();
+		assertEquals(expected, list);
+
+		list.subList(list.size() - 5, list.size()).clear();
+		expected.subList(expected.size() - 5, expected.size()).clear();
+		assertEquals(expected, list);
+		assertEquals(expected.size(), list.size());
+	}
+
+	@Test
+	void snapshotIsNotChangedByBulkOperations()
+	{
+		PersistentVectorList<Integer> list = new PersistentVectorList<>(randomElements());
+		List<Integer> snapshot = list.snapshot();
+		List<Integer> before = new ArrayList<>(snapshot);
+
+		list.sort(null);
+		list.removeIf(x -> x > 500);
+		list.subList(0, 10).clear();
+		assertEquals(before, snapshot);
+	}
+}
@@ -0,0 +1,128 @@
+package nl.cjib.training.ocp.concurrency.presentatie2.deel2_concurrent_collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferQueueTest
+{
+	/**
+	 * Een collectie die na een aantal elementen geen nieuwe meer accepteert.
+	 */
+	private static final class FailingList extends ArrayList<Integer>
+	{
+		private final int accepted;
+
+		private FailingList(int accepted)
+		{
+			this.accepted = accepted;
+		}
+
+		@Override
+		public boolean add(Integer e)
+		{
+			if (size() == accepted) {
+				throw new IllegalStateException("full");
+			}
+			return super.add(e);
+		}
+	}
+
+	@Test
+	void drainToReleasesClaimedSlotsWhenTheCollectionThrows()
+	{
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+
+		FailingList target = new FailingList(1);
+		assertThrows(IllegalStateException.class, () -> queue.drainTo(target));
+		assertEquals(List.of(0), target);
+		assertEquals(0, queue.size());
+
+		// Alle 4 plekken moeten weer bruikbaar zijn, ook de plekken die geclaimd waren maar niet verwerkt.
+		int offered = 0;
+		for (int i = 0; i < 8; i++) {
+			if (queue.offer(10 + i)) {
+				offered++;
+			}
+		}
+		assertEquals(4, offered);
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(4, queue.drainTo(drained));
+		assertEquals(List.of(10, 11, 12, 13), drained);
+	}
+
+	@Test
+	void drainReleasesClaimedSlotsWhenTheConsumerThrowsOnTheFirstElement()
+	{
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(queue.offer(i));
+		}
+
+		assertThrows(IllegalStateException.class, () -> queue.drain(e -> {
+			throw new IllegalStateException("boom");
+		}, 4));
+		assertTrue(queue.isEmpty());
+
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 4; i++) {
+				assertTrue(queue.offer(i));
+			}
+			for (int i = 0; i < 4; i++) {
+				assertEquals(i, queue.poll());
+			}
+		}
+	}
+
+	@Test
+	void parkedProducersAndConsumersAreAlwaysWokenUp()
+	{
+		// Een kleine queue en meer threads dan plekken, zodat er steeds threads geparkeerd zijn.
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(2, RingBufferQueue.WaitStrategy.PARK);
+		int threads = 4;
+		int perThread = 20_000;
+		LongAdder sum = new LongAdder();
+		assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+			ExecutorService executorService = Executors.newFixedThreadPool(2 * threads);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					futures.add(executorService.submit(() -> {
+						for (int i = 0; i < perThread; i++) {
+							queue.put(1);
+						}
+						return null;
+					}));
+					futures.add(executorService.submit(() -> {
+						for (int i = 0; i < perThread; i++) {
+							sum.add(queue.take());
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+			finally {
+				executorService.shutdownNow();
+			}
+		});
+		assertEquals(threads * perThread, sum.sum());
+		assertTrue(queue.isEmpty());
+	}
+}